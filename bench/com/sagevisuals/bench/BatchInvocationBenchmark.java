@@ -0,0 +1,69 @@
+/* Benchmarks of batch invocation (`invoke-all`).
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run BatchInvocationBenchmark
+
+   Each batch is `size` tuples `[thingy x]`. `oneAtATime` is the Clojure
+   idiom the batch API replaces, `(mapv (fn [[t & args]] (apply t args))
+   tuples)`. `sequential` runs BatchInvoker on the calling thread, and
+   `parallel` runs it in 512-tuple chunks on the common fork-join pool, whose
+   benefit depends on the number of processors available. */
+
+package com.sagevisuals.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.IFn;
+import clojure.lang.PersistentVector;
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import com.sagevisuals.BatchInvoker;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class BatchInvocationBenchmark {
+
+    @Param({"10000"})
+    public int size;
+
+    Object[] tuples;
+    PersistentVector tupleVector;
+    IFn oneAtATime;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	Clojure.var("thingy.dangerous-vector", "defaultize!-options").invoke();
+	oneAtATime = (IFn) Clojure.var("clojure.core", "eval").invoke(
+	    Clojure.read("(fn [tuples] (mapv (fn [[t & args]] (apply t args)) tuples))"));
+	tuples = new Object[size];
+	for (int i = 0; i < size; i++)
+	    tuples[i] = RT.vector(AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, 1L, 2L, 3L),
+				  (long) (i % 3));
+	tupleVector = PersistentVector.create(tuples);
+    }
+
+    @Benchmark
+    public Object oneAtATime() {
+	return oneAtATime.invoke(tupleVector);
+    }
+
+    @Benchmark
+    public Object sequential() {
+	return BatchInvoker.invokeAll(tuples, 512, null);
+    }
+
+    @Benchmark
+    public Object parallel() {
+	return BatchInvoker.invokeAll(tuples, 512, ForkJoinPool.commonPool());
+    }
+}
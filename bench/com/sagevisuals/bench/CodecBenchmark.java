@@ -0,0 +1,106 @@
+/* Benchmarks of the binary thingy codec.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run CodecBenchmark
+
+   A thingy cannot be written with Java serialization at all, because its
+   options atom is not Serializable, so the `java*` benchmarks serialize a
+   clojure.lang.PersistentVector of the same elements for comparison.
+
+   The elements are `size` longs, alternating with keywords. `encode` and
+   `decode` round-trip one thingy; `encodeVersions` writes the thingy
+   together with ten successors, each differing by one `assocN`, so that all
+   but one leaf of each successor is a back-reference. */
+
+package com.sagevisuals.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.IFn;
+import clojure.lang.Keyword;
+import clojure.lang.PersistentVector;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import com.sagevisuals.ThingyCodec;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    AltFnInvocablePersistentVector thingy;
+    PersistentVector vector;
+    ArrayList<Object> versions;
+    byte[] encoded;
+    byte[] serialized;
+    IFn optionsFor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	Object[] items = new Object[size];
+	for (int i = 0; i < size; i++)
+	    items[i] = (i % 2 == 0) ? (Object) (long) i : Keyword.intern("k" + (i % 100));
+	thingy = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+	vector = PersistentVector.create(items);
+	versions = new ArrayList<Object>();
+	AltFnInvocablePersistentVector v = thingy;
+	for (int i = 0; i <= 10; i++) {
+	    versions.add(v);
+	    v = (AltFnInvocablePersistentVector) v.assocN((i * 97) % size, -1L);
+	}
+	encoded = ThingyCodec.encode(java.util.List.of(thingy));
+	serialized = serialize();
+	optionsFor = (IFn) Clojure.var("clojure.core", "constantly").invoke(AltFnInvocablePersistentVector.OPTIONS);
+    }
+
+    byte[] serialize() throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+	    out.writeObject(vector);
+	}
+	return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+	return ThingyCodec.encode(java.util.List.of(thingy));
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+	return ThingyCodec.decode(encoded, optionsFor);
+    }
+
+    @Benchmark
+    public byte[] encodeVersions() throws IOException {
+	return ThingyCodec.encode(versions);
+    }
+
+    @Benchmark
+    public byte[] javaSerialize() throws IOException {
+	return serialize();
+    }
+
+    @Benchmark
+    public Object javaDeserialize() throws IOException, ClassNotFoundException {
+	try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+	    return in.readObject();
+	}
+    }
+}
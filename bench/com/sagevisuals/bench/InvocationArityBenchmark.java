@@ -0,0 +1,106 @@
+/* Benchmarks of thingy invocation at each supported arity.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run InvocationArityBenchmark
+
+   The global invocation function returns its last argument, so each benchmark
+   measures dispatch cost rather than work done by the function. A
+   clojure.lang.PersistentVector invoked with one argument (i.e., `nth`) is
+   included for reference.
+
+   The `fn` parameter selects the invocation function: "single" is one
+   multi-arity function, "arity-table" is an ArityTable whose every entry is
+   that function, measuring the cost of the table's array dispatch. Past the
+   eighth arity, `invoke12` exercises an enumerated method, `invoke20` the
+   method that spills its last argument into an array, and `apply25` the
+   `applyTo` path. */
+
+package com.sagevisuals.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.AFn;
+import clojure.lang.IFn;
+import clojure.lang.Keyword;
+import clojure.lang.PersistentArrayMap;
+import clojure.lang.ISeq;
+import clojure.lang.PersistentVector;
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import com.sagevisuals.ArityTable;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class InvocationArityBenchmark {
+
+    static final IFn LAST_ARG = new AFn() {
+	    public Object invoke(Object v) {return v;}
+	    public Object invoke(Object v, Object a) {return a;}
+	    public Object invoke(Object v, Object a, Object b) {return b;}
+	    public Object invoke(Object v, Object a, Object b, Object c) {return c;}
+	    public Object invoke(Object v, Object a, Object b, Object c, Object d) {return d;}
+	    public Object invoke(Object v, Object a, Object b, Object c, Object d, Object e) {return e;}
+	    public Object invoke(Object v, Object a, Object b, Object c, Object d, Object e, Object f) {return f;}
+	    public Object invoke(Object v, Object a, Object b, Object c, Object d, Object e, Object f, Object g) {return g;}
+	    public Object invoke(Object v, Object a, Object b, Object c, Object d, Object e, Object f, Object g, Object h) {return h;}
+	    public Object invoke(Object v, Object a, Object b, Object c, Object d, Object e, Object f, Object g, Object h,
+				 Object i, Object j, Object k, Object l) {return l;}
+	    public Object invoke(Object v, Object a, Object b, Object c, Object d, Object e, Object f, Object g, Object h,
+				 Object i, Object j, Object k, Object l, Object m, Object n, Object o, Object p,
+				 Object q, Object r, Object s, Object... rest) {return rest[rest.length - 1];}
+	    public Object applyTo(ISeq args) {
+		Object last = null;
+		for(ISeq s = args; s != null; s = s.next())
+		    last = s.first();
+		return last;
+	    }
+	};
+
+    @Param({"single", "arity-table"})
+    public String fn;
+
+    AltFnInvocablePersistentVector thingy;
+    PersistentVector vector;
+    Object x;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	IFn[] table = new IFn[21];
+	Arrays.fill(table, LAST_ARG);
+	AltFnInvocablePersistentVector.OPTIONS.reset(PersistentArrayMap.createAsIfByAssoc(new Object[]{
+		    Keyword.intern("fn"), "single".equals(fn) ? LAST_ARG : new ArityTable(table, LAST_ARG),
+		    Keyword.intern("left-delimiter"), "<",
+		    Keyword.intern("right-delimiter"), ">"}));
+	thingy = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, 1L, 2L, 3L);
+	vector = PersistentVector.create(1L, 2L, 3L);
+	x = 1L;
+	args25 = RT.seq(RT.vector(new Object[25]));
+    }
+
+    ISeq args25;
+
+    @Benchmark public Object persistentVectorInvoke1() {return vector.invoke(x);}
+
+    @Benchmark public Object invoke0() {return thingy.invoke();}
+    @Benchmark public Object invoke1() {return thingy.invoke(x);}
+    @Benchmark public Object invoke2() {return thingy.invoke(x, x);}
+    @Benchmark public Object invoke3() {return thingy.invoke(x, x, x);}
+    @Benchmark public Object invoke4() {return thingy.invoke(x, x, x, x);}
+    @Benchmark public Object invoke5() {return thingy.invoke(x, x, x, x, x);}
+    @Benchmark public Object invoke6() {return thingy.invoke(x, x, x, x, x, x);}
+    @Benchmark public Object invoke7() {return thingy.invoke(x, x, x, x, x, x, x);}
+    @Benchmark public Object invoke8() {return thingy.invoke(x, x, x, x, x, x, x, x);}
+    @Benchmark public Object invoke12() {return thingy.invoke(x, x, x, x, x, x, x, x, x, x, x, x);}
+    @Benchmark public Object invoke20() {return thingy.invoke(x, x, x, x, x, x, x, x, x, x, x, x, x, x, x, x, x, x, x, x);}
+    @Benchmark public Object apply25() {return thingy.applyTo(args25);}
+}
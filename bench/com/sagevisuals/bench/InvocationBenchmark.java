@@ -0,0 +1,118 @@
+/* Benchmarks for thingy invocation dispatch.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run InvocationBenchmark
+
+   `constantCallSite` invokes an instance whose options atom is the global
+   `AltFnInvocablePersistentVector/OPTIONS`, so the invocation function is
+   fetched from the MutableCallSite. `atomLookup` invokes an otherwise
+   identical instance whose options atom is private, so the invocation function
+   is fetched by dereferencing the atom and looking up `:fn`, which is the
+   dispatch path all instances used previously.
+
+   The `profile` parameter selects the state of the type profile at the
+   `fn.invoke(...)` call inside `AltFnInvocablePersistentVector.invoke`.
+   "monomorphic" leaves the profile with a single receiver class.
+   "megamorphic" first exercises that call with several distinct function
+   classes, as happens when a program uses several invocation functions. */
+
+package com.sagevisuals.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.AFn;
+import clojure.lang.Atom;
+import clojure.lang.IDeref;
+import clojure.lang.IFn;
+import clojure.lang.Keyword;
+import clojure.lang.PersistentArrayMap;
+import clojure.lang.PersistentVector;
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class InvocationBenchmark {
+
+    @Param({"monomorphic", "megamorphic"})
+    public String profile;
+
+    AltFnInvocablePersistentVector global;
+    AltFnInvocablePersistentVector local;
+    Object index;
+
+    static Object optionsMap(IFn f) {
+	return PersistentArrayMap.createAsIfByAssoc(new Object[]{Keyword.intern("fn"), f,
+								 Keyword.intern("left-delimiter"), "<",
+								 Keyword.intern("right-delimiter"), ">"});
+    }
+
+    static Atom newOptions(IFn f) {
+	return new Atom(optionsMap(f));
+    }
+
+    static IFn nthFn() {
+	return new AFn() {
+	    public Object invoke(Object v, Object i) {
+		return ((AltFnInvocablePersistentVector) v).nth(((Number) i).intValue());
+	    }
+	};
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	IFn nth = nthFn();
+	AltFnInvocablePersistentVector.OPTIONS.reset(optionsMap(nth));
+	Object items = RT.seq(PersistentVector.create(1, 2, 3, 4));
+	global = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, (clojure.lang.ISeq) items);
+	local = AltFnInvocablePersistentVector.create(newOptions(nth), (clojure.lang.ISeq) items);
+	index = 2L;
+
+	if ("megamorphic".equals(profile)) {
+	    IFn[] polluters = new IFn[]{new AFn() {public Object invoke(Object v, Object i) {return v;}},
+					new AFn() {public Object invoke(Object v, Object i) {return i;}},
+					new AFn() {public Object invoke(Object v, Object i) {return null;}},
+					(IFn) ((IDeref) Clojure.var("clojure.core", "nth")).deref(),
+					(IFn) ((IDeref) Clojure.var("clojure.core", "get")).deref(),
+					Clojure.var("clojure.core", "vector")};
+	    for (int round = 0; round < 20_000; round++) {
+		for (IFn f : polluters) {
+		    AltFnInvocablePersistentVector v = AltFnInvocablePersistentVector.create(newOptions(f), (clojure.lang.ISeq) items);
+		    v.invoke(index);
+		}
+	    }
+	}
+    }
+
+    @Benchmark
+    public Object constantCallSite() {
+	return global.invoke(index);
+    }
+
+    @Benchmark
+    public Object atomLookup() {
+	return local.invoke(index);
+    }
+
+    @Benchmark
+    public void constantCallSiteLoop(Blackhole bh) {
+	for (int i = 0; i < 100; i++)
+	    bh.consume(global.invoke(index));
+    }
+
+    @Benchmark
+    public void atomLookupLoop(Blackhole bh) {
+	for (int i = 0; i < 100; i++)
+	    bh.consume(local.invoke(index));
+    }
+}
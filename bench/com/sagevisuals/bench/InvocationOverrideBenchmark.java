@@ -0,0 +1,93 @@
+/* Benchmarks of the thread-scoped invocation override (`with-alt-fn`).
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run InvocationOverrideBenchmark
+
+   Every `invoke` first checks `AAltFnInvocableVector/FN_BINDING`. The
+   `binding` parameter selects the state of that Var:
+
+   "never"        no thread has ever bound it, so the check is one volatile
+                  read before the global call site is consulted.
+   "other-thread" some other thread has bound it, so the check also reads the
+                  per-thread cache, and finds no override.
+   "this-thread"  the benchmark thread has bound it, so the override is
+                  returned from the per-thread cache.
+
+   `varDeref` dereferences the bound Var directly, for comparison with the
+   uncached lookup.
+
+   The invocation function returns its argument in every case, so each
+   benchmark measures dispatch cost. */
+
+package com.sagevisuals.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.AFn;
+import clojure.lang.IFn;
+import clojure.lang.Keyword;
+import clojure.lang.PersistentArrayMap;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+import com.sagevisuals.AAltFnInvocableVector;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class InvocationOverrideBenchmark {
+
+    @Param({"never", "other-thread", "this-thread"})
+    public String binding;
+
+    static final IFn SECOND_ARG = new AFn() {
+	    public Object invoke(Object v, Object a) {return a;}
+	};
+
+    AltFnInvocablePersistentVector thingy;
+    Object x;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	AltFnInvocablePersistentVector.OPTIONS.reset(PersistentArrayMap.createAsIfByAssoc(new Object[]{
+		    Keyword.intern("fn"), SECOND_ARG,
+		    Keyword.intern("left-delimiter"), "<",
+		    Keyword.intern("right-delimiter"), ">"}));
+	thingy = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, 1L, 2L, 3L);
+	x = 1L;
+
+	if ("other-thread".equals(binding)) {
+	    Thread t = new Thread(() -> {
+		    AAltFnInvocableVector.pushFnBinding(SECOND_ARG);
+		    Var.popThreadBindings();
+	    });
+	    t.start();
+	    t.join();
+	} else if ("this-thread".equals(binding)) {
+	    AAltFnInvocableVector.pushFnBinding(SECOND_ARG);
+	}
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+	if ("this-thread".equals(binding))
+	    Var.popThreadBindings();
+    }
+
+    @Benchmark
+    public Object invoke1() {
+	return thingy.invoke(x);
+    }
+
+    @Benchmark
+    public Object varDeref() {
+	return AAltFnInvocableVector.FN_BINDING.deref();
+    }
+}
@@ -0,0 +1,73 @@
+/* Benchmarks of `indexOf` and `contains` with and without the lookup index.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run LookupIndexBenchmark
+
+   The thingy holds `size` distinct strings. With `index` "scan", lookups are
+   APersistentVector's linear scans. With "indexed", the thingy has opted in
+   with `indexed(0)` and its index was built during setup, so each lookup is a
+   hash probe. `indexOfLast` looks up the last element, the worst case for a
+   scan, and `containsMissing` a string that is not present. `build` measures
+   the one-time cost of building the index (from an unindexed copy, so it does
+   not depend on `index`). */
+
+package com.sagevisuals.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LookupIndexBenchmark {
+
+    @Param({"scan", "indexed"})
+    public String index;
+
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    AltFnInvocablePersistentVector base;
+    AltFnInvocablePersistentVector v;
+    Object last;
+    Object missing;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	Object[] items = new Object[size];
+	for (int i = 0; i < size; i++)
+	    items[i] = "item-" + i;
+	base = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+	v = base;
+	if ("indexed".equals(index)) {
+	    v = v.indexed(0);
+	    v.contains(null);
+	}
+	last = new String("item-" + (size - 1));
+	missing = "item-" + size;
+    }
+
+    @Benchmark
+    public int indexOfLast() {
+	return v.indexOf(last);
+    }
+
+    @Benchmark
+    public boolean containsMissing() {
+	return v.contains(missing);
+    }
+
+    @Benchmark
+    public boolean build() {
+	return base.indexed(0).contains(missing);
+    }
+}
@@ -0,0 +1,102 @@
+/* Benchmarks of memory-mapped thingies against in-heap primitive thingies.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run MappedBenchmark -prof gc
+
+   Each trial writes `size` longs to a temporary file. With `impl` "mapped",
+   the thingy is an AltFnInvocableMappedVector over that file; with "heap",
+   it is an AltFnInvocablePrimitiveVector of the same longs.
+
+   `open` makes the thingy from the file: mapping it, or mapping it and
+   copying every element into the heap; it is timed one call at a time.
+   `nth` reads elements at scattered indices, and `reduce` sums all of them
+   with a primitive reducing function. */
+
+package com.sagevisuals.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.AFn;
+import clojure.lang.APersistentVector;
+import clojure.lang.IFn;
+import clojure.lang.IReduceInit;
+import clojure.lang.Keyword;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocableMappedVector;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import com.sagevisuals.AltFnInvocablePrimitiveVector;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MappedBenchmark {
+
+    static final Keyword LONG = Keyword.intern(null, "long");
+
+    static final class Sum extends AFn implements IFn.OLO {
+	public Object invokePrim(Object acc, long x) {
+	    return (Long) acc + x;
+	}
+
+	public Object invoke(Object acc, Object x) {
+	    return (Long) acc + (Long) x;
+	}
+    }
+
+    @Param({"heap", "mapped"})
+    public String impl;
+
+    @Param({"1000000"})
+    public int size;
+
+    Path path;
+    APersistentVector v;
+    IFn sum = new Sum();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	File f = File.createTempFile("thingy", ".thgm");
+	f.deleteOnExit();
+	path = f.toPath();
+	AltFnInvocableMappedVector.write(path, LONG, Clojure.var("clojure.core", "range").invoke(size));
+	v = open();
+    }
+
+    // Single shots, since mappings are released only by the garbage
+    // collector, and a tight loop of `open`s outruns it to the limit on
+    // mappings per process.
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 50)
+    public APersistentVector open() throws IOException {
+	AltFnInvocableMappedVector m = AltFnInvocableMappedVector.open(AltFnInvocablePersistentVector.OPTIONS, path);
+	if ("heap".equals(impl))
+	    return AltFnInvocablePrimitiveVector.createFrom(AltFnInvocablePersistentVector.OPTIONS, LONG, m);
+	return m;
+    }
+
+    @Benchmark
+    public Object nth() {
+	Object x = null;
+	for (int i = 0; i < 1000; i++)
+	    x = v.nth((int) ((i * 2654435761L) % size));
+	return x;
+    }
+
+    @Benchmark
+    public Object reduce() {
+	return ((IReduceInit) v).reduce(sum, 0L);
+    }
+}
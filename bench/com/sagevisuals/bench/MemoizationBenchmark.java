@@ -0,0 +1,73 @@
+/* Benchmarks of the memoizing invocation function (`alt-fn-memoize`).
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run MemoizationBenchmark
+
+   The invocation function sums the thingy's elements plus its argument, so
+   each uncached call does O(n) work. `direct` calls it unmemoized; `hit`
+   calls a MemoizingFn whose cache already holds the result; `miss` cycles
+   through more distinct arguments than the cache holds, so every call is a
+   miss followed by an eviction. */
+
+package com.sagevisuals.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.AFn;
+import clojure.lang.IFn;
+import clojure.lang.IReduceInit;
+import clojure.lang.Keyword;
+import clojure.lang.Numbers;
+import clojure.lang.PersistentArrayMap;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import com.sagevisuals.MemoizingFn;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MemoizationBenchmark {
+
+    @Param({"direct", "hit", "miss"})
+    public String mode;
+
+    @Param({"32", "1024"})
+    public int size;
+
+    static final IFn PLUS = new AFn() {
+	    public Object invoke(Object a, Object b) {return Numbers.add(a, b);}
+	};
+
+    static final IFn SUM = new AFn() {
+	    public Object invoke(Object v, Object x) {return ((IReduceInit) v).reduce(PLUS, x);}
+	};
+
+    AltFnInvocablePersistentVector thingy;
+    long i;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	IFn fn = "direct".equals(mode) ? SUM : new MemoizingFn(SUM, 256);
+	AltFnInvocablePersistentVector.OPTIONS.reset(PersistentArrayMap.createAsIfByAssoc(new Object[]{
+		    Keyword.intern("fn"), fn,
+		    Keyword.intern("left-delimiter"), "<",
+		    Keyword.intern("right-delimiter"), ">"}));
+	Object[] items = new Object[size];
+	for (int k = 0; k < size; k++)
+	    items[k] = (long) k;
+	thingy = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+    }
+
+    @Benchmark
+    public Object invoke() {
+	long x = "miss".equals(mode) ? (i++ % 1024) : 7L;
+	return thingy.invoke(x);
+    }
+}
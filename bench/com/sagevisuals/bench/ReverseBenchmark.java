@@ -0,0 +1,83 @@
+/* Benchmarks of reverse traversal (`rseq`).
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run ReverseBenchmark
+
+   "thingy" is a thingy's leaf-walking reverse seq; "persistent-vector" is
+   clojure.lang.PersistentVector's, which, like the generic
+   APersistentVector.RSeq that thingies used previously, allocates a seq
+   node and calls `nth` for every element. `reduce` sums through
+   clojure.core/reduce, `walk` steps with first/next, and `iterate` uses the
+   seq's iterator. */
+
+package com.sagevisuals.bench;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.AFn;
+import clojure.lang.APersistentVector;
+import clojure.lang.IFn;
+import clojure.lang.ISeq;
+import clojure.lang.Numbers;
+import clojure.lang.PersistentVector;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ReverseBenchmark {
+
+    @Param({"thingy", "persistent-vector"})
+    public String impl;
+
+    @Param({"100000"})
+    public int size;
+
+    static final IFn PLUS = new AFn() {
+	    public Object invoke(Object a, Object b) {return Numbers.add(a, b);}
+	};
+
+    static final IFn REDUCE = Clojure.var("clojure.core", "reduce");
+
+    APersistentVector v;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	Object[] items = new Object[size];
+	for (int i = 0; i < size; i++)
+	    items[i] = (long) i;
+	if ("thingy".equals(impl))
+	    v = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+	else
+	    v = PersistentVector.create(items);
+    }
+
+    @Benchmark
+    public Object reduce() {
+	return REDUCE.invoke(PLUS, 0L, v.rseq());
+    }
+
+    @Benchmark
+    public void walk(Blackhole bh) {
+	for (ISeq s = v.rseq(); s != null; s = s.next())
+	    bh.consume(s.first());
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh) {
+	Iterator it = ((Collection) v.rseq()).iterator();
+	while (it.hasNext())
+	    bh.consume(it.next());
+    }
+}
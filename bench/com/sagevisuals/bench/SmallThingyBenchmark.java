@@ -0,0 +1,78 @@
+/* Benchmarks of creating and updating small thingies.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run SmallThingyBenchmark -prof gc
+
+   With `impl` "tuple", thingies of at most eight elements are
+   AltFnInvocableTuples (as `make-thingy` returns); with "trie", they are
+   AltFnInvocablePersistentVectors (as `alt-fn-vec` returns). The gc profiler
+   reports the bytes allocated per operation (`gc.alloc.rate.norm`).
+
+   `create` builds a thingy of `size` elements from an array, `assoc`
+   replaces its first element, `conjPop` adds an element and removes it, and
+   `invoke` calls it with one argument. */
+
+package com.sagevisuals.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.APersistentVector;
+import clojure.lang.IPersistentVector;
+import clojure.lang.Keyword;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import com.sagevisuals.AltFnInvocableTuple;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SmallThingyBenchmark {
+
+    @Param({"tuple", "trie"})
+    public String impl;
+
+    @Param({"2", "8"})
+    public int size;
+
+    Object[] items;
+    APersistentVector v;
+    Object x;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	items = new Object[size];
+	for (int i = 0; i < size; i++)
+	    items[i] = Keyword.intern("k" + i);
+	v = create();
+	x = 0L;
+    }
+
+    @Benchmark
+    public APersistentVector create() {
+	if ("tuple".equals(impl))
+	    return AltFnInvocableTuple.createFrom(AltFnInvocablePersistentVector.OPTIONS, items);
+	return AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+    }
+
+    @Benchmark
+    public IPersistentVector assoc() {
+	return v.assocN(0, x);
+    }
+
+    @Benchmark
+    public Object conjPop() {
+	return ((IPersistentVector) v.cons(x)).pop();
+    }
+
+    @Benchmark
+    public Object invoke() {
+	return v.invoke(x);
+    }
+}
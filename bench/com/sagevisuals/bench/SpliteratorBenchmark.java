@@ -0,0 +1,99 @@
+/* Benchmarks of the thingy Spliterator.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run SpliteratorBenchmark
+
+   AltFnInvocablePersistentVector's spliterator walks the trie and splits on
+   leaf and subtree boundaries. Its previous spliterator was a port of
+   clojure.lang.PersistentVector's `rangedSpliterator`, which splits at
+   arbitrary midpoints and descends from the root for every leaf. The
+   "persistent-vector" impl therefore measures the previous design.
+
+   `forEachRemaining` and `tryAdvance` traverse one unsplit spliterator.
+   `splitFully` splits recursively down to single leaves (or single elements,
+   for PersistentVector) and then traverses every piece, as a parallel stream
+   would, but on one thread. `parallelSum` runs a parallel StreamSupport
+   pipeline. */
+
+package com.sagevisuals.bench;
+
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+import clojure.java.api.Clojure;
+import clojure.lang.APersistentVector;
+import clojure.lang.PersistentVector;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xmx3g"})
+@State(Scope.Benchmark)
+public class SpliteratorBenchmark {
+
+    @Param({"thingy", "persistent-vector"})
+    public String impl;
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    APersistentVector v;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	Object[] items = new Object[size];
+	for (int i = 0; i < size; i++)
+	    items[i] = (long) i;
+	if ("thingy".equals(impl))
+	    v = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+	else
+	    v = PersistentVector.create(items);
+    }
+
+    Spliterator<?> spliterator() {
+	return ((Collection<?>) v).spliterator();
+    }
+
+    @Benchmark
+    public void forEachRemaining(Blackhole bh) {
+	spliterator().forEachRemaining(bh::consume);
+    }
+
+    @Benchmark
+    public void tryAdvance(Blackhole bh) {
+	Spliterator<?> s = spliterator();
+	Consumer<Object> c = bh::consume;
+	while (s.tryAdvance(c))
+	    ;
+    }
+
+    static void splitAndTraverse(Spliterator<?> s, Consumer<Object> c) {
+	Spliterator<?> prefix = s.trySplit();
+	if (prefix == null) {
+	    s.forEachRemaining(c);
+	    return;
+	}
+	splitAndTraverse(prefix, c);
+	splitAndTraverse(s, c);
+    }
+
+    @Benchmark
+    public void splitFully(Blackhole bh) {
+	splitAndTraverse(spliterator(), bh::consume);
+    }
+
+    @Benchmark
+    public long parallelSum() {
+	return StreamSupport.stream(spliterator(), true).mapToLong(x -> (Long) x).sum();
+    }
+}
@@ -0,0 +1,82 @@
+/* Benchmarks of equality, comparison, and `diff` between thingy versions.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run StructuralEqualityBenchmark
+
+   `a` is a thingy of `size` longs and `b` is `a` with one element replaced
+   near the end, by `assocN`. With `sharing` "shared", `b` is derived from `a`
+   and shares every trie node off the edited path, so the comparisons skip
+   them. With "copied", `b` is built independently with the same elements, so
+   no nodes are shared and every element up to the edit is compared, as
+   APersistentVector's element-by-element methods would. `equivSelf` compares `a`
+   with a structurally identical version (`a` with its last element replaced
+   by itself). */
+
+package com.sagevisuals.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.Symbol;
+import clojure.lang.Util;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class StructuralEqualityBenchmark {
+
+    @Param({"shared", "copied"})
+    public String sharing;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    AltFnInvocablePersistentVector a;
+    AltFnInvocablePersistentVector b;
+    AltFnInvocablePersistentVector same;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	Object[] items = new Object[size];
+	for (int i = 0; i < size; i++)
+	    items[i] = (long) i;
+	a = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+	int edited = size - 40;
+	if ("shared".equals(sharing)) {
+	    b = (AltFnInvocablePersistentVector) a.assocN(edited, -1L);
+	    same = (AltFnInvocablePersistentVector) a.assocN(size - 1, a.nth(size - 1));
+	} else {
+	    items[edited] = -1L;
+	    b = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+	    items[edited] = (long) edited;
+	    same = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+	}
+    }
+
+    @Benchmark
+    public boolean equiv() {
+	return Util.equiv(a, b);
+    }
+
+    @Benchmark
+    public boolean equivSelf() {
+	return Util.equiv(a, same);
+    }
+
+    @Benchmark
+    public int compare() {
+	return a.compareTo(b);
+    }
+
+    @Benchmark
+    public Object diff() {
+	return a.diff(b);
+    }
+}
@@ -0,0 +1,64 @@
+/* Benchmarks of reducing windows of a thingy.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run SubvecBenchmark
+
+   Each operation creates a 1000-element window of a 100,000-element thingy
+   and sums it. "subvec" is clojure.core/subvec (APersistentVector.SubVector),
+   which reduces through `nth`; "alt-fn-subvec" is AltFnInvocableSubVector,
+   which reduces over the thingy's leaf arrays. */
+
+package com.sagevisuals.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.AFn;
+import clojure.lang.IFn;
+import clojure.lang.IReduceInit;
+import clojure.lang.Numbers;
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import com.sagevisuals.AltFnInvocableSubVector;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SubvecBenchmark {
+
+    @Param({"subvec", "alt-fn-subvec"})
+    public String impl;
+
+    static final IFn PLUS = new AFn() {
+	    public Object invoke(Object a, Object b) {return Numbers.add(a, b);}
+	};
+
+    static final IFn REDUCE = Clojure.var("clojure.core", "reduce");
+
+    AltFnInvocablePersistentVector v;
+    int start;
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	Object[] items = new Object[100000];
+	for (int i = 0; i < items.length; i++)
+	    items[i] = (long) i;
+	v = AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+    }
+
+    @Benchmark
+    public Object windowSum() {
+	start = (start + 7919) % 99000;
+	Object w = "subvec".equals(impl)
+	    ? RT.subvec(v, start, start + 1000)
+	    : AltFnInvocableSubVector.create(v, start, start + 1000);
+	return REDUCE.invoke(PLUS, 0L, w);
+    }
+}
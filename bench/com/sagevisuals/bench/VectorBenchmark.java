@@ -0,0 +1,182 @@
+/* Benchmarks comparing AltFnInvocablePersistentVector with
+   clojure.lang.PersistentVector.
+
+   Run from the project root directory:
+
+   $ lein with-profile +jmh run VectorBenchmark
+
+   Each benchmark method operates on `v`, which is built by either class
+   according to the `impl` parameter, so every method body is shared and each
+   forked JVM sees only one vector class. Elements are the Longs 0 through
+   size-1. Benchmarks that require an element (e.g., `nth`, `pop`) return
+   immediately for the empty vector.
+
+   Results from a reference run are kept in bench/results/. */
+
+package com.sagevisuals.bench;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import clojure.java.api.Clojure;
+import clojure.lang.AFn;
+import clojure.lang.APersistentVector;
+import clojure.lang.IEditableCollection;
+import clojure.lang.IFn;
+import clojure.lang.IKVReduce;
+import clojure.lang.IPersistentStack;
+import clojure.lang.IPersistentVector;
+import clojure.lang.IReduceInit;
+import clojure.lang.ISeq;
+import clojure.lang.ITransientCollection;
+import clojure.lang.PersistentVector;
+import clojure.lang.Symbol;
+import com.sagevisuals.AltFnInvocablePersistentVector;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xmx3g"})
+@State(Scope.Benchmark)
+public class VectorBenchmark {
+
+    @Param({"thingy", "persistent-vector"})
+    public String impl;
+
+    @Param({"0", "1", "32", "1000", "100000", "10000000"})
+    public int size;
+
+    Object[] items;
+    APersistentVector v;
+
+    // clojure.core.reducers/fold and clojure.core/+, resolved in setup().
+    IFn fold;
+    IFn plus;
+
+    // Pre-computed random indices, so that index generation is not measured.
+    int[] indices;
+    int next;
+
+    static final IFn LAST = new AFn() {
+	    public Object invoke(Object acc, Object x) {
+		return x;
+	    }
+	};
+
+    static final IFn KV_LAST = new AFn() {
+	    public Object invoke(Object acc, Object k, Object x) {
+		return x;
+	    }
+	};
+
+    static APersistentVector build(String impl, Object[] items) {
+	if ("thingy".equals(impl))
+	    return AltFnInvocablePersistentVector.create(AltFnInvocablePersistentVector.OPTIONS, items);
+	return PersistentVector.create(items);
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("thingy.dangerous-vector"));
+	Clojure.var("clojure.core", "require").invoke(Symbol.intern("clojure.core.reducers"));
+	fold = Clojure.var("clojure.core.reducers", "fold");
+	plus = Clojure.var("clojure.core", "+");
+	items = new Object[size];
+	for (int i = 0; i < size; i++)
+	    items[i] = (long) i;
+	v = build(impl, items);
+
+	Random random = new Random(42);
+	indices = new int[1024];
+	for (int i = 0; i < indices.length; i++)
+	    indices[i] = (size == 0) ? 0 : random.nextInt(size);
+    }
+
+    int nextIndex() {
+	return indices[next++ & 1023];
+    }
+
+    @Benchmark
+    public Object nth() {
+	if (size == 0)
+	    return null;
+	return v.nth(nextIndex());
+    }
+
+    @Benchmark
+    public Object assocN() {
+	if (size == 0)
+	    return null;
+	return v.assocN(nextIndex(), Boolean.TRUE);
+    }
+
+    @Benchmark
+    public Object cons() {
+	return v.cons(Boolean.TRUE);
+    }
+
+    @Benchmark
+    public Object pop() {
+	if (size == 0)
+	    return null;
+	return ((IPersistentStack) v).pop();
+    }
+
+    @Benchmark
+    public Object reduce() {
+	return ((IReduceInit) v).reduce(LAST, null);
+    }
+
+    @Benchmark
+    public Object kvreduce() {
+	return ((IKVReduce) v).kvreduce(KV_LAST, null);
+    }
+
+    @Benchmark
+    public void seqIteration(Blackhole bh) {
+	for (ISeq s = v.seq(); s != null; s = s.next())
+	    bh.consume(s.first());
+    }
+
+    // `filter` clears the SIZED characteristic, so `count` must traverse.
+
+    @Benchmark
+    public long stream() {
+	return ((Collection<?>) v).stream().filter(x -> x != null).count();
+    }
+
+    @Benchmark
+    public long parallelStream() {
+	return ((Collection<?>) v).parallelStream().filter(x -> x != null).count();
+    }
+
+    // A thingy folds through its own CollFold extension; a PersistentVector
+    // through clojure.core.reducers' `foldvec`.
+
+    @Benchmark
+    public Object fold() {
+	return fold.invoke(plus, plus, v);
+    }
+
+    @Benchmark
+    public Object create() {
+	return build(impl, items);
+    }
+
+    @Benchmark
+    public Object transientBuild() {
+	ITransientCollection t = ((IEditableCollection) build(impl, new Object[0])).asTransient();
+	for (Object x : items)
+	    t = t.conj(x);
+	return t.persistent();
+    }
+
+    @Benchmark
+    public String toStringBenchmark() {
+	return v.toString();
+    }
+}
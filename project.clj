@@ -10,7 +10,13 @@
                                   [com.sagevisuals/readmoi "3"]]
                    :plugins [[dev.weavejester/lein-cljfmt "0.12.0"]
                              [lein-codox "0.10.8"]]}
-             :repl {}}
+             :repl {}
+             ;; JMH benchmarks; see bench/com/sagevisuals/bench/
+             ;; $ lein with-profile +jmh run <benchmark regex> <JMH options>
+             :jmh {:dependencies [[org.openjdk.jmh/jmh-core "1.37"]
+                                  [org.openjdk.jmh/jmh-generator-annprocess "1.37"]]
+                   :java-source-paths ["bench"]
+                   :main org.openjdk.jmh.Main}}
   :java-source-paths ["src/com/sagevisuals/thingy"]
   :javac-options ["-d" "@src/utilities/javac_destination"
                   "-cp" "@src/utilities/javac_classpath"]
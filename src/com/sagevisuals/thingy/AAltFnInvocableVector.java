@@ -0,0 +1,1217 @@
+/* The invocation and printing behavior shared by every thingy implementation,
+   extracted from AltFnInvocablePersistentVector. */
+
+package com.sagevisuals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import clojure.lang.*;
+
+// Every subclass holds an `options` atom that wraps a Clojure hash-map with
+// the following MapEntry elements:
+// :fn                a clojure.lang.IFn
+// :left-delimiter    a string
+// :right-delimiter   a string
+//
+// Subclasses supply the storage (count, nth, etc.); this class supplies the
+// dynamically-settable invocation and `toString` behaviors.
+
+public abstract class AAltFnInvocableVector extends APersistentVector {
+
+    private static final long serialVersionUID = -1463470236768006657L;
+
+    // Changed to a public field (and removed `final` modifier) so that
+    // `options` map (contained in an Atom) may be dynamically passed.
+
+    public clojure.lang.Atom options;
+
+    // Reduces elements [start, end) with `f`, starting from `init`, walking the
+    // leaves directly. A Reduced value is returned without being dereferenced.
+    // `kvreduceRange` passes each element's index as well.
+
+    abstract Object reduceRange(IFn f, Object init, int start, int end);
+    abstract Object kvreduceRange(IFn f, Object init, int start, int end);
+
+    // Returns a chunk over the leaf holding index `i`, from `i` up to the end
+    // of that leaf or to `end`, whichever comes first, without copying.
+
+    abstract IChunk chunkFor(int i, int end);
+
+    // Parallel fold, as clojure.core.reducers/fold (see the CollFold extension
+    // in thingy.dangerous-vector). The index range is split recursively until
+    // each piece holds at most `n` elements (rounded up to whole 32-element
+    // leaves); the pieces are reduced with `reducef` on the fork-join pool,
+    // each from `(combinef)`, and the results are joined pairwise with
+    // `combinef`. `kvfold` calls `reducef` with the accumulator, index, and
+    // element.
+
+    public Object fold(long n, IFn combinef, IFn reducef){
+	return fold(n, combinef, reducef, false);
+    }
+
+    public Object kvfold(long n, IFn combinef, IFn reducef){
+	return fold(n, combinef, reducef, true);
+    }
+
+    private Object fold(long n, IFn combinef, IFn reducef, boolean kv){
+	int chunk = (int) Math.min(Integer.MAX_VALUE & ~31, Math.max(32, (n + 31) & ~31L));
+	FoldTask task = new FoldTask(this, 0, count(), chunk, combinef, reducef, kv);
+	if(ForkJoinTask.inForkJoinPool())
+	    return task.invoke();
+	return ForkJoinPool.commonPool().invoke(task);
+    }
+
+    static final class FoldTask extends RecursiveTask<Object> {
+	private static final long serialVersionUID = 9139268272216931957L;
+
+	final AAltFnInvocableVector vec;
+	final int start;
+	final int end;
+	final int chunk;
+	final IFn combinef;
+	final IFn reducef;
+	final boolean kv;
+
+	FoldTask(AAltFnInvocableVector vec, int start, int end, int chunk, IFn combinef, IFn reducef, boolean kv){
+	    this.vec = vec;
+	    this.start = start;
+	    this.end = end;
+	    this.chunk = chunk;
+	    this.combinef = combinef;
+	    this.reducef = reducef;
+	    this.kv = kv;
+	}
+
+	protected Object compute(){
+	    if(end - start <= chunk)
+		{
+		    Object init = combinef.invoke();
+		    Object ret = kv ?
+			vec.kvreduceRange(reducef, init, start, end)
+			: vec.reduceRange(reducef, init, start, end);
+		    return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+		}
+	    // Split near the middle, on the boundary of the largest subtree
+	    // (32, 1024, 32768, ... elements) that fits in half the range, so
+	    // that neither half shares a leaf, and large halves share no subtree.
+	    int half = Math.max(32, (end - start) >>> 1);
+	    int block = 32;
+	    while(block <= (half >>> 5))
+		block <<= 5;
+	    int mid = ((start + half) / block) * block;
+	    FoldTask right = new FoldTask(vec, mid, end, chunk, combinef, reducef, kv);
+	    right.fork();
+	    Object left = new FoldTask(vec, start, mid, chunk, combinef, reducef, kv).compute();
+	    return combinef.invoke(left, right.join());
+	}
+    }
+
+    // Returns the index of the first element of the leaf holding index `i`.
+
+    int leafStart(int i){
+	return i & ~0x01f;
+    }
+
+    // Returns a chunk of the elements from the start of the leaf holding
+    // index `i` up to `i`, inclusive.
+
+    IChunk leafChunkTo(int i){
+	return chunkFor(leafStart(i), i + 1);
+    }
+
+    // `rseq` walks the leaves from the last backwards. Each leaf is found with
+    // a single descent from the root, and stepping within a leaf allocates
+    // only the seq node. Chunk-aware consumers (`map`, `doseq`, `into`, etc.)
+    // receive one reversed chunk per leaf. `reduce` over the result walks the
+    // leaves directly, allocating no seq at all, and its spliterator splits
+    // on leaf and subtree boundaries as the forward one does.
+
+    public ISeq rseq(){
+	int i = count() - 1;
+	if(i >= 0)
+	    return new RSeq(null, this, leafChunkTo(i), leafStart(i), i);
+	return null;
+    }
+
+    static final class ReverseChunk implements IChunk {
+	final IChunk c;
+	final int cnt;
+
+	ReverseChunk(IChunk c){
+	    this(c, c.count());
+	}
+
+	ReverseChunk(IChunk c, int cnt){
+	    this.c = c;
+	    this.cnt = cnt;
+	}
+
+	public Object nth(int i){
+	    return c.nth(cnt - 1 - i);
+	}
+
+	public Object nth(int i, Object notFound){
+	    if(i >= 0 && i < cnt)
+		return nth(i);
+	    return notFound;
+	}
+
+	public int count(){
+	    return cnt;
+	}
+
+	public IChunk dropFirst(){
+	    if(cnt == 0)
+		throw new IllegalStateException("dropFirst of empty chunk");
+	    return new ReverseChunk(c, cnt - 1);
+	}
+
+	public Object reduce(IFn f, Object init){
+	    for(int j = cnt - 1; j >= 0; --j)
+		{
+		    init = f.invoke(init, c.nth(j));
+		    if(RT.isReduced(init))
+			return init;
+		}
+	    return init;
+	}
+    }
+
+    // The elements from index `i` down to 0. `leaf` holds the elements from
+    // `base`, the start of the leaf, up to `i`, in forward order.
+
+    static public final class RSeq extends ASeq implements IChunkedSeq, Counted, IReduce, IDrop {
+	private static final long serialVersionUID = -4576428032304455890L;
+
+	final AAltFnInvocableVector vec;
+	final IChunk leaf;
+	final int base;
+	final int i;
+
+	RSeq(IPersistentMap meta, AAltFnInvocableVector vec, IChunk leaf, int base, int i){
+	    super(meta);
+	    this.vec = vec;
+	    this.leaf = leaf;
+	    this.base = base;
+	    this.i = i;
+	}
+
+	static RSeq at(AAltFnInvocableVector vec, int j){
+	    return new RSeq(null, vec, vec.leafChunkTo(j), vec.leafStart(j), j);
+	}
+
+	public int index(){
+	    return i;
+	}
+
+	public Object first(){
+	    return leaf.nth(i - base);
+	}
+
+	public ISeq next(){
+	    if(i > base)
+		return new RSeq(null, vec, leaf, base, i - 1);
+	    return chunkedNext();
+	}
+
+	public IChunk chunkedFirst(){
+	    return new ReverseChunk(leaf, i - base + 1);
+	}
+
+	public ISeq chunkedNext(){
+	    if(base > 0)
+		return at(vec, base - 1);
+	    return null;
+	}
+
+	public ISeq chunkedMore(){
+	    ISeq s = chunkedNext();
+	    if(s == null)
+		return PersistentList.EMPTY;
+	    return s;
+	}
+
+	public int count(){
+	    return i + 1;
+	}
+
+	public Obj withMeta(IPersistentMap meta){
+	    if(meta == meta())
+		return this;
+	    return new RSeq(meta, vec, leaf, base, i);
+	}
+
+	public Sequential drop(int n){
+	    int j = i - n;
+	    if(j >= base)
+		return new RSeq(null, vec, leaf, base, j);
+	    if(j >= 0)
+		return at(vec, j);
+	    return null;
+	}
+
+	public Object reduce(IFn f, Object init){
+	    Object ret = chunkedFirst().reduce(f, init);
+	    for(int j = base - 1; j >= 0 && !RT.isReduced(ret);)
+		{
+		    IChunk c = vec.leafChunkTo(j);
+		    ret = new ReverseChunk(c).reduce(f, ret);
+		    j -= c.count();
+		}
+	    return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+	}
+
+	public Object reduce(IFn f){
+	    ISeq rest = next();
+	    if(rest == null)
+		return first();
+	    return ((IReduceInit) rest).reduce(f, first());
+	}
+
+	public Iterator<Object> iterator(){
+	    return Spliterators.iterator(spliterator());
+	}
+
+	public Spliterator<Object> spliterator(){
+	    return new ReverseSpliterator(vec, 0, i + 1);
+	}
+    }
+
+    // Traverses the elements of [lo, hi) from `hi - 1` down to `lo`. The
+    // encounter order is descending, so `trySplit` hands off the upper part
+    // of the range, cut on a leaf or subtree boundary.
+
+    static final class ReverseSpliterator implements Spliterator<Object> {
+	final AAltFnInvocableVector vec;
+	final int lo;
+	int hi;
+	IChunk leaf;
+	int base = Integer.MAX_VALUE;
+
+	ReverseSpliterator(AAltFnInvocableVector vec, int lo, int hi){
+	    this.vec = vec;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	public int characteristics(){
+	    return Spliterator.IMMUTABLE | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+	}
+
+	public long estimateSize(){
+	    return hi - lo;
+	}
+
+	public boolean tryAdvance(Consumer<? super Object> action){
+	    if(hi <= lo)
+		return false;
+	    int x = --hi;
+	    if(x < base)
+		{
+		    leaf = vec.leafChunkTo(x);
+		    base = vec.leafStart(x);
+		}
+	    action.accept(leaf.nth(x - base));
+	    return true;
+	}
+
+	public void forEachRemaining(Consumer<? super Object> action){
+	    while(hi > lo)
+		{
+		    int x = hi - 1;
+		    if(x < base)
+			{
+			    leaf = vec.leafChunkTo(x);
+			    base = vec.leafStart(x);
+			}
+		    int stop = Math.max(base, lo);
+		    for(int j = x; j >= stop; --j)
+			action.accept(leaf.nth(j - base));
+		    hi = stop;
+		}
+	}
+
+	public Spliterator<Object> trySplit(){
+	    if(hi - lo <= 32)
+		return null;
+	    int half = (hi - lo) >>> 1;
+	    int block = 32;
+	    while(block <= (half >>> 5))
+		block <<= 5;
+	    int mid = ((lo + half) / block) * block;
+	    if(mid <= lo || mid >= hi)
+		return null;
+	    Spliterator<Object> prefix = new ReverseSpliterator(vec, mid, hi);
+	    hi = mid;
+	    leaf = null;
+	    base = Integer.MAX_VALUE;
+	    return prefix;
+	}
+    }
+
+    // Renders this instance to `w`, delimited by the `options` delimiters. Elements
+    // are streamed straight to the writer with RT.print(), so no intermediate
+    // string is built. As with clojure.core/print-sequential, *print-length*
+    // stops the walk after that many elements (no further leaves are visited)
+    // and *print-level* limits nesting. Neither applies while *print-dup* is
+    // bound.
+
+    static final Var PRINT_LENGTH = RT.var("clojure.core", "*print-length*");
+    static final Var PRINT_LEVEL = RT.var("clojure.core", "*print-level*");
+    static final Var PRINT_DUP = RT.var("clojure.core", "*print-dup*");
+
+    public void print(Writer w) throws IOException {
+	ILookup optionsMap = (ILookup) this.options.deref();
+	print(w,
+	      (String) optionsMap.valAt(LEFT_DELIMITER_KEY),
+	      (String) optionsMap.valAt(RIGHT_DELIMITER_KEY));
+    }
+
+    public void print(Writer w, String left, String right) throws IOException {
+	boolean dup = RT.booleanCast(PRINT_DUP.deref());
+	Object level = dup ? null : PRINT_LEVEL.deref();
+	if(level == null)
+	    {
+		printElements(w, left, right, dup);
+		return;
+	    }
+	long nextLevel = ((Number) level).longValue() - 1;
+	if(nextLevel < 0)
+	    {
+		w.write('#');
+		return;
+	    }
+	Var.pushThreadBindings(RT.map(PRINT_LEVEL, nextLevel));
+	try
+	    {
+		printElements(w, left, right, dup);
+	    }
+	finally
+	    {
+		Var.popThreadBindings();
+	    }
+    }
+
+    private void printElements(Writer w, String left, String right, boolean dup) throws IOException {
+	Object length = dup ? null : PRINT_LENGTH.deref();
+	long limit = (length == null) ? Long.MAX_VALUE : ((Number) length).longValue();
+	w.write(left);
+	Iterator<?> it = iterator();
+	for(long i = 0; it.hasNext(); ++i)
+	    {
+		if(i > 0)
+		    w.write(' ');
+		if(i == limit)
+		    {
+			w.write("...");
+			break;
+		    }
+		RT.print(it.next(), w);
+	    }
+	w.write(right);
+    }
+
+    @Override
+    public String toString() {
+	// Run-of-the-mill Clojure vectors are delimited by a preceeding left
+	// square bracket char, [, and a trailing right bracket char, ]. To
+	// distinguish this class, this instance method uses the (presumably
+	// different) delimiters specified in the `options` atom.
+
+	// `options` is an instance field which is assigned a Clojure atom
+	// during a call to the constructor. The atom contains a Clojure
+	// hash-map with the following MapEntry elements:
+	// :fn                a clojure.lang.IFn
+	// :left-delimiter    a string
+	// :right-delimiter   a string
+
+	ThingyEvents.ToString event = new ThingyEvents.ToString();
+	boolean recording = event.isEnabled();
+	if(recording)
+	    event.begin();
+	StringWriter sw = new StringWriter();
+	try
+	    {
+		print(sw);
+	    }
+	catch(IOException e)
+	    {
+		throw Util.sneakyThrow(e);
+	    }
+	String s = sw.toString();
+	if(recording)
+	    {
+		event.count = count();
+		event.length = s.length();
+		event.commit();
+	    }
+	return s;
+    }
+
+    // I would very much prefer to avoid the following duplicated methods by
+    // overriding the superclass' `invoke` methods with a single varargs
+    // declaration of the form
+    //
+    // public Object invoke(Object... args)
+    //
+    // However, clojure.lang.AFn explicitly defines each arity
+    //
+    // invoke()
+    // invoke(Object arg1)
+    // invoke(Object arg1, Object arg2)
+    // invoke(Object arg1, Object arg2, Object arg3)
+    // etc.
+    // <up to twenty-one args>
+    //
+    // However, my understandinging of *The Java Language Specification*
+    // §15.12.2 is that those methods with enumerated arities in the superclass
+    // will take precedence over the varargs method in the subclass because
+    // the enumerated methods in the superclass are more specific. Therefore,
+    // the varargs method in the subclass will never be called.
+    //
+    // To override the enumerated-arity methods of the superclass, this subclass
+    // must also define the `invoke` methods with explicit arities (i.e., not
+    // varargs).
+
+    // The `options` hash-map is consulted on every invocation, so the keys are
+    // interned once here rather than once per call.
+
+    static final Keyword FN_KEY = Keyword.intern(null, "fn");
+    static final Keyword LEFT_DELIMITER_KEY = Keyword.intern(null, "left-delimiter");
+    static final Keyword RIGHT_DELIMITER_KEY = Keyword.intern(null, "right-delimiter");
+
+    // `OPTIONS` is the atom shared by every instance created through
+    // thingy.dangerous-vector (which adopts it as its `options` var). It is
+    // created here, rather than in the Clojure namespace, so that it is a
+    // static final constant that the JIT compiler can reason about.
+    //
+    // The invocation function assigned to `OPTIONS` changes rarely but is read
+    // on every call. Instead of dereferencing the atom and looking up `:fn` on
+    // each invocation, the current function is held as the constant target of
+    // a MutableCallSite. A watch on `OPTIONS` re-links the call site whenever
+    // the atom changes (e.g., `reset!-options`, `assign-thingy-fn!`,
+    // `defaultize!-options`). Between changes, C2 treats the function as a
+    // constant and may inline it into the caller; re-linking deoptimizes only
+    // the code that depends on the call site.
+
+    public static final Atom OPTIONS = new Atom(PersistentArrayMap.EMPTY);
+
+    static final MethodHandle LOOKUP_OPTIONS_FN;
+    static final MutableCallSite OPTIONS_FN_SITE;
+    static final MethodHandle OPTIONS_FN;
+
+    static {
+	try {
+	    LOOKUP_OPTIONS_FN = MethodHandles.lookup().findStatic(AAltFnInvocableVector.class,
+							  "lookupOptionsFn",
+							  MethodType.methodType(IFn.class));
+	} catch (ReflectiveOperationException e) {
+	    throw new ExceptionInInitializerError(e);
+	}
+	OPTIONS_FN_SITE = new MutableCallSite(LOOKUP_OPTIONS_FN);
+	OPTIONS_FN = OPTIONS_FN_SITE.dynamicInvoker();
+	OPTIONS.addWatch(Keyword.intern("com.sagevisuals", "invocation-call-site"),
+			 new AFn() {
+			     public Object invoke(Object key, Object ref, Object oldval, Object newval) {
+				 relinkOptionsFn();
+				 return null;
+			     }
+			 });
+    }
+
+    // Returns the function currently assigned to `OPTIONS`.
+
+    static IFn optionsFn() {
+	try {
+	    return (IFn) OPTIONS_FN.invokeExact();
+	} catch (Throwable t) {
+	    throw Util.sneakyThrow(t);
+	}
+    }
+
+    static IFn lookupOptionsFn() {
+	return (IFn) ((ILookup) OPTIONS.deref()).valAt(FN_KEY);
+    }
+
+    // Watches may run out of order when two threads change `OPTIONS`
+    // concurrently, so the new target is always read from the atom's current
+    // value rather than taken from the watch's `newval` argument.
+
+    static synchronized void relinkOptionsFn() {
+	IFn fn = lookupOptionsFn();
+	OPTIONS_FN_SITE.setTarget((fn == null) ? LOOKUP_OPTIONS_FN : MethodHandles.constant(IFn.class, fn));
+	MutableCallSite.syncAll(new MutableCallSite[]{OPTIONS_FN_SITE});
+    }
+
+    // `FN_BINDING` is a dynamic Var whose thread binding, when not nil,
+    // overrides the invocation function of every instance invoked on that
+    // thread, whatever its options atom. It is bound with `pushFnBinding` (see
+    // `with-alt-fn` in thingy.dangerous-vector), so each thread, including
+    // each virtual thread, sees only its own override, and binding conveyance
+    // (`future`, `bound-fn`, etc.) carries it to other threads. No lock is
+    // taken.
+    //
+    // Looking a Var up in the thread's binding frame costs tens of
+    // nanoseconds, so it is avoided on the `invoke` path: until the first
+    // `pushFnBinding` in the JVM, the check is a single field read; after it,
+    // the resolved binding is cached per thread against the identity of the
+    // thread's current binding frame. Frames are immutable and every
+    // push/pop installs a new one, so the cache is stale exactly when the
+    // frame has changed.
+
+    public static final Var FN_BINDING = Var.create(null).setDynamic();
+
+    static volatile boolean fnBindingUsed = false;
+
+    static final ThreadLocal<Object[]> FN_BINDING_CACHE = ThreadLocal.withInitial(() -> new Object[2]);
+
+    // Pushes a thread binding of `FN_BINDING` to `f`. The caller must pop it
+    // with `popFnBinding`.
+
+    public static void pushFnBinding(Object f) {
+	fnBindingUsed = true;
+	Var.pushThreadBindings(RT.map(FN_BINDING, f));
+    }
+
+    // Pops the binding pushed by `pushFnBinding`, and empties this thread's
+    // cache, which would otherwise keep the popped frame, its whole binding
+    // map, and `f` reachable until the thread next invoked a thingy.
+
+    public static void popFnBinding() {
+	Var.popThreadBindings();
+	Object[] cache = FN_BINDING_CACHE.get();
+	cache[0] = null;
+	cache[1] = null;
+    }
+
+    static Object boundFn() {
+	Object frame = Var.getThreadBindingFrame();
+	Object[] cache = FN_BINDING_CACHE.get();
+	if(cache[0] != frame) {
+	    cache[1] = FN_BINDING.deref();
+	    cache[0] = frame;
+	}
+	return cache[1];
+    }
+
+    // Returns the current invocation function. Any clojure.lang.IFn is
+    // accepted (functions, vars, keywords, maps, etc.), not merely instances of
+    // clojure.lang.AFn. Instances holding some atom other than `OPTIONS` fall
+    // back to dereferencing their atom. While the Invocation event is enabled
+    // in a flight recording, the function is wrapped to record each call (see
+    // ThingyEvents).
+
+    final IFn invocationFn() {
+	return ThingyEvents.timed(resolveFn());
+    }
+
+    final IFn resolveFn() {
+	if(fnBindingUsed) {
+	    Object override = boundFn();
+	    if(override != null)
+		return (IFn) override;
+	}
+	if(this.options == OPTIONS)
+	    return optionsFn();
+	return (IFn) ((ILookup) this.options.deref()).valAt(FN_KEY);
+    }
+
+    // Returns a CompletableFuture of this instance's invocation with `args`,
+    // run by AsyncInvoker.DEFAULT. The invocation function is resolved now,
+    // not when the call runs.
+
+    public java.util.concurrent.CompletableFuture<Object> invokeAsync(Object... args) {
+	return AsyncInvoker.DEFAULT.invokeAsync(this, args);
+    }
+
+    // Each `invoke` passes this instance followed by the arguments directly to
+    // the enumerated arity of the invocation function. This avoids allocating
+    // an argument array and ArraySeq, and avoids the `applyTo` -> `applyToHelper`
+    // round trip, on every call.
+
+    @Override
+    public Object invoke() {
+	return invocationFn().invoke(this);
+    }
+
+    @Override
+    public Object invoke(Object arg0) {
+	// Standard Clojure vectors perform an `nth`/`get` when in the function
+	// postion of an S-expression followed by an integer. This instance
+	// method makes the behavior dynamic. An instance of this class contains
+	// `options`, a Clojure atom that wraps a hash-map. That hash-map holds
+	// at least three key-vals, including `:fn`, which associates a
+	// clojure.lang.IFn that consumes an instance as the first argument, and
+	// any Object as the second argument.
+
+	return invocationFn().invoke(this, arg0);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11,
+				     arg12);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11,
+				     arg12,
+				     arg13);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11,
+				     arg12,
+				     arg13,
+				     arg14);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11,
+				     arg12,
+				     arg13,
+				     arg14,
+				     arg15);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11,
+				     arg12,
+				     arg13,
+				     arg14,
+				     arg15,
+				     arg16);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11,
+				     arg12,
+				     arg13,
+				     arg14,
+				     arg15,
+				     arg16,
+				     arg17);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11,
+				     arg12,
+				     arg13,
+				     arg14,
+				     arg15,
+				     arg16,
+				     arg17,
+				     arg18);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18,
+			 Object arg19) {
+	return invocationFn().invoke(this,
+				     arg0,
+				     arg1,
+				     arg2,
+				     arg3,
+				     arg4,
+				     arg5,
+				     arg6,
+				     arg7,
+				     arg8,
+				     arg9,
+				     arg10,
+				     arg11,
+				     arg12,
+				     arg13,
+				     arg14,
+				     arg15,
+				     arg16,
+				     arg17,
+				     arg18,
+				     new Object[]{arg19});
+    }
+
+    // Beyond twenty arguments, the instance and its arguments no longer fit
+    // the invocation function's enumerated arities, so they are copied once
+    // into an array and handed to its `applyTo`.
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18,
+			 Object arg19,
+			 Object... args) {
+	Object[] all = new Object[21 + args.length];
+	all[0] = this;
+	all[1] = arg0;
+	all[2] = arg1;
+	all[3] = arg2;
+	all[4] = arg3;
+	all[5] = arg4;
+	all[6] = arg5;
+	all[7] = arg6;
+	all[8] = arg7;
+	all[9] = arg8;
+	all[10] = arg9;
+	all[11] = arg10;
+	all[12] = arg11;
+	all[13] = arg12;
+	all[14] = arg13;
+	all[15] = arg14;
+	all[16] = arg15;
+	all[17] = arg16;
+	all[18] = arg17;
+	all[19] = arg18;
+	all[20] = arg19;
+	System.arraycopy(args, 0, all, 21, args.length);
+	return invocationFn().applyTo(ArraySeq.create(all));
+    }
+
+    // `apply` on an instance prepends the instance to the argument seq in
+    // O(1) and defers to the invocation function's own `applyTo`, instead of
+    // AFn's `applyToHelper`, which would count the seq, call back into one of
+    // the methods above, and fail beyond twenty arguments.
+
+    @Override
+    public Object applyTo(ISeq args) {
+	return invocationFn().applyTo(RT.cons(this, args));
+    }
+}
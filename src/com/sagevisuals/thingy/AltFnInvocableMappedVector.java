@@ -0,0 +1,493 @@
+/* A read-only thingy whose elements stay in a memory-mapped file, off the
+   heap. Reads (`nth`, `reduce`, seqs, iterators, and spliterators) go
+   straight to the mapping; a write copies the elements into a heap thingy,
+   which takes that write and is returned. */
+
+package com.sagevisuals;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import clojure.lang.*;
+
+// The file starts with a 32-byte header: the magic number, format version,
+// element type, and element count, and, for the `:value` type, the position
+// of the offset table. Elements of type `:long`, `:double`, `:int`, or
+// `:byte` follow the header at a fixed width each, big-endian. Elements of
+// type `:value` are any values ThingyCodec can encode, each encoded on its
+// own (so that any one can be read without the others), one after another;
+// the offset table after them holds the file position of each element and
+// of the end of the last, as longs.
+//
+// The file is mapped read-only, in segments of 1 GB (a MappedByteBuffer is
+// indexed by int), so files larger than 2 GB map whole. The header, the
+// fixed-width elements, and the offset table are 8-byte aligned, so none of
+// them straddles a segment; a `:value` element may, and is read across it.
+// Only absolute reads are used, so any number of threads may share the
+// mapping. The mapping is released when the vector, and every seq or
+// spliterator over it, has been garbage collected.
+//
+// Primitive elements are returned boxed, as AltFnInvocablePrimitiveVector's
+// `nth` returns them, and the heap thingy made by a write is an
+// AltFnInvocablePrimitiveVector of the same type. A `:value` thingy becomes
+// an AltFnInvocablePersistentVector. Either keeps the options and metadata.
+//
+// The copy is not kept: holding it would pin an on-heap copy of the whole
+// file for as long as the mapped vector lives. So each write to the mapped
+// vector itself (`conj`, `assoc`, `pop`, `transient`) copies every element
+// anew, at a cost proportional to the whole file; later writes belong on the
+// returned heap thingy.
+
+public class AltFnInvocableMappedVector extends AAltFnInvocableVector implements IObj, IEditableCollection, IReduce, IKVReduce, IDrop{
+
+    private static final long serialVersionUID = -5200017490321711403L;
+
+    static final int MAGIC = 0x5448474d; // "THGM"
+    static final int VERSION = 1;
+    static final int HEADER = 32;
+
+    static final int SEGMENT_SHIFT = 30;
+    static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    static final int LONG = 0;
+    static final int DOUBLE = 1;
+    static final int INT = 2;
+    static final int BYTE = 3;
+    static final int VALUE = 4;
+
+    static final Keyword[] TYPES = {Keyword.intern(null, "long"),
+				    Keyword.intern(null, "double"),
+				    Keyword.intern(null, "int"),
+				    Keyword.intern(null, "byte"),
+				    Keyword.intern(null, "value")};
+    static final int[] WIDTHS = {8, 8, 4, 1};
+
+    final ByteBuffer[] segments;
+    final int type;
+    final int cnt;
+    final long table;
+    final IPersistentMap _meta;
+
+    AltFnInvocableMappedVector(IPersistentMap meta, ByteBuffer[] segments, int type, int cnt, long table, clojure.lang.Atom options){
+	this._meta = meta;
+	this.segments = segments;
+	this.type = type;
+	this.cnt = cnt;
+	this.table = table;
+	this.options = options;
+    }
+
+    static int typeCode(Object type){
+	for(int t = 0; t < TYPES.length; ++t)
+	    if(TYPES[t].equals(type))
+		return t;
+	throw new IllegalArgumentException("Unsupported mapped type: " + type + " (expected :long, :double, :int, :byte, or :value)");
+    }
+
+    // Maps the file at `path`, which must have been written by `write`.
+
+    static public AltFnInvocableMappedVector open(clojure.lang.Atom options, Path path) throws IOException {
+	try(FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)){
+	    long size = ch.size();
+	    if(size < HEADER)
+		throw new IOException("Not a mapped thingy file: " + path);
+	    ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+	    for(int k = 0; k < segments.length; ++k)
+		{
+		    long start = (long) k << SEGMENT_SHIFT;
+		    segments[k] = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_MASK + 1, size - start));
+		}
+	    ByteBuffer h = segments[0];
+	    if(h.getInt(0) != MAGIC)
+		throw new IOException("Not a mapped thingy file: " + path);
+	    if(h.getInt(4) != VERSION)
+		throw new IOException("Unsupported mapped thingy version " + h.getInt(4) + ": " + path);
+	    int type = h.getInt(8);
+	    long count = h.getLong(16);
+	    long table = h.getLong(24);
+	    long end = (type == VALUE) ? table + 8 * (count + 1) : HEADER + WIDTHS[Math.max(0, Math.min(type, BYTE))] * count;
+	    if(type < 0 || type > VALUE || count < 0 || count > Integer.MAX_VALUE || end > size)
+		throw new IOException("Corrupt mapped thingy header: " + path);
+	    return new AltFnInvocableMappedVector(null, segments, type, (int) count, table, options);
+	}
+    }
+
+    // Writes the elements of `coll` to a new file at `path` in the layout for
+    // element type `type` (:long, :double, :int, :byte, or :value), streaming
+    // them, so that `coll` need not fit in memory. A `:value` file holds the
+    // offset of each element in memory until the table is written. Since
+    // `open` attaches every nested thingy to one options atom, a `:value`
+    // element holding a thingy of a kind throws IllegalArgumentException,
+    // leaving the file incomplete.
+
+    static public void write(Path path, Object type, Object coll) throws IOException {
+	int t = typeCode(type);
+	try(FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+	    ch.position(HEADER);
+	    CountingOutput counter = new CountingOutput(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16), HEADER);
+	    DataOutputStream out = new DataOutputStream(counter);
+	    long[] offsets = (t == VALUE) ? new long[1024] : null;
+	    int n = 0;
+	    for(ISeq s = RT.seq(coll); s != null; s = s.next())
+		{
+		    Object x = s.first();
+		    switch(t)
+			{
+			case LONG: out.writeLong(RT.longCast(x)); break;
+			case DOUBLE: out.writeDouble(RT.doubleCast(x)); break;
+			case INT: out.writeInt(RT.intCast(x)); break;
+			case BYTE: out.writeByte(RT.byteCast(x)); break;
+			default:
+			    if(n + 1 == offsets.length)
+				offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+			    offsets[n] = counter.position;
+			    new ThingyCodec.Encoder(out, false, false).write(x);
+			}
+		    if(++n == Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many elements for a mapped thingy");
+		}
+	    long table = 0;
+	    if(t == VALUE)
+		{
+		    offsets[n] = counter.position;
+		    while(counter.position % 8 != 0)
+			out.writeByte(0);
+		    table = counter.position;
+		    for(int i = 0; i <= n; ++i)
+			out.writeLong(offsets[i]);
+		}
+	    else
+		while(counter.position % 8 != 0)
+		    out.writeByte(0);
+	    out.flush();
+	    ByteBuffer h = ByteBuffer.allocate(HEADER);
+	    h.putInt(MAGIC).putInt(VERSION).putInt(t).putInt(0).putLong(n).putLong(table).flip();
+	    ch.write(h, 0);
+	}
+    }
+
+    // DataOutputStream's `size` is an int, so file positions, which may pass
+    // 2 GB, are counted here.
+
+    static final class CountingOutput extends java.io.FilterOutputStream {
+	long position;
+
+	CountingOutput(java.io.OutputStream out, long position){
+	    super(out);
+	    this.position = position;
+	}
+
+	public void write(int b) throws IOException {
+	    out.write(b);
+	    position++;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+	    out.write(b, off, len);
+	    position += len;
+	}
+    }
+
+    ByteBuffer segment(long p){
+	return segments[(int) (p >>> SEGMENT_SHIFT)];
+    }
+
+    long longAt(long p){
+	return segment(p).getLong((int) (p & SEGMENT_MASK));
+    }
+
+    double doubleAt(long p){
+	return segment(p).getDouble((int) (p & SEGMENT_MASK));
+    }
+
+    // Reads element `i`, which must be in range.
+
+    Object elementAt(int i){
+	switch(type)
+	    {
+	    case LONG: return longAt(HEADER + 8L * i);
+	    case DOUBLE: return doubleAt(HEADER + 8L * i);
+	    case INT:
+		{
+		    long p = HEADER + 4L * i;
+		    return segment(p).getInt((int) (p & SEGMENT_MASK));
+		}
+	    case BYTE:
+		{
+		    long p = HEADER + i;
+		    return segment(p).get((int) (p & SEGMENT_MASK));
+		}
+	    default:
+		return valueAt(i);
+	    }
+    }
+
+    Object valueAt(int i){
+	long start = longAt(table + 8L * i);
+	long end = longAt(table + 8L * i + 8);
+	try
+	    {
+		return new ThingyCodec.Decoder(new DataInputStream(new MappedInput(start, end)), optionsFor(), false).read();
+	    }
+	catch(IOException e)
+	    {
+		throw Util.sneakyThrow(e);
+	    }
+    }
+
+    // Thingies nested in `:value` elements are attached to this vector's
+    // options; those of a kind cannot be.
+
+    IFn optionsFor(){
+	return new AFn(){
+	    public Object invoke(Object kind){
+		return (kind == null) ? options : null;
+	    }
+	};
+    }
+
+    // Reads the bytes [pos, end) of the mapping, across segments.
+
+    final class MappedInput extends InputStream {
+	long pos;
+	final long end;
+
+	MappedInput(long pos, long end){
+	    this.pos = pos;
+	    this.end = end;
+	}
+
+	public int read(){
+	    if(pos >= end)
+		return -1;
+	    int b = segment(pos).get((int) (pos & SEGMENT_MASK)) & 0xff;
+	    pos++;
+	    return b;
+	}
+    }
+
+    public int count(){
+	return cnt;
+    }
+
+    public Object nth(int i){
+	if(i < 0 || i >= cnt)
+	    throw new IndexOutOfBoundsException();
+	return elementAt(i);
+    }
+
+    public Object nth(int i, Object notFound){
+	if(i >= 0 && i < cnt)
+	    return elementAt(i);
+	return notFound;
+    }
+
+    // Returns a new heap thingy holding these elements, copying every one of
+    // them on each call.
+
+    public AAltFnInvocableVector toHeap(){
+	IObj copy = (type == VALUE)
+	    ? AltFnInvocablePersistentVector.createFrom(options, this)
+	    : AltFnInvocablePrimitiveVector.createFrom(options, TYPES[type], this);
+	return (AAltFnInvocableVector) copy.withMeta(_meta);
+    }
+
+    public IPersistentVector assocN(int i, Object val){
+	return toHeap().assocN(i, val);
+    }
+
+    public IPersistentVector cons(Object val){
+	return toHeap().cons(val);
+    }
+
+    public IPersistentStack pop(){
+	return toHeap().pop();
+    }
+
+    public ITransientCollection asTransient(){
+	return ((IEditableCollection) toHeap()).asTransient();
+    }
+
+    public IPersistentCollection empty(){
+	IObj empty = (type == VALUE)
+	    ? AltFnInvocablePersistentVector.EMPTY(options)
+	    : AltFnInvocablePrimitiveVector.EMPTY(options, AltFnInvocablePrimitiveVector.forType(TYPES[type]));
+	return (IPersistentCollection) empty.withMeta(_meta);
+    }
+
+    public AltFnInvocableMappedVector withMeta(IPersistentMap meta){
+	if(meta == _meta)
+	    return this;
+	return new AltFnInvocableMappedVector(meta, segments, type, cnt, table, options);
+    }
+
+    public IPersistentMap meta(){
+	return _meta;
+    }
+
+    public Keyword type(){
+	return TYPES[type];
+    }
+
+    // Long and double elements are handed to primitive-hinted reducing
+    // functions without boxing.
+
+    Object reduceRange(IFn f, Object init, int start, int end){
+	if(type == LONG && f instanceof IFn.OLO)
+	    {
+		IFn.OLO g = (IFn.OLO) f;
+		for(int i = start; i < end; ++i)
+		    {
+			init = g.invokePrim(init, longAt(HEADER + 8L * i));
+			if(RT.isReduced(init))
+			    return init;
+		    }
+		return init;
+	    }
+	if(type == DOUBLE && f instanceof IFn.ODO)
+	    {
+		IFn.ODO g = (IFn.ODO) f;
+		for(int i = start; i < end; ++i)
+		    {
+			init = g.invokePrim(init, doubleAt(HEADER + 8L * i));
+			if(RT.isReduced(init))
+			    return init;
+		    }
+		return init;
+	    }
+	for(int i = start; i < end; ++i)
+	    {
+		init = f.invoke(init, elementAt(i));
+		if(RT.isReduced(init))
+		    return init;
+	    }
+	return init;
+    }
+
+    Object kvreduceRange(IFn f, Object init, int start, int end){
+	for(int i = start; i < end; ++i)
+	    {
+		init = f.invoke(init, i, elementAt(i));
+		if(RT.isReduced(init))
+		    return init;
+	    }
+	return init;
+    }
+
+    // Chunks are 32-element blocks, read from the mapping into an array.
+
+    IChunk chunkFor(int i, int end){
+	Object[] a = new Object[Math.min(32 - (i & 0x01f), end - i)];
+	for(int j = 0; j < a.length; ++j)
+	    a[j] = elementAt(i + j);
+	return new ArrayChunk(a);
+    }
+
+    public Object reduce(IFn f){
+	if(cnt == 0)
+	    return f.invoke();
+	Object ret = reduceRange(f, elementAt(0), 1, cnt);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public Object reduce(IFn f, Object init){
+	Object ret = reduceRange(f, init, 0, cnt);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public Object kvreduce(IFn f, Object init){
+	Object ret = kvreduceRange(f, init, 0, cnt);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public ISeq seq(){
+	if(cnt == 0)
+	    return null;
+	return new AltFnInvocableSubVector.ChunkedSeq(null, this, chunkFor(0, cnt), 0, cnt);
+    }
+
+    public Sequential drop(int n){
+	if(n < cnt)
+	    return new AltFnInvocableSubVector.ChunkedSeq(null, this, chunkFor(n, cnt), n, cnt);
+	return null;
+    }
+
+    public Iterator<Object> iterator(){
+	return new Iterator<Object>(){
+	    int i = 0;
+
+	    public boolean hasNext(){
+		return i < cnt;
+	    }
+
+	    public Object next(){
+		if(i >= cnt)
+		    throw new NoSuchElementException();
+		return elementAt(i++);
+	    }
+
+	    public void remove(){
+		throw new UnsupportedOperationException();
+	    }
+	};
+    }
+
+    public Spliterator<Object> spliterator(){
+	return new MappedSpliterator(0, cnt);
+    }
+
+    // Splits in halves, on 32-element boundaries while the range allows.
+
+    final class MappedSpliterator implements Spliterator<Object> {
+	int lo;
+	final int hi;
+
+	MappedSpliterator(int lo, int hi){
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	public boolean tryAdvance(Consumer<? super Object> action){
+	    if(lo >= hi)
+		return false;
+	    action.accept(elementAt(lo++));
+	    return true;
+	}
+
+	public void forEachRemaining(Consumer<? super Object> action){
+	    for(; lo < hi; ++lo)
+		action.accept(elementAt(lo));
+	}
+
+	public Spliterator<Object> trySplit(){
+	    int mid = (lo + hi) >>> 1;
+	    if(hi - lo >= 64)
+		mid &= ~0x01f;
+	    if(mid <= lo)
+		return null;
+	    Spliterator<Object> prefix = new MappedSpliterator(lo, mid);
+	    lo = mid;
+	    return prefix;
+	}
+
+	public long estimateSize(){
+	    return hi - lo;
+	}
+
+	public int characteristics(){
+	    return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+	}
+    }
+}
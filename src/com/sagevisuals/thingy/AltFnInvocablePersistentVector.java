@@ -13,34 +13,32 @@
 
 package com.sagevisuals;
 
-import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 import java.util.Spliterator;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import clojure.lang.*;
+import clojure.lang.PersistentVector.Node;
 
-public class AltFnInvocablePersistentVector extends APersistentVector implements IObj, IEditableCollection, IReduce, IKVReduce, IDrop{
+public class AltFnInvocablePersistentVector extends AAltFnInvocableVector implements IObj, IEditableCollection, IReduce, IKVReduce, IDrop{
 
-    private static final long serialVersionUID = -7896022351281214157L;
+    private static final long serialVersionUID = -2989036560897686649L;
 
-    public static class Node implements Serializable {
-	transient public final AtomicReference<Thread> edit;
-	public final Object[] array;
-
-	public Node(AtomicReference<Thread> edit, Object[] array){
-	    this.edit = edit;
-	    this.array = array;
-	}
-
-	Node(AtomicReference<Thread> edit){
-	    this.edit = edit;
-	    this.array = new Object[32];
-	}
-    }
+    // The trie is built from clojure.lang.PersistentVector.Node, rather than a
+    // node class of its own, so that an instance and a PersistentVector can
+    // share their root and tail outright (see `from` and
+    // `toPersistentVector`). Nodes are never written to except by the
+    // transient that owns their `edit` reference, and neither class's
+    // transients own the other's nodes, so sharing is safe in both directions.
+    // Only the two-argument Node constructor is public.
 
     final static AtomicReference<Thread> NOEDIT = new AtomicReference<Thread>(null);
     public final static Node EMPTY_NODE = new Node(NOEDIT, new Object[32]);
@@ -50,7 +48,6 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
     public final Node root;
     public final Object[] tail;
     final IPersistentMap _meta;
-    public clojure.lang.Atom options;
 
     // Changed to a public function (and removed `final` modifier) so that
     // `options` map (contained in an Atom) may be dynamically passed.
@@ -59,17 +56,6 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	return new AltFnInvocablePersistentVector(0, 5, EMPTY_NODE, new Object[]{}, options);
     }
 
-    // anonymous class declaration extending AFn
-
-    private static final IFn TRANSIENT_VECTOR_CONJ = new AFn() {
-	    public Object invoke(Object coll, Object val) {
-		return ((ITransientVector)coll).conj(val);
-	    }
-	    public Object invoke(Object coll) {
-		return coll;
-	    }
-	};
-
     // The following `adopt()` method is problematic, because some external
     // caller might assume it exists, analagously to clojure.lang.PersistentVector,
     // but that external caller might not be aware of the additional requirement
@@ -102,31 +88,23 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
       }
     */
 
+    // The `create` methods below fill 32-element leaf arrays directly and
+    // assemble the trie bottom-up with a Builder, instead of conj-ing each
+    // element onto a transient. Arrays are copied into the leaves with
+    // `System.arraycopy`.
+
     static public AltFnInvocablePersistentVector create(clojure.lang.Atom options, IReduceInit items) {
-	TransientVector ret = EMPTY(options).asTransient();
-	items.reduce(TRANSIENT_VECTOR_CONJ, ret);
-	return ret.persistent();
+	Builder b = new Builder(options);
+	items.reduce(b, b);
+	return b.build();
     }
 
     static public AltFnInvocablePersistentVector create(clojure.lang.Atom options, ISeq items){
-	Object[] arr = new Object[32];
-	int i = 0;
-	for(;items != null && i < 32; items = items.next())
-	    arr[i++] = items.first();
-
-	if(items != null) {  // >32, construct with array directly
-	    AltFnInvocablePersistentVector start = new AltFnInvocablePersistentVector(32, 5, EMPTY_NODE, arr, options);
-	    TransientVector ret = start.asTransient();
-	    for (; items != null; items = items.next())
-		ret = ret.conj(items.first());
-	    return ret.persistent();
-	} else if(i == 32) {   // exactly 32, skip copy
-	    return new AltFnInvocablePersistentVector(32, 5, EMPTY_NODE, arr, options);
-	} else {  // <32, copy to minimum array and construct
-	    Object[] arr2 = new Object[i];
-	    System.arraycopy(arr, 0, arr2, 0, i);
-	    return new AltFnInvocablePersistentVector(i, 5, EMPTY_NODE, arr2, options);
-	}
+	// `(list)` is an ISeq with no elements, so the seq is taken first.
+	Builder b = new Builder(options);
+	for(ISeq s = RT.seq(items); s != null; s = s.next())
+	    b.add(s.first());
+	return b.build();
     }
 
     static public AltFnInvocablePersistentVector create(clojure.lang.Atom options, List list){
@@ -134,10 +112,8 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	if (size <= 32)
 	    return new AltFnInvocablePersistentVector(size, 5, AltFnInvocablePersistentVector.EMPTY_NODE, list.toArray(), options);
 
-	TransientVector ret = EMPTY(options).asTransient();
-	for(int i=0; i<size; i++)
-	    ret = ret.conj(list.get(i));
-	return ret.persistent();
+	Object[] items = list.toArray();
+	return new Builder(options).addAll(items, 0, items.length).build();
     }
 
     static public AltFnInvocablePersistentVector create(clojure.lang.Atom options, Iterable items){
@@ -146,17 +122,325 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	    return create(options, (ArrayList)items);
 
 	Iterator iter = items.iterator();
-	TransientVector ret = EMPTY(options).asTransient();
+	Builder b = new Builder(options);
 	while(iter.hasNext())
-	    ret = ret.conj(iter.next());
-	return ret.persistent();
+	    b.add(iter.next());
+	return b.build();
     }
 
     static public AltFnInvocablePersistentVector create(clojure.lang.Atom options, Object... items){
-	TransientVector ret = EMPTY(options).asTransient();
-	for(Object item : items)
-	    ret = ret.conj(item);
-	return ret.persistent();
+	return new Builder(options).addAll(items, 0, items.length).build();
+    }
+
+    // Analogous to clojure.lang.LazilyPersistentVector.create(), but always
+    // copies arrays. Accepts Object and primitive arrays, instances of this
+    // class and clojure.lang.PersistentVector (sharing their structure),
+    // IReduceInit, java.util.List, ISeq, Iterable, and anything else
+    // `seq`-able.
+
+    static public AltFnInvocablePersistentVector createFrom(clojure.lang.Atom options, Object coll){
+	if(coll == null)
+	    return EMPTY(options);
+	if(coll instanceof Object[])
+	    return create(options, (Object[]) coll);
+	if(coll.getClass().isArray())
+	    return new Builder(options).addAllPrimitive(coll).build();
+	if(coll instanceof AltFnInvocablePersistentVector)
+	    {
+		AltFnInvocablePersistentVector v = (AltFnInvocablePersistentVector) coll;
+		return new AltFnInvocablePersistentVector(v.cnt, v.shift, v.root, v.tail, options);
+	    }
+	if(coll instanceof PersistentVector)
+	    return from(options, (PersistentVector) coll);
+	if(coll instanceof IReduceInit)
+	    return create(options, (IReduceInit) coll);
+	if(coll instanceof List && coll instanceof RandomAccess)
+	    return create(options, (List) coll);
+	if(coll instanceof ISeq)
+	    return create(options, RT.seq(coll));  // an empty list is a non-nil ISeq
+	if(coll instanceof Iterable)
+	    return create(options, (Iterable) coll);
+	return create(options, RT.seq(coll));
+    }
+
+    // O(1) conversions that share the whole trie and tail with a
+    // clojure.lang.PersistentVector. Metadata is not carried over, as with
+    // `vec`.
+
+    static public AltFnInvocablePersistentVector from(clojure.lang.Atom options, PersistentVector v){
+	return new AltFnInvocablePersistentVector(v.count(), v.shift, v.root, v.tail, options);
+    }
+
+    // PersistentVector's constructor is package-private, so it is opened
+    // reflectively once. Where that is not permitted, `toPersistentVector`
+    // falls back to building a new PersistentVector, which copies.
+
+    static final MethodHandle PERSISTENT_VECTOR_CONSTRUCTOR = persistentVectorConstructor();
+
+    static MethodHandle persistentVectorConstructor(){
+	try
+	    {
+		Constructor<PersistentVector> c = PersistentVector.class.getDeclaredConstructor(int.class, int.class, Node.class, Object[].class);
+		c.setAccessible(true);
+		return MethodHandles.lookup().unreflectConstructor(c);
+	    }
+	catch(ReflectiveOperationException | RuntimeException e)
+	    {
+		return null;
+	    }
+    }
+
+    public PersistentVector toPersistentVector(){
+	if(cnt == 0)
+	    return PersistentVector.EMPTY;
+	if(PERSISTENT_VECTOR_CONSTRUCTOR == null)
+	    return PersistentVector.create((IReduceInit) this);
+	try
+	    {
+		return (PersistentVector) PERSISTENT_VECTOR_CONSTRUCTOR.invokeExact(cnt, shift, root, tail);
+	    }
+	catch(Throwable t)
+	    {
+		throw Util.sneakyThrow(t);
+	    }
+    }
+
+    // Concatenation and slicing. Both return new instances built leaf by leaf.
+    // Full leaves that fall on a 32-element boundary of the result are shared
+    // with the source rather than copied, so concatenating onto an instance
+    // whose count is a multiple of 32, or slicing from an index that is a
+    // multiple of 32, costs O(n/32) array adoptions plus the partial leaves at
+    // the ends. Other alignments copy each leaf with `System.arraycopy`.
+
+    static public AltFnInvocablePersistentVector catvec(clojure.lang.Atom options, Object... colls){
+	Builder b = new Builder(options);
+	for(Object coll : colls)
+	    b.addColl(coll);
+	return b.build();
+    }
+
+    public AltFnInvocablePersistentVector slice(int start, int end){
+	if(start < 0 || end > cnt || start > end)
+	    throw new IndexOutOfBoundsException();
+	return new Builder(this.options).addRange(this, start, end).build().withMeta(meta());
+    }
+
+    // Accumulates elements into 32-element leaves. A full leaf is held back
+    // until another element arrives, so that the final leaf always becomes
+    // the tail. Leaves are pushed into `levels`, where `levels[k]` is the
+    // partially-filled array of the rightmost node at shift 5(k+1); a full
+    // level is wrapped in a Node and carried to the level above.
+    //
+    // Also usable as the reducing function for IReduceInit.reduce(), with the
+    // Builder itself as the accumulator.
+
+    static final class Builder extends AFn {
+	final clojure.lang.Atom options;
+	final Object[][] levels = new Object[7][];
+	final int[] counts = new int[7];
+	Object[] leaf = new Object[32];
+	int leafCnt = 0;
+	int cnt = 0;
+	final ThingyEvents.Creation event = ThingyEvents.Creation.start();
+
+	Builder(clojure.lang.Atom options){
+	    this.options = options;
+	}
+
+	public Object invoke(Object builder, Object val){
+	    return ((Builder) builder).add(val);
+	}
+
+	public Object invoke(Object builder){
+	    return builder;
+	}
+
+	Builder add(Object val){
+	    if(leafCnt == 32)
+		pushLeaf();
+	    leaf[leafCnt++] = val;
+	    ++cnt;
+	    return this;
+	}
+
+	Builder addAll(Object[] items, int from, int to){
+	    while(from < to)
+		{
+		    if(leafCnt == 32)
+			pushLeaf();
+		    int n = Math.min(32 - leafCnt, to - from);
+		    System.arraycopy(items, from, leaf, leafCnt, n);
+		    leafCnt += n;
+		    cnt += n;
+		    from += n;
+		}
+	    return this;
+	}
+
+	Builder addAllPrimitive(Object array){
+	    if(array instanceof long[])
+		for(long x : (long[]) array) add(x);
+	    else if(array instanceof double[])
+		for(double x : (double[]) array) add(x);
+	    else if(array instanceof int[])
+		for(int x : (int[]) array) add(x);
+	    else if(array instanceof float[])
+		for(float x : (float[]) array) add(x);
+	    else if(array instanceof byte[])
+		for(byte x : (byte[]) array) add(x);
+	    else if(array instanceof short[])
+		for(short x : (short[]) array) add(x);
+	    else if(array instanceof char[])
+		for(char x : (char[]) array) add(x);
+	    else if(array instanceof boolean[])
+		for(boolean x : (boolean[]) array) add(x);
+	    else
+		throw new IllegalArgumentException("Not an array: " + array.getClass().getName());
+	    return this;
+	}
+
+	// Adds a full, 32-element leaf array. When the builder is itself at a
+	// leaf boundary, the array is adopted rather than copied; it is never
+	// written to afterwards, because `add` and `addAll` allocate a fresh
+	// leaf once the current one is full.
+
+	Builder addLeaf(Object[] array){
+	    if(leafCnt == 32)
+		pushLeaf();
+	    if(leafCnt != 0)
+		return addAll(array, 0, 32);
+	    leaf = array;
+	    leafCnt = 32;
+	    cnt += 32;
+	    return this;
+	}
+
+	// Adds elements `start` (inclusive) to `end` (exclusive) of `v`, one
+	// leaf at a time.
+
+	Builder addRange(AltFnInvocablePersistentVector v, int start, int end){
+	    for(int i = start; i < end;)
+		{
+		    Object[] array = v.arrayFor(i);
+		    int offset = i & 0x01f;
+		    int n = Math.min(array.length - offset, end - i);
+		    if(n == 32)
+			addLeaf(array);
+		    else
+			addAll(array, offset, offset + n);
+		    i += n;
+		}
+	    return this;
+	}
+
+	Builder addRange(PersistentVector v, int start, int end){
+	    for(int i = start; i < end;)
+		{
+		    Object[] array = v.arrayFor(i);
+		    int offset = i & 0x01f;
+		    int n = Math.min(array.length - offset, end - i);
+		    if(n == 32)
+			addLeaf(array);
+		    else
+			addAll(array, offset, offset + n);
+		    i += n;
+		}
+	    return this;
+	}
+
+	Builder addColl(Object coll){
+	    if(coll == null)
+		return this;
+	    if(coll instanceof AltFnInvocablePersistentVector)
+		{
+		    AltFnInvocablePersistentVector v = (AltFnInvocablePersistentVector) coll;
+		    return addRange(v, 0, v.cnt);
+		}
+	    if(coll instanceof PersistentVector)
+		{
+		    PersistentVector v = (PersistentVector) coll;
+		    return addRange(v, 0, v.count());
+		}
+	    if(coll instanceof Object[])
+		{
+		    Object[] array = (Object[]) coll;
+		    return addAll(array, 0, array.length);
+		}
+	    if(coll.getClass().isArray())
+		return addAllPrimitive(coll);
+	    if(coll instanceof IReduceInit)
+		{
+		    ((IReduceInit) coll).reduce(this, this);
+		    return this;
+		}
+	    for(ISeq s = RT.seq(coll); s != null; s = s.next())
+		add(s.first());
+	    return this;
+	}
+
+	private void pushLeaf(){
+	    push(0, new Node(NOEDIT, leaf));
+	    leaf = new Object[32];
+	    leafCnt = 0;
+	}
+
+	private void push(int level, Node node){
+	    if(levels[level] == null)
+		levels[level] = new Object[32];
+	    levels[level][counts[level]++] = node;
+	    if(counts[level] == 32)
+		{
+		    Node full = new Node(NOEDIT, levels[level]);
+		    levels[level] = null;
+		    counts[level] = 0;
+		    push(level + 1, full);
+		}
+	}
+
+	AltFnInvocablePersistentVector build(){
+	    AltFnInvocablePersistentVector v = assemble();
+	    if(event != null)
+		{
+		    event.count = cnt;
+		    event.commit();
+		}
+	    return v;
+	}
+
+	AltFnInvocablePersistentVector assemble(){
+	    if(cnt == 0)
+		return EMPTY(options);
+	    Object[] tail = (leafCnt == 32) ? leaf : Arrays.copyOf(leaf, leafCnt);
+
+	    int top = -1;
+	    for(int level = 0; level < levels.length; ++level)
+		if(counts[level] > 0)
+		    top = level;
+	    if(top < 0)
+		return new AltFnInvocablePersistentVector(cnt, 5, EMPTY_NODE, tail, options);
+
+	    // carry partially-filled nodes up to the top level; the carry may
+	    // fill the top level, which then moves up one more level
+	    for(int level = 0; level < top; ++level)
+		if(counts[level] > 0)
+		    {
+			Object[] array = levels[level];
+			levels[level] = null;
+			counts[level] = 0;
+			push(level + 1, new Node(NOEDIT, array));
+		    }
+	    while(counts[top] == 0)
+		++top;
+
+	    Node root = new Node(NOEDIT, levels[top]);
+	    int shift = 5 * (top + 1);
+	    if(top > 0 && counts[top] == 1)
+		{
+		    root = (Node) root.array[0];
+		    shift -= 5;
+		}
+	    return new AltFnInvocablePersistentVector(cnt, shift, root, tail, options);
+	}
     }
 
     AltFnInvocablePersistentVector(int cnt, int shift, Node root, Object[] tail, clojure.lang.Atom options){
@@ -259,6 +543,145 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	return _meta;
     }
 
+    // Returns this vector, with the same elements and metadata, opted in to a
+    // hash index for `indexOf`, `lastIndexOf`, and `contains`. The first
+    // `after` of those lookups scan linearly, as APersistentVector's do; the
+    // next one builds a ValueIndex of the elements, in one pass, and every
+    // lookup from then on is a hash probe.
+    //
+    // The index belongs to the returned instance, an Indexed, which alone
+    // holds the index state, so that instances that have not opted in carry
+    // none of it. Versions derived from it by `assocN`, `cons`, `pop`, and so
+    // on are plain instances with different elements, and start without an
+    // index and without opting in; only `withMeta`, whose elements are the
+    // same, carries the index along.
+
+    public AltFnInvocablePersistentVector indexed(int after){
+	return Indexed.create(this, null, after);
+    }
+
+    public int indexOf(Object o){
+	return scanIndexOf(o);
+    }
+
+    public int lastIndexOf(Object o){
+	return scanLastIndexOf(o);
+    }
+
+    public boolean contains(Object o){
+	return scanIndexOf(o) >= 0;
+    }
+
+    // Without an index, lookups scan leaf by leaf, rather than through `nth`
+    // or a seq, as APersistentVector's do.
+
+    int scanIndexOf(Object o){
+	for(int base = 0; base < cnt; base += 32)
+	    {
+		Object[] leaf = arrayFor(base);
+		for(int j = 0; j < leaf.length && base + j < cnt; ++j)
+		    if(Util.equiv(o, leaf[j]))
+			return base + j;
+	    }
+	return -1;
+    }
+
+    int scanLastIndexOf(Object o){
+	for(int base = (cnt - 1) & ~0x01f; base >= 0; base -= 32)
+	    {
+		Object[] leaf = arrayFor(base);
+		for(int j = Math.min(leaf.length, cnt - base) - 1; j >= 0; --j)
+		    if(Util.equiv(o, leaf[j]))
+			return base + j;
+	    }
+	return -1;
+    }
+
+    static final Keyword INDEXED_KEY = Keyword.intern(null, "indexed?");
+    static final Keyword BUILT_KEY = Keyword.intern(null, "built?");
+    static final Keyword DISTINCT_KEY = Keyword.intern(null, "distinct");
+    static final Keyword BYTES_KEY = Keyword.intern(null, "bytes");
+
+    // Reports the state and retained size of the lookup index, as a map of
+    // `:indexed?` (opted in), `:built?`, `:distinct` (number of distinct
+    // elements indexed), and `:bytes`.
+
+    public IPersistentMap indexFootprint(){
+	return RT.map(INDEXED_KEY, false, BUILT_KEY, false, DISTINCT_KEY, 0L, BYTES_KEY, 0L);
+    }
+
+    // An instance opted in to the lookup index. `after` is one more than the
+    // number of linear lookups to serve before the index is built.
+
+    static final class Indexed extends AltFnInvocablePersistentVector {
+
+	private static final long serialVersionUID = -2841692811615777700L;
+
+	final int after;
+	transient volatile ValueIndex index;
+	transient int lookups;
+
+	Indexed(IPersistentMap meta, int cnt, int shift, Node root, Object[] tail, clojure.lang.Atom options, ValueIndex index, int after){
+	    super(meta, cnt, shift, root, tail, options);
+	    this.index = index;
+	    this.after = after;
+	}
+
+	static Indexed create(AltFnInvocablePersistentVector v, ValueIndex index, int after){
+	    if(after < 0)
+		throw new IllegalArgumentException("Lookups before indexing must be non-negative: " + after);
+	    return new Indexed(v._meta, v.cnt, v.shift, v.root, v.tail, v.options, index, after + 1);
+	}
+
+	public AltFnInvocablePersistentVector withMeta(IPersistentMap meta){
+	    if(meta() == meta)
+		return this;
+	    return new Indexed(meta, cnt, shift, root, tail, this.options, index, after);
+	}
+
+	public AltFnInvocablePersistentVector indexed(int after){
+	    return create(this, index, after);
+	}
+
+	// Returns the index, building it if this lookup is the one that should,
+	// or null if this lookup should scan. Concurrent callers wait for a
+	// single build. A vector too large to index scans every time.
+
+	ValueIndex valueIndex(){
+	    ValueIndex ix = index;
+	    if(ix != null || lookups++ < after - 1 || cnt > ValueIndex.MAX_COUNT)
+		return ix;
+	    synchronized(this){
+		if(index == null)
+		    index = ValueIndex.build(this);
+		return index;
+	    }
+	}
+
+	public int indexOf(Object o){
+	    ValueIndex ix = valueIndex();
+	    return (ix != null) ? ix.indexOf(o) : scanIndexOf(o);
+	}
+
+	public int lastIndexOf(Object o){
+	    ValueIndex ix = valueIndex();
+	    return (ix != null) ? ix.lastIndexOf(o) : scanLastIndexOf(o);
+	}
+
+	public boolean contains(Object o){
+	    ValueIndex ix = valueIndex();
+	    return (ix != null) ? ix.contains(o) : scanIndexOf(o) >= 0;
+	}
+
+	public IPersistentMap indexFootprint(){
+	    ValueIndex ix = index;
+	    return RT.map(INDEXED_KEY, true,
+			  BUILT_KEY, ix != null,
+			  DISTINCT_KEY, (ix != null) ? (long) ix.size() : 0L,
+			  BYTES_KEY, (ix != null) ? ix.bytes() : 0L);
+	}
+    }
+
 
     public AltFnInvocablePersistentVector cons(Object val){
 	//room in tail?
@@ -277,7 +700,7 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	//overflow root?
 	if((cnt >>> 5) > (1 << shift))
 	    {
-		newroot = new Node(root.edit);
+		newroot = new Node(root.edit, new Object[32]);
 		newroot.array[0] = root;
 		newroot.array[1] = newPath(root.edit,shift, tailnode);
 		newshift += 5;
@@ -313,7 +736,7 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
     private static Node newPath(AtomicReference<Thread> edit,int level, Node node){
 	if(level == 0)
 	    return node;
-	Node ret = new Node(edit);
+	Node ret = new Node(edit, new Object[32]);
 	ret.array[0] = newPath(edit, level - 5, node);
 	return ret;
     }
@@ -359,73 +782,104 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 
     public Iterator iterator(){return rangedIterator(0,count());}
 
-    // @Override
-    Spliterator rangedSpliterator(final int start, final int end){
-	return new Spliterator(){
-	    int i = start;
-	    int base = i - (i%32);
-	    Object[] array = (start < count())?arrayFor(i):null;
+    // The spliterator walks the trie itself rather than calling `arrayFor`
+    // for each leaf. It caches the bottom branch node (the node whose
+    // children are leaves, covering 1024 elements), so moving to the next leaf
+    // descends from the root only once per 32 leaves. `trySplit` cuts on the
+    // boundary of the largest subtree (32, 1024, 32768, ... elements) that fits
+    // in half the remaining range, so the two halves never share a leaf, and
+    // large halves share no subtree. A range within one leaf is not split.
 
-	    @Override
-	    public int characteristics() {
-		return Spliterator.IMMUTABLE |   // persistent
-		    Spliterator.ORDERED |    // know order
-		    Spliterator.SIZED |      // know size
-		    Spliterator.SUBSIZED;    // know size after split
-	    }
+    Spliterator<Object> rangedSpliterator(final int start, final int end){
+	return new LeafSpliterator(start, end);
+    }
 
-	    @Override
-	    public long estimateSize() {
-		return end-i;
-	    }
+    final class LeafSpliterator implements Spliterator<Object> {
+	int i;
+	final int end;
+	Object[] array;
+	Object[] branch;
+	int branchIndex = -1;
 
-	    @Override
-	    public long getExactSizeIfKnown() {
-		return end-i;
-	    }
+	LeafSpliterator(int start, int end){
+	    this.i = start;
+	    this.end = end;
+	}
 
-	    @Override
-	    public boolean tryAdvance(Consumer action) {
-		if(i < end) {
-		    if(i-base == 32){
-			array = arrayFor(i);
-			base += 32;
-		    }
-		    action.accept(array[i++ & 0x01f]);
-		    return true;
+	// Returns the leaf (or tail) holding index `x`, re-descending from the
+	// root only when `x` lies under a different bottom branch node.
+	Object[] leafFor(int x){
+	    if(x >= tailoff())
+		return tail;
+	    if((x >>> 10) != branchIndex)
+		{
+		    Node node = root;
+		    for(int level = shift; level > 5; level -= 5)
+			node = (Node) node.array[(x >>> level) & 0x01f];
+		    branch = node.array;
+		    branchIndex = x >>> 10;
 		}
-		return false;
-	    }
+	    return ((Node) branch[(x >>> 5) & 0x01f]).array;
+	}
 
-	    @Override
-	    public Spliterator trySplit() {
-		int lo = i;
-		int mid = (lo + end) >>> 1; // avoid overflow
-		if(lo >= mid) {
-		    return null;
-		} else {
-		    i = mid;
-		    return rangedSpliterator(lo, mid);
-		}
+	@Override
+	public int characteristics() {
+	    return Spliterator.IMMUTABLE |   // persistent
+		Spliterator.ORDERED |    // know order
+		Spliterator.SIZED |      // know size
+		Spliterator.SUBSIZED;    // know size after split
+	}
+
+	@Override
+	public long estimateSize() {
+	    return end-i;
+	}
+
+	@Override
+	public long getExactSizeIfKnown() {
+	    return end-i;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Object> action) {
+	    if(i < end) {
+		if(array == null || (i & 0x01f) == 0)
+		    array = leafFor(i);
+		action.accept(array[i++ & 0x01f]);
+		return true;
 	    }
+	    return false;
+	}
 
-	    @Override
-	    public void forEachRemaining(Consumer action) {
-		int x=i;
-		while(x<end){
-		    Object[] array = arrayFor(x);
-		    int remaining = end-x;
-		    int offset = x & 0x01f;
-		    int limit = Math.min(array.length, offset + remaining);
-		    for(int j=offset; j<limit; ++j){
-			action.accept(array[j]);
-		    }
-		    x+= (limit-offset);
+	@Override
+	public Spliterator<Object> trySplit() {
+	    int lo = i;
+	    if(end - lo <= 32)
+		return null;
+	    int half = Math.max(32, (end - lo) >>> 1);
+	    int block = 32;
+	    while(block <= (half >>> 5))
+		block <<= 5;
+	    int mid = ((lo + half) / block) * block;
+	    i = mid;
+	    array = null;
+	    return new LeafSpliterator(lo, mid);
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super Object> action) {
+	    int x = i;
+	    while(x < end){
+		Object[] leaf = leafFor(x);
+		int limit = Math.min(32, end - (x & ~0x01f));
+		for(int j = x & 0x01f; j < limit; ++j){
+		    action.accept(leaf[j]);
 		}
-		i=end; // done
-		this.array=null;
+		x = (x & ~0x01f) + limit;
 	    }
-	};
+	    i = end; // done
+	    array = null;
+	}
     }
 
     public Spliterator spliterator(){return rangedSpliterator(0,count());}
@@ -477,6 +931,40 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	return init;
     }
 
+    Object reduceRange(IFn f, Object init, int start, int end){
+	for(int base = start & ~0x01f; base < end; base += 32)
+	    {
+		Object[] array = arrayFor(base);
+		int stop = Math.min(32, end - base);
+		for(int j = Math.max(0, start - base); j < stop; ++j)
+		    {
+			init = f.invoke(init, array[j]);
+			if(RT.isReduced(init))
+			    return init;
+		    }
+	    }
+	return init;
+    }
+
+    Object kvreduceRange(IFn f, Object init, int start, int end){
+	for(int base = start & ~0x01f; base < end; base += 32)
+	    {
+		Object[] array = arrayFor(base);
+		int stop = Math.min(32, end - base);
+		for(int j = Math.max(0, start - base); j < stop; ++j)
+		    {
+			init = f.invoke(init, base + j, array[j]);
+			if(RT.isReduced(init))
+			    return init;
+		    }
+	    }
+	return init;
+    }
+
+    IChunk chunkFor(int i, int end){
+	return new ArrayChunk(arrayFor(i), i & 0x01f, Math.min(32, end - (i & ~0x01f)));
+    }
+
     public Sequential drop(int n) {
 	if(n < cnt) {
 	    int offset = n%32;
@@ -486,226 +974,185 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	}
     }
 
-    @Override
-    public String toString() {
-	// Run-of-the-mill Clojure vectors are delimited by a preceeding left
-	// square bracket char, [, and a trailing right bracket char, ]. To
-	// distinguish this class, this instance methods trims the leading and
-	// trailing brackets and concatenate the (presumably different)
-	// delimiters specified in the `options` atom.
-
-	// Note: This implementation assumes that the opening left bracket is
-	// exactly the first char and the closing right bracket is exactly the
-	// last char.
-
-	// Note: This implementation uses the `.substring()` method, which is
-	// O(n) in time and O(1) in space. For now, assume that `.toString()`
-	// is not on a performance-critical path.
-
-	// `options` is an instance field which is assigned a Clojure atom
-	// during a call to the constructor. The atom contains a Clojure
-	// hash-map with the following MapEntry elements:
-	// :fn                a 2-arity Clojure function
-	// :left-delimiter    a string
-	// :right-delimiter   a string
-
-	String base_string = super.toString();
-	String trimmed_string = base_string.substring(1, base_string.length() - 1);
-
-	clojure.lang.Keyword leftKeyword = clojure.lang.Keyword.intern("left-delimiter");
-	clojure.lang.Keyword rightKeyword = clojure.lang.Keyword.intern("right-delimiter");
-
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
+    // Equality, comparison, and `diff` against another vector with the same
+    // trie structure (an instance of this class or a PersistentVector, whose
+    // nodes this class shares) walk both tries together and skip any pair of
+    // identical subtrees, leaves, or tails without visiting their elements.
+    // A version of a vector and its successor by `assocN`, `cons`, or `pop`
+    // share every node off the edited path, so comparing them visits only the
+    // leaves that were copied. Anything else falls back to
+    // APersistentVector's element-by-element methods.
+
+    public boolean equiv(Object o){
+	if(o == this)
+	    return true;
+	Trie b = Trie.of(o);
+	if(b == null)
+	    return super.equiv(o);
+	return cnt == b.cnt && Trie.of(this).firstMismatch(b, Trie.EQUIV) < 0;
+    }
 
-	String left = (String) optionsMap.valAt(leftKeyword);
-	String right = (String) optionsMap.valAt(rightKeyword);
+    public boolean equals(Object o){
+	if(o == this)
+	    return true;
+	Trie b = Trie.of(o);
+	if(b == null)
+	    return super.equals(o);
+	return cnt == b.cnt && Trie.of(this).firstMismatch(b, Trie.EQUALS) < 0;
+    }
 
-	return left + trimmed_string + right;
+    public int compareTo(Object o){
+	Trie b = Trie.of(o);
+	if(b == null || cnt != b.cnt)
+	    return super.compareTo(o);
+	// Elements that are not `=` may still compare as 0 (e.g., 1 and 1.0), so
+	// the scan continues past them to the first pair that orders the vectors.
+	Trie a = Trie.of(this);
+	for(int i = a.firstMismatch(b, Trie.EQUIV); i >= 0; i = a.nextMismatch(b, Trie.EQUIV, i + 1, cnt))
+	    {
+		int c = Util.compare(a.nth(i), b.nth(i));
+		if(c != 0)
+		    return c;
+	    }
+	return 0;
     }
 
-    // I would very much prefer to avoid the following duplicated methods by
-    // overriding the superclass' `invoke` methods with a single varargs
-    // declaration of the form
-    //
-    // public Object invoke(Object... args)
-    //
-    // However, clojure.lang.AFn explicitly defines each arity
-    //
-    // invoke()
-    // invoke(Object arg1)
-    // invoke(Object arg1, Object arg2)
-    // invoke(Object arg1, Object arg2, Object arg3)
-    // etc.
-    // <up to twenty-one args>
-    //
-    // However, my understandinging of *The Java Language Specification*
-    // §15.12.2 is that those methods with enumerated arities in the superclass
-    // will take precedence over the varargs method in the subclass because
-    // the enumerated methods in the superclass are more specific. Therefore,
-    // the varargs method in the subclass will never be called.
-    //
-    // To override the enumerated-arity methods of the superclass, this subclass
-    // must also define the `invoke` methods with explicit arities (i.e., not
-    // varargs).
+    // Returns the ascending indices at which this vector and `o` (any
+    // sequential collection) hold elements that are not `=`. An index present
+    // in only one of them counts as differing.
 
-    @Override
-    public Object invoke() {
+    public IPersistentVector diff(Object o){
+	ITransientCollection ret = PersistentVector.EMPTY.asTransient();
+	Trie b = Trie.of(o);
+	int n = (b != null) ? b.cnt : RT.count(o);
+	int common = Math.min(cnt, n);
+	if(b != null)
+	    {
+		Trie a = Trie.of(this);
+		for(int i = a.nextMismatch(b, Trie.EQUIV, 0, common); i >= 0; i = a.nextMismatch(b, Trie.EQUIV, i + 1, common))
+		    ret = ret.conj(i);
+	    }
+	else
+	    {
+		ISeq s = RT.seq(o);
+		for(int i = 0; i < common; i++, s = s.next())
+		    if(!Util.equiv(nth(i), s.first()))
+			ret = ret.conj(i);
+	    }
+	for(int i = common; i < Math.max(cnt, n); i++)
+	    ret = ret.conj(i);
+	return (IPersistentVector) ret.persistent();
+    }
 
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
+    // The parts of a trie, from either class.
 
-	return fn.applyTo(clojure.lang.ArraySeq.create(this));
-    }
+    static final class Trie {
+	final int cnt;
+	final int shift;
+	final Node root;
+	final Object[] tail;
 
-    @Override
-    public Object invoke(Object arg0) {
-	// Standard Clojure vectors perform an `nth`/`get` when in the function
-	// postion of an S-expression followed by an integer. This instance
-	// method makes the behavior dynamic. An instance of this class contains
-	// `options`, a Clojure atom that wraps a hash-map. That hash-map holds
-	// at least three key-vals, including `:fn`, which associates a 2-arity
-	// clojure.lang.Fn, that consumes an instance as the first argument, and
-	// any Object as the second argument.
-
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
-
-	return fn.applyTo(clojure.lang.ArraySeq.create(this, arg0));
-    }
+	Trie(int cnt, int shift, Node root, Object[] tail){
+	    this.cnt = cnt;
+	    this.shift = shift;
+	    this.root = root;
+	    this.tail = tail;
+	}
 
-    @Override
-    public Object invoke(Object arg0,
-			 Object arg1) {
+	static Trie of(Object o){
+	    if(o instanceof AltFnInvocablePersistentVector)
+		{
+		    AltFnInvocablePersistentVector v = (AltFnInvocablePersistentVector) o;
+		    return new Trie(v.cnt, v.shift, v.root, v.tail);
+		}
+	    if(o instanceof PersistentVector)
+		{
+		    PersistentVector v = (PersistentVector) o;
+		    return new Trie(v.count(), v.shift, v.root, v.tail);
+		}
+	    return null;
+	}
 
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
+	interface Test {
+	    boolean same(Object x, Object y);
+	}
 
-	return fn.applyTo(clojure.lang.ArraySeq.create(this,
-						       arg0,
-						       arg1));
-    }
+	static final Test EQUIV = Util::equiv;
+	static final Test EQUALS = Util::equals;
 
-    @Override
-    public Object invoke(Object arg0,
-			 Object arg1,
-			 Object arg2) {
+	int tailoff(){
+	    return (cnt < 32) ? 0 : ((cnt - 1) >>> 5) << 5;
+	}
 
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
+	Object[] arrayFor(int i){
+	    if(i >= tailoff())
+		return tail;
+	    Node node = root;
+	    for(int level = shift; level > 0; level -= 5)
+		node = (Node) node.array[(i >>> level) & 0x01f];
+	    return node.array;
+	}
 
-	return fn.applyTo(clojure.lang.ArraySeq.create(this,
-						       arg0,
-						       arg1,
-						       arg2));
-    }
+	Object nth(int i){
+	    return arrayFor(i)[i & 0x01f];
+	}
 
-    @Override
-    public Object invoke(Object arg0,
-			 Object arg1,
-			 Object arg2,
-			 Object arg3) {
-
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
-
-	return fn.applyTo(clojure.lang.ArraySeq.create(this,
-						       arg0,
-						       arg1,
-						       arg2,
-						       arg3));
-    }
+	int firstMismatch(Trie b, Test t){
+	    return nextMismatch(b, t, 0, Math.min(cnt, b.cnt));
+	}
 
-    @Override
-    public Object invoke(Object arg0,
-			 Object arg1,
-			 Object arg2,
-			 Object arg3,
-			 Object arg4) {
-
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
-
-	return fn.applyTo(clojure.lang.ArraySeq.create(this,
-						       arg0,
-						       arg1,
-						       arg2,
-						       arg3,
-						       arg4));
-    }
+	// Returns the first index in [from, end) at which `t` fails, or -1.
+	// While both tries have the same height, the part of the range held in
+	// both trees is walked node by node; the remainder is walked leaf by
+	// leaf. Either way, identical arrays are skipped whole.
 
-    @Override
-    public Object invoke(Object arg0,
-			 Object arg1,
-			 Object arg2,
-			 Object arg3,
-			 Object arg4,
-			 Object arg5) {
-
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
-
-	return fn.applyTo(clojure.lang.ArraySeq.create(this,
-						       arg0,
-						       arg1,
-						       arg2,
-						       arg3,
-						       arg4,
-						       arg5));
-    }
+	int nextMismatch(Trie b, Test t, int from, int end){
+	    int treeEnd = (shift == b.shift) ? Math.min(end, Math.min(tailoff(), b.tailoff())) : 0;
+	    if(from < treeEnd && root != b.root)
+		{
+		    int i = mismatchIn(root.array, b.root.array, shift, 0, from, treeEnd, t);
+		    if(i >= 0)
+			return i;
+		}
+	    for(int base = Math.max(from, treeEnd) & ~0x01f; base < end; base += 32)
+		{
+		    Object[] x = arrayFor(base);
+		    Object[] y = b.arrayFor(base);
+		    if(x == y)
+			continue;
+		    int stop = Math.min(32, end - base);
+		    for(int j = Math.max(0, from - base); j < stop; ++j)
+			if(!t.same(x[j], y[j]))
+			    return base + j;
+		}
+	    return -1;
+	}
 
-    @Override
-    public Object invoke(Object arg0,
-			 Object arg1,
-			 Object arg2,
-			 Object arg3,
-			 Object arg4,
-			 Object arg5,
-			 Object arg6) {
-
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
-
-	return fn.applyTo(clojure.lang.ArraySeq.create(this,
-						       arg0,
-						       arg1,
-						       arg2,
-						       arg3,
-						       arg4,
-						       arg5,
-						       arg6));
-    }
-    
-    @Override
-    public Object invoke(Object arg0,
-			 Object arg1,
-			 Object arg2,
-			 Object arg3,
-			 Object arg4,
-			 Object arg5,
-			 Object arg6,
-			 Object arg7) {
-
-	clojure.lang.APersistentMap optionsMap = (clojure.lang.APersistentMap) this.options.deref();
-	clojure.lang.Keyword fnKeyword = clojure.lang.Keyword.intern("fn");
-	clojure.lang.AFn fn = (clojure.lang.AFn) optionsMap.valAt(fnKeyword);
-
-	return fn.applyTo(clojure.lang.ArraySeq.create(this,
-						       arg0,
-						       arg1,
-						       arg2,
-						       arg3,
-						       arg4,
-						       arg5,
-						       arg6,
-						       arg7));
+	static int mismatchIn(Object[] x, Object[] y, int level, int base, int from, int end, Test t){
+	    if(level == 0)
+		{
+		    int stop = Math.min(32, end - base);
+		    for(int j = Math.max(0, from - base); j < stop; ++j)
+			if(!t.same(x[j], y[j]))
+			    return base + j;
+		    return -1;
+		}
+	    int width = 1 << level;
+	    for(int k = Math.max(0, from - base) >>> level; k < 32; ++k)
+		{
+		    int childBase = base + k * width;
+		    if(childBase >= end)
+			break;
+		    Node cx = (Node) x[k];
+		    Node cy = (Node) y[k];
+		    if(cx == cy)
+			continue;
+		    int i = mismatchIn(cx.array, cy.array, level - 5, childBase, from, end, t);
+		    if(i >= 0)
+			return i;
+		}
+	    return -1;
+	}
     }
 
     static public final class ChunkedSeq extends ASeq implements IChunkedSeq,Counted,IReduce,IDrop{
@@ -983,6 +1430,17 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	}
 
 	public AltFnInvocablePersistentVector persistent(){
+	    ThingyEvents.Persistent event = new ThingyEvents.Persistent();
+	    if(!event.isEnabled())
+		return persist();
+	    event.begin();
+	    AltFnInvocablePersistentVector v = persist();
+	    event.count = v.cnt;
+	    event.commit();
+	    return v;
+	}
+
+	AltFnInvocablePersistentVector persist(){
 	    ensureEditable();
 	    //		Thread owner = root.edit.get();
 	    //		if(owner != null && owner != Thread.currentThread())
@@ -1020,7 +1478,7 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	    //overflow root?
 	    if((cnt >>> 5) > (1 << shift))
 		{
-		    newroot = new Node(root.edit);
+		    newroot = new Node(root.edit, new Object[32]);
 		    newroot.array[0] = root;
 		    newroot.array[1] = newPath(root.edit,shift, tailnode);
 		    newshift += 5;
@@ -1202,7 +1660,7 @@ public class AltFnInvocablePersistentVector extends APersistentVector implements
 	    int newshift = shift;
 	    if(newroot == null)
 		{
-		    newroot = new Node(root.edit);
+		    newroot = new Node(root.edit, new Object[32]);
 		}
 	    if(shift > 5 && newroot.array[1] == null)
 		{
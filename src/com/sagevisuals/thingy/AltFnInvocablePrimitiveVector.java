@@ -0,0 +1,979 @@
+/* A thingy whose elements are stored unboxed, in the spirit of
+   clojure.core/vector-of (clojure/gvec.clj). The trie has the same shape as
+   AltFnInvocablePersistentVector's, but each leaf (and the tail) is a
+   primitive array: long[], double[], int[], or byte[]. */
+
+package com.sagevisuals;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import clojure.lang.*;
+
+// Invocation and printing are inherited from AAltFnInvocableVector, so a
+// primitive thingy responds to `reset!-options` exactly as any other thingy.
+//
+// Elements are coerced on the way in with RT.longCast, RT.doubleCast, etc., so
+// conj-ing a value that does not fit throws, as it does for `vector-of`.
+// `nth` returns a boxed element (Long, Double, Integer, or Byte); `nthLong`
+// and `nthDouble` return the element without boxing.
+
+public class AltFnInvocablePrimitiveVector extends AAltFnInvocableVector implements IObj, IEditableCollection, IReduce, IKVReduce{
+
+    private static final long serialVersionUID = 4405935513718012517L;
+
+    // Reads, writes, and copies one kind of primitive array. The `reduce`
+    // methods dispatch on the primitive interfaces that Clojure implements for
+    // type-hinted functions, e.g., `(fn [^long acc ^long x] ...)` implements
+    // IFn.LLL and `(fn [acc ^double x] ...)` implements IFn.ODO, so that
+    // neither the accumulator nor the element is boxed inside a leaf.
+
+    public static abstract class ArrayManager implements Serializable {
+	private static final long serialVersionUID = -1576577860768481212L;
+
+	public final Keyword type;
+
+	ArrayManager(String type){
+	    this.type = Keyword.intern(null, type);
+	}
+
+	abstract Object array(int size);
+	abstract Object copyOf(Object array, int size);
+	abstract Object aget(Object array, int i);
+	abstract void aset(Object array, int i, Object val);
+	abstract long agetLong(Object array, int i);
+	abstract double agetDouble(Object array, int i);
+
+	// Reduces array[start..end) with `f`, starting from `acc`. A Reduced
+	// value is returned as-is so that the caller can stop early.
+	abstract Object reduce(IFn f, Object acc, Object array, int start, int end);
+
+	// Managers are singletons; deserialization resolves to the same instance.
+	Object readResolve(){
+	    return forType(type);
+	}
+    }
+
+    public static final ArrayManager LONG = new ArrayManager("long"){
+	    Object array(int size){return new long[size];}
+	    Object copyOf(Object array, int size){return Arrays.copyOf((long[]) array, size);}
+	    Object aget(Object array, int i){return ((long[]) array)[i];}
+	    void aset(Object array, int i, Object val){((long[]) array)[i] = RT.longCast(val);}
+	    long agetLong(Object array, int i){return ((long[]) array)[i];}
+	    double agetDouble(Object array, int i){return ((long[]) array)[i];}
+	    Object reduce(IFn f, Object acc, Object array, int start, int end){
+		long[] a = (long[]) array;
+		if(f instanceof IFn.LLL && acc instanceof Long)
+		    {
+			IFn.LLL g = (IFn.LLL) f;
+			long ret = (Long) acc;
+			for(int i = start; i < end; i++)
+			    ret = g.invokePrim(ret, a[i]);
+			return ret;
+		    }
+		if(f instanceof IFn.OLO)
+		    {
+			IFn.OLO g = (IFn.OLO) f;
+			for(int i = start; i < end; i++)
+			    {
+				acc = g.invokePrim(acc, a[i]);
+				if(RT.isReduced(acc))
+				    return acc;
+			    }
+			return acc;
+		    }
+		for(int i = start; i < end; i++)
+		    {
+			acc = f.invoke(acc, a[i]);
+			if(RT.isReduced(acc))
+			    return acc;
+		    }
+		return acc;
+	    }
+	};
+
+    public static final ArrayManager DOUBLE = new ArrayManager("double"){
+	    Object array(int size){return new double[size];}
+	    Object copyOf(Object array, int size){return Arrays.copyOf((double[]) array, size);}
+	    Object aget(Object array, int i){return ((double[]) array)[i];}
+	    void aset(Object array, int i, Object val){((double[]) array)[i] = RT.doubleCast(val);}
+	    long agetLong(Object array, int i){return RT.longCast(((double[]) array)[i]);}
+	    double agetDouble(Object array, int i){return ((double[]) array)[i];}
+	    Object reduce(IFn f, Object acc, Object array, int start, int end){
+		double[] a = (double[]) array;
+		if(f instanceof IFn.DDD && acc instanceof Double)
+		    {
+			IFn.DDD g = (IFn.DDD) f;
+			double ret = (Double) acc;
+			for(int i = start; i < end; i++)
+			    ret = g.invokePrim(ret, a[i]);
+			return ret;
+		    }
+		if(f instanceof IFn.ODO)
+		    {
+			IFn.ODO g = (IFn.ODO) f;
+			for(int i = start; i < end; i++)
+			    {
+				acc = g.invokePrim(acc, a[i]);
+				if(RT.isReduced(acc))
+				    return acc;
+			    }
+			return acc;
+		    }
+		for(int i = start; i < end; i++)
+		    {
+			acc = f.invoke(acc, a[i]);
+			if(RT.isReduced(acc))
+			    return acc;
+		    }
+		return acc;
+	    }
+	};
+
+    // int and byte elements are widened to long for the primitive reduce
+    // paths, and boxed as Integer and Byte otherwise.
+
+    public static final ArrayManager INT = new ArrayManager("int"){
+	    Object array(int size){return new int[size];}
+	    Object copyOf(Object array, int size){return Arrays.copyOf((int[]) array, size);}
+	    Object aget(Object array, int i){return ((int[]) array)[i];}
+	    void aset(Object array, int i, Object val){((int[]) array)[i] = RT.intCast(val);}
+	    long agetLong(Object array, int i){return ((int[]) array)[i];}
+	    double agetDouble(Object array, int i){return ((int[]) array)[i];}
+	    Object reduce(IFn f, Object acc, Object array, int start, int end){
+		int[] a = (int[]) array;
+		if(f instanceof IFn.LLL && acc instanceof Long)
+		    {
+			IFn.LLL g = (IFn.LLL) f;
+			long ret = (Long) acc;
+			for(int i = start; i < end; i++)
+			    ret = g.invokePrim(ret, a[i]);
+			return ret;
+		    }
+		if(f instanceof IFn.OLO)
+		    {
+			IFn.OLO g = (IFn.OLO) f;
+			for(int i = start; i < end; i++)
+			    {
+				acc = g.invokePrim(acc, a[i]);
+				if(RT.isReduced(acc))
+				    return acc;
+			    }
+			return acc;
+		    }
+		for(int i = start; i < end; i++)
+		    {
+			acc = f.invoke(acc, a[i]);
+			if(RT.isReduced(acc))
+			    return acc;
+		    }
+		return acc;
+	    }
+	};
+
+    public static final ArrayManager BYTE = new ArrayManager("byte"){
+	    Object array(int size){return new byte[size];}
+	    Object copyOf(Object array, int size){return Arrays.copyOf((byte[]) array, size);}
+	    Object aget(Object array, int i){return ((byte[]) array)[i];}
+	    void aset(Object array, int i, Object val){((byte[]) array)[i] = RT.byteCast(val);}
+	    long agetLong(Object array, int i){return ((byte[]) array)[i];}
+	    double agetDouble(Object array, int i){return ((byte[]) array)[i];}
+	    Object reduce(IFn f, Object acc, Object array, int start, int end){
+		byte[] a = (byte[]) array;
+		if(f instanceof IFn.LLL && acc instanceof Long)
+		    {
+			IFn.LLL g = (IFn.LLL) f;
+			long ret = (Long) acc;
+			for(int i = start; i < end; i++)
+			    ret = g.invokePrim(ret, a[i]);
+			return ret;
+		    }
+		if(f instanceof IFn.OLO)
+		    {
+			IFn.OLO g = (IFn.OLO) f;
+			for(int i = start; i < end; i++)
+			    {
+				acc = g.invokePrim(acc, a[i]);
+				if(RT.isReduced(acc))
+				    return acc;
+			    }
+			return acc;
+		    }
+		for(int i = start; i < end; i++)
+		    {
+			acc = f.invoke(acc, a[i]);
+			if(RT.isReduced(acc))
+			    return acc;
+		    }
+		return acc;
+	    }
+	};
+
+    static public ArrayManager forType(Object type){
+	if(LONG.type.equals(type))
+	    return LONG;
+	if(DOUBLE.type.equals(type))
+	    return DOUBLE;
+	if(INT.type.equals(type))
+	    return INT;
+	if(BYTE.type.equals(type))
+	    return BYTE;
+	throw new IllegalArgumentException("Unsupported primitive type: " + type + " (expected :long, :double, :int, or :byte)");
+    }
+
+    // Branch nodes hold an Object[32] of child Nodes; leaf nodes hold a
+    // primitive array of 32 elements.
+
+    public static class Node implements Serializable {
+	private static final long serialVersionUID = -788765560467421192L;
+
+	transient public final AtomicReference<Thread> edit;
+	public final Object array;
+
+	public Node(AtomicReference<Thread> edit, Object array){
+	    this.edit = edit;
+	    this.array = array;
+	}
+
+	Node(AtomicReference<Thread> edit){
+	    this.edit = edit;
+	    this.array = new Object[32];
+	}
+
+	Object[] branches(){
+	    return (Object[]) array;
+	}
+    }
+
+    final static AtomicReference<Thread> NOEDIT = new AtomicReference<Thread>(null);
+    public final static Node EMPTY_NODE = new Node(NOEDIT, new Object[32]);
+
+    final int cnt;
+    public final int shift;
+    public final Node root;
+    public final Object tail;
+    public final ArrayManager am;
+    final IPersistentMap _meta;
+
+    public static AltFnInvocablePrimitiveVector EMPTY(clojure.lang.Atom options, ArrayManager am) {
+	return new AltFnInvocablePrimitiveVector(0, 5, EMPTY_NODE, am.array(0), am, options);
+    }
+
+    // Builds a primitive thingy of `type` (:long, :double, :int, or :byte)
+    // from any reducible or seq-able `coll`, including Java arrays. Elements
+    // are appended through a transient, so leaves are filled in place.
+
+    static public AltFnInvocablePrimitiveVector createFrom(clojure.lang.Atom options, Object type, Object coll){
+	ArrayManager am = forType(type);
+	TransientVector ret = EMPTY(options, am).asTransient();
+	if(coll instanceof IReduceInit)
+	    {
+		((IReduceInit) coll).reduce(new AFn(){
+			public Object invoke(Object acc, Object x){
+			    return ((TransientVector) acc).conj(x);
+			}
+		    }, ret);
+		return ret.persistent();
+	    }
+	for(ISeq s = RT.seq(coll); s != null; s = s.next())
+	    ret = ret.conj(s.first());
+	return ret.persistent();
+    }
+
+    static public AltFnInvocablePrimitiveVector create(clojure.lang.Atom options, Object type, Object... items){
+	ArrayManager am = forType(type);
+	TransientVector ret = EMPTY(options, am).asTransient();
+	for(Object item : items)
+	    ret = ret.conj(item);
+	return ret.persistent();
+    }
+
+    AltFnInvocablePrimitiveVector(int cnt, int shift, Node root, Object tail, ArrayManager am, clojure.lang.Atom options){
+	this(null, cnt, shift, root, tail, am, options);
+    }
+
+    AltFnInvocablePrimitiveVector(IPersistentMap meta, int cnt, int shift, Node root, Object tail, ArrayManager am, clojure.lang.Atom options){
+	this._meta = meta;
+	this.cnt = cnt;
+	this.shift = shift;
+	this.root = root;
+	this.tail = tail;
+	this.am = am;
+	this.options = options;
+    }
+
+    public TransientVector asTransient(){
+	return new TransientVector(this);
+    }
+
+    final int tailoff(){
+	if(cnt < 32)
+	    return 0;
+	return ((cnt - 1) >>> 5) << 5;
+    }
+
+    public Object arrayFor(int i){
+	if(i >= 0 && i < cnt)
+	    {
+		if(i >= tailoff())
+		    return tail;
+		Node node = root;
+		for(int level = shift; level > 0; level -= 5)
+		    node = (Node) node.branches()[(i >>> level) & 0x01f];
+		return node.array;
+	    }
+	throw new IndexOutOfBoundsException();
+    }
+
+    public Object nth(int i){
+	return am.aget(arrayFor(i), i & 0x01f);
+    }
+
+    public Object nth(int i, Object notFound){
+	if(i >= 0 && i < cnt)
+	    return nth(i);
+	return notFound;
+    }
+
+    public long nthLong(int i){
+	return am.agetLong(arrayFor(i), i & 0x01f);
+    }
+
+    public double nthDouble(int i){
+	return am.agetDouble(arrayFor(i), i & 0x01f);
+    }
+
+    public AltFnInvocablePrimitiveVector assocN(int i, Object val){
+	if(i >= 0 && i < cnt)
+	    {
+		if(i >= tailoff())
+		    {
+			Object newTail = am.copyOf(tail, cnt - tailoff());
+			am.aset(newTail, i & 0x01f, val);
+			return new AltFnInvocablePrimitiveVector(meta(), cnt, shift, root, newTail, am, this.options);
+		    }
+
+		return new AltFnInvocablePrimitiveVector(meta(), cnt, shift, doAssoc(shift, root, i, val), tail, am, this.options);
+	    }
+	if(i == cnt)
+	    return cons(val);
+	throw new IndexOutOfBoundsException();
+    }
+
+    private Node doAssoc(int level, Node node, int i, Object val){
+	if(level == 0)
+	    {
+		Object leaf = am.copyOf(node.array, 32);
+		am.aset(leaf, i & 0x01f, val);
+		return new Node(node.edit, leaf);
+	    }
+	Node ret = new Node(node.edit, node.branches().clone());
+	int subidx = (i >>> level) & 0x01f;
+	ret.branches()[subidx] = doAssoc(level - 5, (Node) node.branches()[subidx], i, val);
+	return ret;
+    }
+
+    public int count(){
+	return cnt;
+    }
+
+    public AltFnInvocablePrimitiveVector withMeta(IPersistentMap meta){
+	if(meta() == meta)
+	    return this;
+	return new AltFnInvocablePrimitiveVector(meta, cnt, shift, root, tail, am, this.options);
+    }
+
+    public IPersistentMap meta(){
+	return _meta;
+    }
+
+    public AltFnInvocablePrimitiveVector cons(Object val){
+	int tailLength = cnt - tailoff();
+	//room in tail?
+	if(tailLength < 32)
+	    {
+		Object newTail = am.copyOf(tail, tailLength + 1);
+		am.aset(newTail, tailLength, val);
+		return new AltFnInvocablePrimitiveVector(meta(), cnt + 1, shift, root, newTail, am, this.options);
+	    }
+	//full tail, push into tree
+	Object newTail = am.array(1);
+	am.aset(newTail, 0, val);
+	Node newroot;
+	Node tailnode = new Node(root.edit, tail);
+	int newshift = shift;
+	//overflow root?
+	if((cnt >>> 5) > (1 << shift))
+	    {
+		newroot = new Node(root.edit);
+		newroot.branches()[0] = root;
+		newroot.branches()[1] = newPath(root.edit, shift, tailnode);
+		newshift += 5;
+	    }
+	else
+	    newroot = pushTail(shift, root, tailnode);
+	return new AltFnInvocablePrimitiveVector(meta(), cnt + 1, newshift, newroot, newTail, am, this.options);
+    }
+
+    private Node pushTail(int level, Node parent, Node tailnode){
+	int subidx = ((cnt - 1) >>> level) & 0x01f;
+	Node ret = new Node(parent.edit, parent.branches().clone());
+	Node nodeToInsert;
+	if(level == 5)
+	    {
+		nodeToInsert = tailnode;
+	    }
+	else
+	    {
+		Node child = (Node) parent.branches()[subidx];
+		nodeToInsert = (child != null)?
+		    pushTail(level-5,child, tailnode)
+		    :newPath(root.edit,level-5, tailnode);
+	    }
+	ret.branches()[subidx] = nodeToInsert;
+	return ret;
+    }
+
+    private static Node newPath(AtomicReference<Thread> edit,int level, Node node){
+	if(level == 0)
+	    return node;
+	Node ret = new Node(edit);
+	ret.branches()[0] = newPath(edit, level - 5, node);
+	return ret;
+    }
+
+    public IPersistentCollection empty(){
+	return EMPTY(this.options, am).withMeta(meta());
+    }
+
+    public AltFnInvocablePrimitiveVector pop(){
+	if(cnt == 0)
+	    throw new IllegalStateException("Can't pop empty vector");
+	if(cnt == 1)
+	    return EMPTY(this.options, am).withMeta(meta());
+	if(cnt-tailoff() > 1)
+	    {
+		Object newTail = am.copyOf(tail, cnt - tailoff() - 1);
+		return new AltFnInvocablePrimitiveVector(meta(), cnt - 1, shift, root, newTail, am, this.options);
+	    }
+	Object newtail = arrayFor(cnt - 2);
+
+	Node newroot = popTail(shift, root);
+	int newshift = shift;
+	if(newroot == null)
+	    {
+		newroot = EMPTY_NODE;
+	    }
+	if(shift > 5 && newroot.branches()[1] == null)
+	    {
+		newroot = (Node) newroot.branches()[0];
+		newshift -= 5;
+	    }
+	return new AltFnInvocablePrimitiveVector(meta(), cnt - 1, newshift, newroot, newtail, am, this.options);
+    }
+
+    private Node popTail(int level, Node node){
+	int subidx = ((cnt-2) >>> level) & 0x01f;
+	if(level > 5)
+	    {
+		Node newchild = popTail(level - 5, (Node) node.branches()[subidx]);
+		if(newchild == null && subidx == 0)
+		    return null;
+		else
+		    {
+			Node ret = new Node(root.edit, node.branches().clone());
+			ret.branches()[subidx] = newchild;
+			return ret;
+		    }
+	    }
+	else if(subidx == 0)
+	    return null;
+	else
+	    {
+		Node ret = new Node(root.edit, node.branches().clone());
+		ret.branches()[subidx] = null;
+		return ret;
+	    }
+    }
+
+    public ISeq seq(){
+	if(cnt == 0)
+	    return null;
+	return new ChunkedSeq(this, 0, 0);
+    }
+
+    public Iterator<Object> iterator(){
+	return new Iterator<Object>(){
+	    int i = 0;
+	    int base = 0;
+	    Object array = (cnt > 0) ? arrayFor(0) : null;
+
+	    public boolean hasNext(){
+		return i < cnt;
+	    }
+
+	    public Object next(){
+		if(i >= cnt)
+		    throw new NoSuchElementException();
+		if(i - base == 32)
+		    {
+			array = arrayFor(i);
+			base += 32;
+		    }
+		return am.aget(array, i++ & 0x01f);
+	    }
+
+	    public void remove(){
+		throw new UnsupportedOperationException();
+	    }
+	};
+    }
+
+    // Each leaf is handed to the ArrayManager whole, so the type checks on
+    // `f` happen once per 32 elements.
+
+    public Object reduce(IFn f){
+	if(cnt == 0)
+	    return f.invoke();
+	Object init = nth(0);
+	Object ret = am.reduce(f, init, arrayFor(0), 1, Math.min(32, cnt));
+	if(RT.isReduced(ret))
+	    return ((IDeref) ret).deref();
+	for(int i = 32; i < cnt; i += 32)
+	    {
+		Object array = arrayFor(i);
+		ret = am.reduce(f, ret, array, 0, Math.min(32, cnt - i));
+		if(RT.isReduced(ret))
+		    return ((IDeref) ret).deref();
+	    }
+	return ret;
+    }
+
+    public Object reduce(IFn f, Object init){
+	Object ret = reduceRange(f, init, 0, cnt);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public Object kvreduce(IFn f, Object init){
+	Object ret = kvreduceRange(f, init, 0, cnt);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    Object reduceRange(IFn f, Object init, int start, int end){
+	for(int base = start & ~0x01f; base < end; base += 32)
+	    {
+		init = am.reduce(f, init, arrayFor(base), Math.max(0, start - base), Math.min(32, end - base));
+		if(RT.isReduced(init))
+		    return init;
+	    }
+	return init;
+    }
+
+    Object kvreduceRange(IFn f, Object init, int start, int end){
+	for(int base = start & ~0x01f; base < end; base += 32)
+	    {
+		Object array = arrayFor(base);
+		int stop = Math.min(32, end - base);
+		for(int j = Math.max(0, start - base); j < stop; ++j)
+		    {
+			init = f.invoke(init, base + j, am.aget(array, j));
+			if(RT.isReduced(init))
+			    return init;
+		    }
+	    }
+	return init;
+    }
+
+    IChunk chunkFor(int i, int end){
+	return new ArrayChunk(am, arrayFor(i), i & 0x01f, Math.min(32, end - (i & ~0x01f)));
+    }
+
+    // A chunk over one primitive leaf. Elements are boxed as they are read.
+
+    static final class ArrayChunk implements IChunk, Serializable {
+	private static final long serialVersionUID = 650198757717589389L;
+
+	final ArrayManager am;
+	final Object array;
+	final int off;
+	final int end;
+
+	ArrayChunk(ArrayManager am, Object array, int off, int end){
+	    this.am = am;
+	    this.array = array;
+	    this.off = off;
+	    this.end = end;
+	}
+
+	public Object nth(int i){
+	    return am.aget(array, off + i);
+	}
+
+	public Object nth(int i, Object notFound){
+	    if(i >= 0 && i < count())
+		return nth(i);
+	    return notFound;
+	}
+
+	public int count(){
+	    return end - off;
+	}
+
+	public IChunk dropFirst(){
+	    if(off == end)
+		throw new IllegalStateException("dropFirst of empty chunk");
+	    return new ArrayChunk(am, array, off + 1, end);
+	}
+
+	public Object reduce(IFn f, Object start){
+	    return am.reduce(f, start, array, off, end);
+	}
+    }
+
+    static public final class ChunkedSeq extends ASeq implements IChunkedSeq,Counted{
+
+	private static final long serialVersionUID = -9082543976941277503L;
+
+	public final AltFnInvocablePrimitiveVector vec;
+	final Object array;
+	final int i;
+	final int offset;
+
+	ChunkedSeq(AltFnInvocablePrimitiveVector vec, int i, int offset){
+	    this.vec = vec;
+	    this.i = i;
+	    this.offset = offset;
+	    this.array = vec.arrayFor(i);
+	}
+
+	ChunkedSeq(IPersistentMap meta, AltFnInvocablePrimitiveVector vec, Object array, int i, int offset){
+	    super(meta);
+	    this.vec = vec;
+	    this.array = array;
+	    this.i = i;
+	    this.offset = offset;
+	}
+
+	ChunkedSeq(AltFnInvocablePrimitiveVector vec, Object array, int i, int offset){
+	    this.vec = vec;
+	    this.array = array;
+	    this.i = i;
+	    this.offset = offset;
+	}
+
+	public IChunk chunkedFirst(){
+	    return new ArrayChunk(vec.am, array, offset, Math.min(32, vec.cnt - i));
+	}
+
+	public ISeq chunkedNext(){
+	    if(i + 32 < vec.cnt)
+		return new ChunkedSeq(vec, i + 32, 0);
+	    return null;
+	}
+
+	public ISeq chunkedMore(){
+	    ISeq s = chunkedNext();
+	    if(s == null)
+		return PersistentList.EMPTY;
+	    return s;
+	}
+
+	public Obj withMeta(IPersistentMap meta){
+	    if(meta == meta())
+		return this;
+	    return new ChunkedSeq(meta, vec, array, i, offset);
+	}
+
+	public Object first(){
+	    return vec.am.aget(array, offset);
+	}
+
+	public ISeq next(){
+	    if(offset + 1 < Math.min(32, vec.cnt - i))
+		return new ChunkedSeq(vec, array, i, offset + 1);
+	    return chunkedNext();
+	}
+
+	public int count(){
+	    return vec.cnt - (i + offset);
+	}
+    }
+
+    static final class TransientVector extends AFn implements ITransientVector, ITransientAssociative2, Counted{
+	volatile int cnt;
+	volatile int shift;
+	volatile Node root;
+	volatile Object tail;
+	final ArrayManager am;
+	public clojure.lang.Atom options;
+
+	TransientVector(int cnt, int shift, Node root, Object tail, ArrayManager am, clojure.lang.Atom options){
+	    this.cnt = cnt;
+	    this.shift = shift;
+	    this.root = root;
+	    this.tail = tail;
+	    this.am = am;
+	    this.options = options;
+	}
+
+	TransientVector(AltFnInvocablePrimitiveVector v){
+	    this(v.cnt, v.shift, editableRoot(v.root), v.am.copyOf(v.tail, 32), v.am, v.options);
+	}
+
+	public int count(){
+	    ensureEditable();
+	    return cnt;
+	}
+
+	// Branch nodes are copied when first edited. Leaves are copied as well,
+	// because a leaf's primitive array may be shared with a persistent vector.
+
+	Node ensureEditable(Node node, boolean leaf){
+	    if(node.edit == root.edit)
+		return node;
+	    return new Node(root.edit, leaf ? am.copyOf(node.array, 32) : node.branches().clone());
+	}
+
+	void ensureEditable(){
+	    if(root.edit.get() == null)
+		throw new IllegalAccessError("Transient used after persistent! call");
+	}
+
+	static Node editableRoot(Node node){
+	    return new Node(new AtomicReference<Thread>(Thread.currentThread()), node.branches().clone());
+	}
+
+	public AltFnInvocablePrimitiveVector persistent(){
+	    ensureEditable();
+	    root.edit.set(null);
+	    Object trimmedTail = am.copyOf(tail, cnt - tailoff());
+	    return new AltFnInvocablePrimitiveVector(cnt, shift, root, trimmedTail, am, this.options);
+	}
+
+	public TransientVector conj(Object val){
+	    ensureEditable();
+	    int i = cnt;
+	    //room in tail?
+	    if(i - tailoff() < 32)
+		{
+		    am.aset(tail, i & 0x01f, val);
+		    ++cnt;
+		    return this;
+		}
+	    //full tail, push into tree
+	    Object newTail = am.array(32);
+	    am.aset(newTail, 0, val);
+	    Node newroot;
+	    Node tailnode = new Node(root.edit, tail);
+	    tail = newTail;
+	    int newshift = shift;
+	    //overflow root?
+	    if((cnt >>> 5) > (1 << shift))
+		{
+		    newroot = new Node(root.edit);
+		    newroot.branches()[0] = root;
+		    newroot.branches()[1] = newPath(root.edit, shift, tailnode);
+		    newshift += 5;
+		}
+	    else
+		newroot = pushTail(shift, root, tailnode);
+	    root = newroot;
+	    shift = newshift;
+	    ++cnt;
+	    return this;
+	}
+
+	private Node pushTail(int level, Node parent, Node tailnode){
+	    parent = ensureEditable(parent, false);
+	    int subidx = ((cnt - 1) >>> level) & 0x01f;
+	    Node ret = parent;
+	    Node nodeToInsert;
+	    if(level == 5)
+		{
+		    nodeToInsert = tailnode;
+		}
+	    else
+		{
+		    Node child = (Node) parent.branches()[subidx];
+		    nodeToInsert = (child != null) ?
+			pushTail(level - 5, child, tailnode)
+			: newPath(root.edit, level - 5, tailnode);
+		}
+	    ret.branches()[subidx] = nodeToInsert;
+	    return ret;
+	}
+
+	final private int tailoff(){
+	    if(cnt < 32)
+		return 0;
+	    return ((cnt-1) >>> 5) << 5;
+	}
+
+	private Object arrayFor(int i){
+	    if(i >= 0 && i < cnt)
+		{
+		    if(i >= tailoff())
+			return tail;
+		    Node node = root;
+		    for(int level = shift; level > 0; level -= 5)
+			node = (Node) node.branches()[(i >>> level) & 0x01f];
+		    return node.array;
+		}
+	    throw new IndexOutOfBoundsException();
+	}
+
+	public Object valAt(Object key){
+	    //note - relies on ensureEditable in 2-arg valAt
+	    return valAt(key, null);
+	}
+
+	public Object valAt(Object key, Object notFound){
+	    ensureEditable();
+	    if(Util.isInteger(key))
+		{
+		    int i = ((Number) key).intValue();
+		    if(i >= 0 && i < cnt)
+			return nth(i);
+		}
+	    return notFound;
+	}
+
+	private static final Object NOT_FOUND = new Object();
+	public final boolean containsKey(Object key){
+	    return valAt(key, NOT_FOUND) != NOT_FOUND;
+	}
+
+	public final IMapEntry entryAt(Object key){
+	    Object v = valAt(key, NOT_FOUND);
+	    if(v != NOT_FOUND)
+		return MapEntry.create(key, v);
+	    return null;
+	}
+
+	public Object invoke(Object arg1) {
+	    //note - relies on ensureEditable in nth
+	    if(Util.isInteger(arg1))
+		return nth(((Number) arg1).intValue());
+	    throw new IllegalArgumentException("Key must be integer");
+	}
+
+	public Object nth(int i){
+	    ensureEditable();
+	    return am.aget(arrayFor(i), i & 0x01f);
+	}
+
+	public Object nth(int i, Object notFound){
+	    if(i >= 0 && i < count())
+		return nth(i);
+	    return notFound;
+	}
+
+	public TransientVector assocN(int i, Object val){
+	    ensureEditable();
+	    if(i >= 0 && i < cnt)
+		{
+		    if(i >= tailoff())
+			{
+			    am.aset(tail, i & 0x01f, val);
+			    return this;
+			}
+
+		    root = doAssoc(shift, root, i, val);
+		    return this;
+		}
+	    if(i == cnt)
+		return conj(val);
+	    throw new IndexOutOfBoundsException();
+	}
+
+	public TransientVector assoc(Object key, Object val){
+	    //note - relies on ensureEditable in assocN
+	    if(Util.isInteger(key))
+		{
+		    int i = ((Number) key).intValue();
+		    return assocN(i, val);
+		}
+	    throw new IllegalArgumentException("Key must be integer");
+	}
+
+	private Node doAssoc(int level, Node node, int i, Object val){
+	    node = ensureEditable(node, level == 0);
+	    if(level == 0)
+		{
+		    am.aset(node.array, i & 0x01f, val);
+		}
+	    else
+		{
+		    int subidx = (i >>> level) & 0x01f;
+		    node.branches()[subidx] = doAssoc(level - 5, (Node) node.branches()[subidx], i, val);
+		}
+	    return node;
+	}
+
+	public TransientVector pop(){
+	    ensureEditable();
+	    if(cnt == 0)
+		throw new IllegalStateException("Can't pop empty vector");
+	    if(cnt == 1)
+		{
+		    cnt = 0;
+		    return this;
+		}
+	    int i = cnt - 1;
+	    //pop in tail?
+	    if((i & 0x01f) > 0)
+		{
+		    --cnt;
+		    return this;
+		}
+
+	    // The new tail is written in place by later conj calls, so it is
+	    // always a private copy of the leaf.
+	    Object newtail = am.copyOf(arrayFor(cnt - 2), 32);
+
+	    Node newroot = popTail(shift, root);
+	    int newshift = shift;
+	    if(newroot == null)
+		{
+		    newroot = new Node(root.edit);
+		}
+	    if(shift > 5 && newroot.branches()[1] == null)
+		{
+		    newroot = ensureEditable((Node) newroot.branches()[0], false);
+		    newshift -= 5;
+		}
+	    root = newroot;
+	    shift = newshift;
+	    --cnt;
+	    tail = newtail;
+	    return this;
+	}
+
+	private Node popTail(int level, Node node){
+	    node = ensureEditable(node, false);
+	    int subidx = ((cnt - 2) >>> level) & 0x01f;
+	    if(level > 5)
+		{
+		    Node newchild = popTail(level - 5, (Node) node.branches()[subidx]);
+		    if(newchild == null && subidx == 0)
+			return null;
+		    else
+			{
+			    Node ret = node;
+			    ret.branches()[subidx] = newchild;
+			    return ret;
+			}
+		}
+	    else if(subidx == 0)
+		return null;
+	    else
+		{
+		    Node ret = node;
+		    ret.branches()[subidx] = null;
+		    return ret;
+		}
+	}
+    }
+}
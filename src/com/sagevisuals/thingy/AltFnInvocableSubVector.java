@@ -0,0 +1,256 @@
+/* A thingy view of the index range [start, end) of another thingy, in the
+   spirit of clojure.lang.APersistentVector.SubVector. Creation is O(1); the
+   elements are never copied. Unlike SubVector, the view is itself a thingy
+   (sharing the options, and so the invocation and printing behavior, of the
+   vector it views), and it reduces, seqs, and splits over the underlying
+   leaf arrays rather than through `nth`. */
+
+package com.sagevisuals;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import clojure.lang.*;
+
+
+public class AltFnInvocableSubVector extends AAltFnInvocableVector implements IObj, IReduce, IKVReduce, IDrop{
+
+    private static final long serialVersionUID = 4037460986606403090L;
+
+    public final AAltFnInvocableVector v;
+    public final int start;
+    public final int end;
+    final IPersistentMap _meta;
+
+    AltFnInvocableSubVector(IPersistentMap meta, AAltFnInvocableVector v, int start, int end){
+	this._meta = meta;
+	this.v = v;
+	this.start = start;
+	this.end = end;
+	this.options = v.options;
+    }
+
+    // A view of a view views the original vector directly, so that nested
+    // slicing (e.g., windows of windows) adds no indirection.
+
+    static public AltFnInvocableSubVector create(AAltFnInvocableVector v, int start, int end){
+	if(end < start || start < 0 || end > v.count())
+	    throw new IndexOutOfBoundsException();
+	if(v instanceof AltFnInvocableSubVector)
+	    {
+		AltFnInvocableSubVector sv = (AltFnInvocableSubVector) v;
+		return new AltFnInvocableSubVector(null, sv.v, sv.start + start, sv.start + end);
+	    }
+	return new AltFnInvocableSubVector(null, v, start, end);
+    }
+
+    public int count(){
+	return end - start;
+    }
+
+    public Object nth(int i){
+	if((start + i >= end) || (i < 0))
+	    throw new IndexOutOfBoundsException();
+	return v.nth(start + i);
+    }
+
+    public Object nth(int i, Object notFound){
+	if(i >= 0 && i < end - start)
+	    return v.nth(start + i);
+	return notFound;
+    }
+
+    public IPersistentVector assocN(int i, Object val){
+	if(start + i > end)
+	    throw new IndexOutOfBoundsException();
+	else if(start + i == end)
+	    return cons(val);
+	return new AltFnInvocableSubVector(_meta, (AAltFnInvocableVector) v.assocN(start + i, val), start, end);
+    }
+
+    public IPersistentVector cons(Object o){
+	return new AltFnInvocableSubVector(_meta, (AAltFnInvocableVector) v.assocN(end, o), start, end + 1);
+    }
+
+    public IPersistentCollection empty(){
+	return (IPersistentCollection) ((IObj) v.empty()).withMeta(meta());
+    }
+
+    public IPersistentStack pop(){
+	if(end - 1 == start)
+	    return (IPersistentStack) empty();
+	return new AltFnInvocableSubVector(_meta, v, start, end - 1);
+    }
+
+    public AltFnInvocableSubVector withMeta(IPersistentMap meta){
+	if(meta == _meta)
+	    return this;
+	return new AltFnInvocableSubVector(meta, v, start, end);
+    }
+
+    public IPersistentMap meta(){
+	return _meta;
+    }
+
+    Object reduceRange(IFn f, Object init, int s, int e){
+	return v.reduceRange(f, init, start + s, start + e);
+    }
+
+    // Indices are reported relative to this view, so each leaf is walked as a
+    // chunk rather than handed to the underlying `kvreduceRange`.
+
+    Object kvreduceRange(IFn f, Object init, int s, int e){
+	for(int i = start + s; i < start + e;)
+	    {
+		IChunk c = v.chunkFor(i, start + e);
+		for(int j = 0; j < c.count(); ++j)
+		    {
+			init = f.invoke(init, i - start + j, c.nth(j));
+			if(RT.isReduced(init))
+			    return init;
+		    }
+		i += c.count();
+	    }
+	return init;
+    }
+
+    int leafStart(int i){
+	return Math.max(0, v.leafStart(start + i) - start);
+    }
+
+    IChunk chunkFor(int i, int e){
+	return v.chunkFor(start + i, start + e);
+    }
+
+    public Object reduce(IFn f){
+	if(end == start)
+	    return f.invoke();
+	Object ret = reduceRange(f, v.nth(start), 1, end - start);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public Object reduce(IFn f, Object init){
+	Object ret = reduceRange(f, init, 0, end - start);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public Object kvreduce(IFn f, Object init){
+	Object ret = kvreduceRange(f, init, 0, end - start);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public ISeq seq(){
+	if(end == start)
+	    return null;
+	return new ChunkedSeq(null, v, v.chunkFor(start, end), start, end);
+    }
+
+    public Sequential drop(int n){
+	if(n < end - start)
+	    return new ChunkedSeq(null, v, v.chunkFor(start + n, end), start + n, end);
+	return null;
+    }
+
+    public Iterator<Object> iterator(){
+	return new Iterator<Object>(){
+	    int i = start;
+	    IChunk chunk;
+	    int j;
+
+	    public boolean hasNext(){
+		return i < end;
+	    }
+
+	    public Object next(){
+		if(i >= end)
+		    throw new NoSuchElementException();
+		if(chunk == null || j == chunk.count())
+		    {
+			chunk = v.chunkFor(i, end);
+			j = 0;
+		    }
+		i++;
+		return chunk.nth(j++);
+	    }
+
+	    public void remove(){
+		throw new UnsupportedOperationException();
+	    }
+	};
+    }
+
+    // The view of an AltFnInvocablePersistentVector uses that vector's leaf
+    // spliterator over the viewed range, whose splits land on the underlying
+    // leaf and subtree boundaries.
+
+    public Spliterator<?> spliterator(){
+	if(v instanceof AltFnInvocablePersistentVector)
+	    return ((AltFnInvocablePersistentVector) v).rangedSpliterator(start, end);
+	return super.spliterator();
+    }
+
+    // A chunked seq over the index range [i, end) of `vec`, one underlying
+    // leaf per chunk.
+
+    static public final class ChunkedSeq extends ASeq implements IChunkedSeq,Counted,IDrop{
+
+	private static final long serialVersionUID = 4807723367052036356L;
+
+	final AAltFnInvocableVector vec;
+	final IChunk chunk;
+	final int i;
+	final int end;
+
+	ChunkedSeq(IPersistentMap meta, AAltFnInvocableVector vec, IChunk chunk, int i, int end){
+	    super(meta);
+	    this.vec = vec;
+	    this.chunk = chunk;
+	    this.i = i;
+	    this.end = end;
+	}
+
+	public IChunk chunkedFirst(){
+	    return chunk;
+	}
+
+	public ISeq chunkedNext(){
+	    int next = i + chunk.count();
+	    if(next < end)
+		return new ChunkedSeq(null, vec, vec.chunkFor(next, end), next, end);
+	    return null;
+	}
+
+	public ISeq chunkedMore(){
+	    ISeq s = chunkedNext();
+	    if(s == null)
+		return PersistentList.EMPTY;
+	    return s;
+	}
+
+	public Obj withMeta(IPersistentMap meta){
+	    if(meta == meta())
+		return this;
+	    return new ChunkedSeq(meta, vec, chunk, i, end);
+	}
+
+	public Object first(){
+	    return chunk.nth(0);
+	}
+
+	public ISeq next(){
+	    if(chunk.count() > 1)
+		return new ChunkedSeq(null, vec, chunk.dropFirst(), i + 1, end);
+	    return chunkedNext();
+	}
+
+	public int count(){
+	    return end - i;
+	}
+
+	public Sequential drop(int n){
+	    if(i + n < end)
+		return new ChunkedSeq(null, vec, vec.chunkFor(i + n, end), i + n, end);
+	    return null;
+	}
+    }
+}
@@ -0,0 +1,236 @@
+/* A thingy of at most eight elements, held in a single array of exactly that
+   length, with none of the trie's scaffolding (`cnt`, `shift`, `root`, or the
+   lookup index fields). Growing past eight elements, or editing as a
+   transient, promotes it to an AltFnInvocablePersistentVector whose tail is
+   this tuple's array. */
+
+package com.sagevisuals;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import clojure.lang.*;
+
+// Invocation and printing are inherited from AAltFnInvocableVector, so a tuple
+// is invoked and printed exactly as an AltFnInvocablePersistentVector with
+// the same options.
+//
+// The array is never written after construction, and is never handed out, so
+// a promoted vector may take it as its tail without copying: the trie's tails
+// are copied, not written, by `cons`, `assocN`, and transients.
+
+public class AltFnInvocableTuple extends AAltFnInvocableVector implements IObj, IEditableCollection, IReduce, IKVReduce, IDrop{
+
+    private static final long serialVersionUID = -2203546375309823157L;
+
+    public static final int MAX_COUNT = 8;
+
+    static final Object[] EMPTY_ARRAY = new Object[0];
+
+    final Object[] items;
+    final IPersistentMap _meta;
+
+    AltFnInvocableTuple(IPersistentMap meta, Object[] items, clojure.lang.Atom options){
+	this._meta = meta;
+	this.items = items;
+	this.options = options;
+    }
+
+    public static AltFnInvocableTuple EMPTY(clojure.lang.Atom options){
+	return new AltFnInvocableTuple(null, EMPTY_ARRAY, options);
+    }
+
+    // Returns a tuple of the elements of `coll` if there are at most
+    // MAX_COUNT of them, and otherwise an AltFnInvocablePersistentVector, as
+    // AltFnInvocablePersistentVector.createFrom. A collection that is not
+    // Counted (e.g., rest args or a lazy seq) is walked no further than one
+    // element past MAX_COUNT before deciding.
+
+    static public AAltFnInvocableVector createFrom(clojure.lang.Atom options, Object coll){
+	if(coll == null)
+	    return EMPTY(options);
+	if(coll instanceof Object[])
+	    {
+		Object[] a = (Object[]) coll;
+		if(a.length > MAX_COUNT)
+		    return AltFnInvocablePersistentVector.create(options, a);
+		return new AltFnInvocableTuple(null, (a.length == 0) ? EMPTY_ARRAY : a.clone(), options);
+	    }
+	if(coll instanceof Counted)
+	    {
+		if(((Counted) coll).count() > MAX_COUNT)
+		    return AltFnInvocablePersistentVector.createFrom(options, coll);
+		Object[] a = RT.toArray(coll);
+		return new AltFnInvocableTuple(null, (a.length == 0) ? EMPTY_ARRAY : a, options);
+	    }
+	if(coll instanceof ISeq || coll instanceof Iterable)
+	    {
+		Object[] buf = new Object[MAX_COUNT];
+		int n = 0;
+		for(ISeq s = RT.seq(coll); s != null; s = s.next())
+		    {
+			if(n == MAX_COUNT)
+			    return AltFnInvocablePersistentVector.createFrom(options, coll);
+			buf[n++] = s.first();
+		    }
+		return new AltFnInvocableTuple(null, (n == 0) ? EMPTY_ARRAY : Arrays.copyOf(buf, n), options);
+	    }
+	return AltFnInvocablePersistentVector.createFrom(options, coll);
+    }
+
+    // The same elements, options, and metadata as an
+    // AltFnInvocablePersistentVector, sharing this tuple's array as its tail.
+
+    public AltFnInvocablePersistentVector promote(){
+	return new AltFnInvocablePersistentVector(_meta, items.length, 5, AltFnInvocablePersistentVector.EMPTY_NODE, items, options);
+    }
+
+    public AltFnInvocableTuple slice(int start, int end){
+	if(start < 0 || end > items.length || start > end)
+	    throw new IndexOutOfBoundsException();
+	return new AltFnInvocableTuple(_meta, (start == end) ? EMPTY_ARRAY : Arrays.copyOfRange(items, start, end), options);
+    }
+
+    public int count(){
+	return items.length;
+    }
+
+    public Object nth(int i){
+	return items[i];
+    }
+
+    public Object nth(int i, Object notFound){
+	if(i >= 0 && i < items.length)
+	    return items[i];
+	return notFound;
+    }
+
+    public IPersistentVector assocN(int i, Object val){
+	if(i >= 0 && i < items.length)
+	    {
+		Object[] a = items.clone();
+		a[i] = val;
+		return new AltFnInvocableTuple(_meta, a, options);
+	    }
+	if(i == items.length)
+	    return cons(val);
+	throw new IndexOutOfBoundsException();
+    }
+
+    public IPersistentVector cons(Object val){
+	if(items.length == MAX_COUNT)
+	    return promote().cons(val);
+	Object[] a = Arrays.copyOf(items, items.length + 1);
+	a[items.length] = val;
+	return new AltFnInvocableTuple(_meta, a, options);
+    }
+
+    public IPersistentStack pop(){
+	if(items.length == 0)
+	    throw new IllegalStateException("Can't pop empty vector");
+	if(items.length == 1)
+	    return new AltFnInvocableTuple(_meta, EMPTY_ARRAY, options);
+	return new AltFnInvocableTuple(_meta, Arrays.copyOf(items, items.length - 1), options);
+    }
+
+    public IPersistentCollection empty(){
+	return new AltFnInvocableTuple(_meta, EMPTY_ARRAY, options);
+    }
+
+    public AltFnInvocableTuple withMeta(IPersistentMap meta){
+	if(meta == _meta)
+	    return this;
+	return new AltFnInvocableTuple(meta, items, options);
+    }
+
+    public IPersistentMap meta(){
+	return _meta;
+    }
+
+    public ITransientCollection asTransient(){
+	return promote().asTransient();
+    }
+
+    Object reduceRange(IFn f, Object init, int start, int end){
+	for(int i = start; i < end; ++i)
+	    {
+		init = f.invoke(init, items[i]);
+		if(RT.isReduced(init))
+		    return init;
+	    }
+	return init;
+    }
+
+    Object kvreduceRange(IFn f, Object init, int start, int end){
+	for(int i = start; i < end; ++i)
+	    {
+		init = f.invoke(init, i, items[i]);
+		if(RT.isReduced(init))
+		    return init;
+	    }
+	return init;
+    }
+
+    IChunk chunkFor(int i, int end){
+	return new ArrayChunk(items, i, end);
+    }
+
+    public Object reduce(IFn f){
+	if(items.length == 0)
+	    return f.invoke();
+	Object ret = reduceRange(f, items[0], 1, items.length);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public Object reduce(IFn f, Object init){
+	Object ret = reduceRange(f, init, 0, items.length);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public Object kvreduce(IFn f, Object init){
+	Object ret = kvreduceRange(f, init, 0, items.length);
+	return RT.isReduced(ret) ? ((IDeref) ret).deref() : ret;
+    }
+
+    public ISeq seq(){
+	if(items.length == 0)
+	    return null;
+	return new AltFnInvocableSubVector.ChunkedSeq(null, this, chunkFor(0, items.length), 0, items.length);
+    }
+
+    public Sequential drop(int n){
+	if(n < items.length)
+	    return new AltFnInvocableSubVector.ChunkedSeq(null, this, chunkFor(n, items.length), n, items.length);
+	return null;
+    }
+
+    public Iterator<Object> iterator(){
+	return new Iterator<Object>(){
+	    int i = 0;
+
+	    public boolean hasNext(){
+		return i < items.length;
+	    }
+
+	    public Object next(){
+		if(i >= items.length)
+		    throw new NoSuchElementException();
+		return items[i++];
+	    }
+
+	    public void remove(){
+		throw new UnsupportedOperationException();
+	    }
+	};
+    }
+
+    public Spliterator<Object> spliterator(){
+	return Spliterators.spliterator(items, Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+
+    public Object[] toArray(){
+	return items.clone();
+    }
+}
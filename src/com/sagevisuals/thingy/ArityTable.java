@@ -0,0 +1,629 @@
+/* An invocation function that dispatches on the number of arguments through
+   an array, for use as the `:fn` of a thingy's options. */
+
+package com.sagevisuals;
+
+import clojure.lang.*;
+
+// A thingy's invocation function receives the instance followed by the
+// arguments of the call, so a table built for thingies is indexed by that
+// total: entry 1 serves `(a-thingy)`, entry 2 serves `(a-thingy x)`, and so
+// on. An argument count with no entry falls to the `variadic` function, if
+// any, and otherwise throws clojure.lang.ArityException. Entries go up to
+// MAX_ARITY, the widest fixed-arity `invoke` of IFn; wider calls always
+// fall to `variadic`.
+//
+// A multi-arity Clojure `fn` already dispatches on arity by method
+// overloading, so the table earns its keep when the per-arity functions are
+// chosen or generated at run time, e.g., by code generators that assemble
+// them independently. Dispatch is one bounds check and one array load. When
+// the table is the `:fn` of the shared options, it is the constant target of
+// the invocation call site, so the JIT compiler can fold the load as well.
+
+public final class ArityTable extends AFn {
+
+    final IFn[] fns;
+    final IFn variadic;
+
+    public ArityTable(IFn[] fns, IFn variadic) {
+	this.fns = fns.clone();
+	this.variadic = variadic;
+    }
+
+    // Builds a table from map `m`, whose keys are argument counts from 0 to
+    // MAX_ARITY, or the keyword `:variadic`, and whose values are IFns.
+
+    static final Keyword VARIADIC_KEY = Keyword.intern(null, "variadic");
+
+    public static final int MAX_ARITY = 20;
+
+    public static ArityTable create(IPersistentMap m) {
+	int size = 0;
+	IFn variadic = null;
+	for(ISeq s = RT.seq(m); s != null; s = s.next()) {
+	    IMapEntry e = (IMapEntry) s.first();
+	    if(!(e.val() instanceof IFn))
+		throw new IllegalArgumentException("Not invocable: " + e.val() + " for key " + e.key());
+	    if(VARIADIC_KEY.equals(e.key()))
+		variadic = (IFn) e.val();
+	    else
+		size = Math.max(size, arityKey(e.key()) + 1);
+	}
+	IFn[] fns = new IFn[size];
+	for(ISeq s = RT.seq(m); s != null; s = s.next()) {
+	    IMapEntry e = (IMapEntry) s.first();
+	    if(!VARIADIC_KEY.equals(e.key()))
+		fns[arityKey(e.key())] = (IFn) e.val();
+	}
+	return new ArityTable(fns, variadic);
+    }
+
+    static int arityKey(Object k) {
+	if(!(k instanceof Long || k instanceof Integer) || ((Number) k).longValue() < 0
+	   || ((Number) k).longValue() > MAX_ARITY)
+	    throw new IllegalArgumentException("Not an argument count from 0 to " + MAX_ARITY + " or :variadic: " + k);
+	return ((Number) k).intValue();
+    }
+
+    // Returns the function for `n` arguments.
+
+    IFn fnFor(int n) {
+	if(n < fns.length) {
+	    IFn f = fns[n];
+	    if(f != null)
+		return f;
+	}
+	if(variadic != null)
+	    return variadic;
+	throw new ArityException(n, "thingy arity table");
+    }
+
+    public IFn entry(int n) {
+	return (n >= 0 && n < fns.length) ? fns[n] : null;
+    }
+
+    public IFn variadic() {
+	return variadic;
+    }
+
+    @Override
+    public Object invoke() {
+	return fnFor(0).invoke();
+    }
+
+    @Override
+    public Object invoke(Object arg0) {
+	return fnFor(1).invoke(arg0);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1) {
+	return fnFor(2).invoke(arg0,
+			       arg1);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2) {
+	return fnFor(3).invoke(arg0,
+			       arg1,
+			       arg2);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3) {
+	return fnFor(4).invoke(arg0,
+			       arg1,
+			       arg2,
+			       arg3);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4) {
+	return fnFor(5).invoke(arg0,
+			       arg1,
+			       arg2,
+			       arg3,
+			       arg4);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5) {
+	return fnFor(6).invoke(arg0,
+			       arg1,
+			       arg2,
+			       arg3,
+			       arg4,
+			       arg5);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6) {
+	return fnFor(7).invoke(arg0,
+			       arg1,
+			       arg2,
+			       arg3,
+			       arg4,
+			       arg5,
+			       arg6);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7) {
+	return fnFor(8).invoke(arg0,
+			       arg1,
+			       arg2,
+			       arg3,
+			       arg4,
+			       arg5,
+			       arg6,
+			       arg7);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8) {
+	return fnFor(9).invoke(arg0,
+			       arg1,
+			       arg2,
+			       arg3,
+			       arg4,
+			       arg5,
+			       arg6,
+			       arg7,
+			       arg8);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9) {
+	return fnFor(10).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10) {
+	return fnFor(11).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11) {
+	return fnFor(12).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12) {
+	return fnFor(13).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11,
+				arg12);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13) {
+	return fnFor(14).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11,
+				arg12,
+				arg13);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14) {
+	return fnFor(15).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11,
+				arg12,
+				arg13,
+				arg14);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15) {
+	return fnFor(16).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11,
+				arg12,
+				arg13,
+				arg14,
+				arg15);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16) {
+	return fnFor(17).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11,
+				arg12,
+				arg13,
+				arg14,
+				arg15,
+				arg16);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17) {
+	return fnFor(18).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11,
+				arg12,
+				arg13,
+				arg14,
+				arg15,
+				arg16,
+				arg17);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18) {
+	return fnFor(19).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11,
+				arg12,
+				arg13,
+				arg14,
+				arg15,
+				arg16,
+				arg17,
+				arg18);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18,
+			 Object arg19) {
+	return fnFor(20).invoke(arg0,
+				arg1,
+				arg2,
+				arg3,
+				arg4,
+				arg5,
+				arg6,
+				arg7,
+				arg8,
+				arg9,
+				arg10,
+				arg11,
+				arg12,
+				arg13,
+				arg14,
+				arg15,
+				arg16,
+				arg17,
+				arg18,
+				arg19);
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18,
+			 Object arg19,
+			 Object... args) {
+	return fnFor(20 + args.length).invoke(arg0,
+					      arg1,
+					      arg2,
+					      arg3,
+					      arg4,
+					      arg5,
+					      arg6,
+					      arg7,
+					      arg8,
+					      arg9,
+					      arg10,
+					      arg11,
+					      arg12,
+					      arg13,
+					      arg14,
+					      arg15,
+					      arg16,
+					      arg17,
+					      arg18,
+					      arg19,
+					      args);
+    }
+
+    // Counting stops past the table's last entry, beyond which every count
+    // falls to `variadic`.
+
+    @Override
+    public Object applyTo(ISeq args) {
+	int n = RT.boundedLength(args, fns.length);
+	if(n >= fns.length && variadic != null)
+	    return variadic.applyTo(args);
+	return fnFor(n >= fns.length ? RT.count(args) : n).applyTo(args);
+    }
+}
@@ -0,0 +1,193 @@
+/* Invokes thingies asynchronously, returning CompletableFutures. */
+
+package com.sagevisuals;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import clojure.lang.*;
+
+// An AsyncInvoker is itself a function: `(invoker v & args)` returns a
+// CompletableFuture of `(v & args)`. The invocation function is resolved when
+// the call is submitted, on the submitting thread (including any
+// `with-alt-fn` override in effect there), so a later change of options does
+// not affect calls already submitted.
+//
+// Calls run on `executor`, by default one virtual thread per call where the
+// JVM supports virtual threads (Java 21+), and otherwise on Clojure's
+// `send-off` pool, an unbounded cached pool of platform threads. Java 17 has
+// no virtual threads, so there every running call holds a platform thread.
+//
+// When `maxConcurrency` is positive, at most that many calls through this
+// invoker run at once. A call takes a permit before it is handed to the
+// executor; the rest wait in this invoker's queue, holding no thread, and are
+// handed over one by one as running calls finish.
+//
+// Cancelling a returned future with `mayInterruptIfRunning` interrupts the
+// thread running the call; a call that has not started never runs.
+
+public final class AsyncInvoker extends RestFn {
+
+    private static final long serialVersionUID = -5087167005630712764L;
+
+    final Executor executor;
+    final Semaphore permits;
+    final ConcurrentLinkedQueue<Invocation> waiting;
+
+    public AsyncInvoker(Executor executor, int maxConcurrency) {
+	this.executor = (executor == null) ? defaultExecutor() : executor;
+	this.permits = (maxConcurrency > 0) ? new Semaphore(maxConcurrency) : null;
+	this.waiting = (maxConcurrency > 0) ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    public static final AsyncInvoker DEFAULT = new AsyncInvoker(null, 0);
+
+    static volatile ExecutorService virtualThreadExecutor;
+
+    // Virtual threads arrived in Java 21; they are found reflectively so that
+    // the library still loads on older JVMs, where this returns null.
+
+    public static ExecutorService virtualThreadExecutor() {
+	ExecutorService e = virtualThreadExecutor;
+	if(e == null) {
+	    synchronized(AsyncInvoker.class) {
+		e = virtualThreadExecutor;
+		if(e == null) {
+		    try {
+			e = (ExecutorService) java.util.concurrent.Executors.class
+			    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		    } catch (NoSuchMethodException ex) {
+			return null;
+		    } catch (ReflectiveOperationException ex) {
+			throw Util.sneakyThrow(ex);
+		    }
+		    virtualThreadExecutor = e;
+		}
+	    }
+	}
+	return e;
+    }
+
+    static Executor defaultExecutor() {
+	Executor e = virtualThreadExecutor();
+	return (e == null) ? Agent.soloExecutor : e;
+    }
+
+    public Executor executor() {
+	return executor;
+    }
+
+    public CompletableFuture<Object> invokeAsync(AAltFnInvocableVector v, Object[] args) {
+	Object[] all = new Object[args.length + 1];
+	all[0] = v;
+	System.arraycopy(args, 0, all, 1, args.length);
+	Invocation call = new Invocation(v.invocationFn(), ArraySeq.create(all), (permits == null) ? null : this);
+	if(permits == null)
+	    execute(call);
+	else {
+	    waiting.add(call);
+	    dispatch();
+	}
+	return call;
+    }
+
+    // Returns false, having completed `call` exceptionally, when the executor
+    // rejects it.
+
+    boolean execute(Invocation call) {
+	try {
+	    executor.execute(call);
+	    return true;
+	} catch (Throwable t) {
+	    call.completeExceptionally(t);
+	    return false;
+	}
+    }
+
+    // Hands waiting calls to the executor while permits remain. A call
+    // cancelled while it waited is dropped without taking a thread. Adding
+    // to the queue and returning a permit are each followed by a dispatch,
+    // so a call is never left waiting with a permit free.
+
+    void dispatch() {
+	while(!waiting.isEmpty() && permits.tryAcquire()) {
+	    Invocation call = waiting.poll();
+	    if(call == null || call.isDone() || !execute(call))
+		permits.release();
+	}
+    }
+
+    void finished() {
+	permits.release();
+	dispatch();
+    }
+
+    @Override
+    public int getRequiredArity() {
+	return 1;
+    }
+
+    @Override
+    protected Object doInvoke(Object v, Object args) {
+	return invokeAsync((AAltFnInvocableVector) v, RT.seqToArray((ISeq) args));
+    }
+
+    static final class Invocation extends CompletableFuture<Object> implements Runnable {
+	final IFn fn;
+	final ISeq args;
+	final AsyncInvoker limiter;
+	Thread runner;
+
+	// `limiter` is the invoker whose permit this call holds, or null when
+	// the invoker has no concurrency limit.
+
+	Invocation(IFn fn, ISeq args, AsyncInvoker limiter) {
+	    this.fn = fn;
+	    this.args = args;
+	    this.limiter = limiter;
+	}
+
+	public void run() {
+	    try {
+		call();
+	    } finally {
+		if(limiter != null)
+		    limiter.finished();
+	    }
+	}
+
+	void call() {
+	    synchronized(this) {
+		if(isDone())
+		    return;
+		runner = Thread.currentThread();
+	    }
+	    try {
+		complete(fn.applyTo(args));
+	    } catch (Throwable t) {
+		completeExceptionally(t);
+	    } finally {
+		synchronized(this) {
+		    runner = null;
+		    // An interrupt meant for this call must not leak to the next
+		    // task on a pooled thread.
+		    Thread.interrupted();
+		}
+	    }
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+	    boolean cancelled = super.cancel(mayInterruptIfRunning);
+	    if(cancelled && mayInterruptIfRunning) {
+		synchronized(this) {
+		    if(runner != null)
+			runner.interrupt();
+		}
+	    }
+	    return cancelled;
+	}
+    }
+}
@@ -0,0 +1,242 @@
+/* Invokes many thingies, each with its own arguments, as one batch. */
+
+package com.sagevisuals;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import clojure.lang.*;
+
+// A batch is an array of tuples, each a sequential collection whose first
+// element is a thingy (or any other IFn) and whose remaining elements are the
+// arguments to invoke it with. The result of each invocation is stored at the
+// tuple's index, so results come back in input order however the work is
+// scheduled.
+//
+// The invocation function is resolved once, on the thread that creates the
+// batch: a `with-alt-fn` override in effect on that thread applies to the
+// whole batch, including tuples run on other threads, and thingies governed
+// by the shared options all use the function assigned when the batch began.
+// Thingies governed by some other options atom are resolved per tuple. As
+// with `AAltFnInvocableVector.invocationFn`, the function is wrapped to
+// record each call while the Flight Recorder Invocation event is enabled.
+//
+// Tuples are divided into chunks of `chunkSize`. Without an executor, chunks
+// run on the calling thread; with one, each chunk is a separate task. The
+// first failure cancels the chunks not yet started and is rethrown to the
+// caller. When the executor is a ForkJoinPool, e.g., the common pool by
+// default, chunks are awaited by joining, so a caller that is itself a task
+// in that pool (e.g., within a fold) runs queued chunks while it waits rather
+// than blocking a worker.
+
+public final class BatchInvoker {
+
+    final Object[] tuples;
+    final int chunkSize;
+    final IFn override;
+    final IFn optionsFn;
+
+    BatchInvoker(Object[] tuples, int chunkSize) {
+	if(chunkSize < 1)
+	    throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+	this.tuples = tuples;
+	this.chunkSize = chunkSize;
+	this.override = AAltFnInvocableVector.fnBindingUsed ? (IFn) AAltFnInvocableVector.boundFn() : null;
+	this.optionsFn = AAltFnInvocableVector.optionsFn();
+    }
+
+    int chunkCount() {
+	return (tuples.length + chunkSize - 1) / chunkSize;
+    }
+
+    IFn fnFor(AAltFnInvocableVector v) {
+	if(override != null)
+	    return ThingyEvents.timed(override);
+	if(v.options == AAltFnInvocableVector.OPTIONS && optionsFn != null)
+	    return ThingyEvents.timed(optionsFn);
+	return v.invocationFn();
+    }
+
+    Object invokeTuple(Object tuple) {
+	Indexed t = (tuple instanceof Indexed) ? (Indexed) tuple : LazilyPersistentVector.create(tuple);
+	int n = ((Counted) t).count() - 1;
+	if(n < 0)
+	    throw new IllegalArgumentException("Empty invocation tuple");
+	Object head = t.nth(0);
+	if(head instanceof AAltFnInvocableVector)
+	    return invokeWithSelf(fnFor((AAltFnInvocableVector) head), head, t, n);
+	return invokePlain((IFn) head, t, n);
+    }
+
+    // Each tuple's arguments are passed to an enumerated arity of the
+    // function directly from the tuple, without building an argument seq.
+
+    static Object invokeWithSelf(IFn f, Object self, Indexed t, int n) {
+	switch(n) {
+	    case 0: return f.invoke(self);
+	    case 1: return f.invoke(self, t.nth(1));
+	    case 2: return f.invoke(self, t.nth(1), t.nth(2));
+	    case 3: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3));
+	    case 4: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4));
+	    case 5: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5));
+	    case 6: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6));
+	    case 7: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7));
+	    case 8: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8));
+	    case 9: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9));
+	    case 10: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10));
+	    case 11: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11));
+	    case 12: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12));
+	    case 13: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13));
+	    case 14: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14));
+	    case 15: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15));
+	    case 16: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16));
+	    case 17: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16), t.nth(17));
+	    case 18: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16), t.nth(17), t.nth(18));
+	    case 19: return f.invoke(self, t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16), t.nth(17), t.nth(18), t.nth(19));
+	    default: return f.applyTo(RT.cons(self, RT.next(RT.seq(t))));
+	}
+    }
+
+    static Object invokePlain(IFn f, Indexed t, int n) {
+	switch(n) {
+	    case 0: return f.invoke();
+	    case 1: return f.invoke(t.nth(1));
+	    case 2: return f.invoke(t.nth(1), t.nth(2));
+	    case 3: return f.invoke(t.nth(1), t.nth(2), t.nth(3));
+	    case 4: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4));
+	    case 5: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5));
+	    case 6: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6));
+	    case 7: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7));
+	    case 8: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8));
+	    case 9: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9));
+	    case 10: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10));
+	    case 11: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11));
+	    case 12: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12));
+	    case 13: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13));
+	    case 14: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14));
+	    case 15: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15));
+	    case 16: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16));
+	    case 17: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16), t.nth(17));
+	    case 18: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16), t.nth(17), t.nth(18));
+	    case 19: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16), t.nth(17), t.nth(18), t.nth(19));
+	    case 20: return f.invoke(t.nth(1), t.nth(2), t.nth(3), t.nth(4), t.nth(5), t.nth(6), t.nth(7), t.nth(8), t.nth(9), t.nth(10), t.nth(11), t.nth(12), t.nth(13), t.nth(14), t.nth(15), t.nth(16), t.nth(17), t.nth(18), t.nth(19), t.nth(20));
+	    default: return f.applyTo(RT.next(RT.seq(t)));
+	}
+    }
+
+    IPersistentVector invokeChunk(int chunk) {
+	int start = chunk * chunkSize;
+	int end = Math.min(tuples.length, start + chunkSize);
+	ITransientCollection ret = PersistentVector.EMPTY.asTransient();
+	for(int i = start; i < end; i++)
+	    ret = ret.conj(invokeTuple(tuples[i]));
+	return (IPersistentVector) ret.persistent();
+    }
+
+    Future<IPersistentVector> submitChunk(ExecutorService executor, int chunk) {
+	return executor.submit(() -> invokeChunk(chunk));
+    }
+
+    static IPersistentVector await(Future<IPersistentVector> f) {
+	if(f instanceof ForkJoinTask)
+	    ((ForkJoinTask<IPersistentVector>) f).quietlyJoin();
+	try {
+	    return f.get();
+	} catch (ExecutionException e) {
+	    throw Util.sneakyThrow(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw Util.sneakyThrow(e);
+	}
+    }
+
+    static void cancelAll(Iterable<Future<IPersistentVector>> futures) {
+	for(Future<IPersistentVector> f : futures)
+	    f.cancel(false);
+    }
+
+    // Returns a vector of the results of every tuple, in order.
+
+    public static IPersistentVector invokeAll(Object[] tuples, int chunkSize, ExecutorService executor) {
+	BatchInvoker b = new BatchInvoker(tuples, chunkSize);
+	int chunks = b.chunkCount();
+	if(executor == null || chunks <= 1) {
+	    ITransientCollection ret = PersistentVector.EMPTY.asTransient();
+	    for(Object t : tuples)
+		ret = ret.conj(b.invokeTuple(t));
+	    return (IPersistentVector) ret.persistent();
+	}
+	ArrayDeque<Future<IPersistentVector>> futures = new ArrayDeque<>(chunks);
+	for(int c = 0; c < chunks; c++)
+	    futures.add(b.submitChunk(executor, c));
+	ITransientCollection ret = PersistentVector.EMPTY.asTransient();
+	try {
+	    while(!futures.isEmpty()) {
+		for(Object r : (Iterable) await(futures.peekFirst()))
+		    ret = ret.conj(r);
+		futures.removeFirst();
+	    }
+	} catch (Throwable t) {
+	    cancelAll(futures);
+	    throw t;
+	}
+	return (IPersistentVector) ret.persistent();
+    }
+
+    // Returns an iterator over vectors of results, one per chunk, in order.
+    // At most `ahead` chunks are submitted beyond the one being waited on, so
+    // a consumer that stops early leaves the rest of the batch unstarted.
+
+    public static Iterator<IPersistentVector> invokeChunks(Object[] tuples,
+							   int chunkSize,
+							   ExecutorService executor,
+							   int ahead) {
+	BatchInvoker b = new BatchInvoker(tuples, chunkSize);
+	int chunks = b.chunkCount();
+	if(executor == null)
+	    return new Iterator<IPersistentVector>() {
+		int next = 0;
+		public boolean hasNext() { return next < chunks; }
+		public IPersistentVector next() {
+		    if(next >= chunks)
+			throw new NoSuchElementException();
+		    return b.invokeChunk(next++);
+		}
+	    };
+	return new Iterator<IPersistentVector>() {
+	    final ArrayDeque<Future<IPersistentVector>> pending = new ArrayDeque<>();
+	    int submitted = 0;
+	    int delivered = 0;
+
+	    void fill() {
+		while(submitted < chunks && pending.size() <= ahead)
+		    pending.add(b.submitChunk(executor, submitted++));
+	    }
+
+	    public boolean hasNext() {
+		return delivered < chunks;
+	    }
+
+	    public IPersistentVector next() {
+		if(delivered >= chunks)
+		    throw new NoSuchElementException();
+		fill();
+		try {
+		    IPersistentVector r = await(pending.removeFirst());
+		    delivered++;
+		    fill();
+		    return r;
+		} catch (Throwable t) {
+		    cancelAll(pending);
+		    delivered = chunks;
+		    throw t;
+		}
+	    }
+	};
+    }
+}
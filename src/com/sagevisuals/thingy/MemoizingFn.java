@@ -0,0 +1,544 @@
+/* A bounded, concurrent, least-recently-used cache in front of an invocation
+   function, for use as the `:fn` of a thingy's options. */
+
+package com.sagevisuals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import clojure.lang.*;
+
+// An invocation function receives the thingy followed by the arguments of the
+// call, so the cache key is the whole argument list. A key's hash combines
+// the `hasheq` of every argument; a thingy's `hasheq` is computed once and
+// cached by clojure.lang.APersistentVector, so repeated calls on the same
+// thingy do not re-hash its elements. Keys compare arguments with
+// clojure.lang.Util.equiv, after an identity check.
+//
+// The cache is split into segments, each a LinkedHashMap in access order
+// guarded by its own lock, so that concurrent callers rarely contend and
+// eviction stays strictly least-recently-used within a segment. On a miss, the
+// wrapped function is called outside any lock; two threads missing on the
+// same key may both call it, and the later result replaces the earlier one.
+// Exceptions are not cached.
+//
+// The cache belongs to this instance. Installing a different `:fn` (e.g., with
+// `reset!-options` or `assign-thingy-fn!`) therefore discards it, and with it
+// every result computed by the previous function.
+
+public final class MemoizingFn extends AFn {
+
+    static final int SEGMENTS = 16;
+
+    static final Object NIL = new Object();
+
+    final IFn fn;
+    final int maxSize;
+    final Segment[] segments;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    final class Segment extends LinkedHashMap<Key, Object> {
+	private static final long serialVersionUID = 847991629886729479L;
+
+	final int capacity;
+
+	Segment(int capacity) {
+	    super(16, 0.75f, true);
+	    this.capacity = capacity;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+	    if(size() > capacity) {
+		evictions.increment();
+		return true;
+	    }
+	    return false;
+	}
+    }
+
+    static final class Key {
+	final Object[] args;
+	final int hash;
+
+	Key(Object[] args) {
+	    this.args = args;
+	    int h = 1;
+	    for(Object a : args)
+		h = 31 * h + Util.hasheq(a);
+	    this.hash = h;
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    if(this == o)
+		return true;
+	    if(!(o instanceof Key))
+		return false;
+	    Key k = (Key) o;
+	    if(hash != k.hash || args.length != k.args.length)
+		return false;
+	    for(int i = 0; i < args.length; i++)
+		if(args[i] != k.args[i] && !Util.equiv(args[i], k.args[i]))
+		    return false;
+	    return true;
+	}
+    }
+
+    public MemoizingFn(IFn fn, int maxSize) {
+	if(maxSize < 1)
+	    throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+	this.fn = fn;
+	this.maxSize = maxSize;
+	int n = Math.min(SEGMENTS, maxSize);
+	this.segments = new Segment[n];
+	for(int i = 0; i < n; i++)
+	    segments[i] = new Segment(maxSize / n + ((i < maxSize % n) ? 1 : 0));
+    }
+
+    public IFn fn() {
+	return fn;
+    }
+
+    Segment segmentFor(int hash) {
+	int h = hash ^ (hash >>> 16);
+	return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    Object lookup(Object[] args) {
+	Key k = new Key(args);
+	Segment s = segmentFor(k.hash);
+	Object v;
+	synchronized(s) {
+	    v = s.get(k);
+	}
+	if(v != null) {
+	    hits.increment();
+	    return (v == NIL) ? null : v;
+	}
+	misses.increment();
+	Object ret = invokeArray(fn, args);
+	synchronized(s) {
+	    s.put(k, (ret == null) ? NIL : ret);
+	}
+	return ret;
+    }
+
+    static Object invokeArray(IFn f, Object[] a) {
+	switch(a.length) {
+	case 0: return f.invoke();
+	case 1: return f.invoke(a[0]);
+	case 2: return f.invoke(a[0], a[1]);
+	case 3: return f.invoke(a[0], a[1], a[2]);
+	case 4: return f.invoke(a[0], a[1], a[2], a[3]);
+	case 5: return f.invoke(a[0], a[1], a[2], a[3], a[4]);
+	case 6: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5]);
+	case 7: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6]);
+	case 8: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7]);
+	case 9: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8]);
+	case 10: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9]);
+	case 11: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10]);
+	case 12: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11]);
+	case 13: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11], a[12]);
+	case 14: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11], a[12], a[13]);
+	case 15: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11], a[12], a[13], a[14]);
+	case 16: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11], a[12], a[13], a[14], a[15]);
+	case 17: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11], a[12], a[13], a[14], a[15], a[16]);
+	case 18: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11], a[12], a[13], a[14], a[15], a[16], a[17]);
+	case 19: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11], a[12], a[13], a[14], a[15], a[16], a[17], a[18]);
+	case 20: return f.invoke(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9], a[10], a[11], a[12], a[13], a[14], a[15], a[16], a[17], a[18], a[19]);
+	default: return f.applyTo(ArraySeq.create(a));
+	}
+    }
+
+    // Removes every cached result; the counters are kept.
+
+    public void clear() {
+	for(Segment s : segments)
+	    synchronized(s) {
+		s.clear();
+	    }
+    }
+
+    public int size() {
+	int n = 0;
+	for(Segment s : segments)
+	    synchronized(s) {
+		n += s.size();
+	    }
+	return n;
+    }
+
+    static final Keyword HITS_KEY = Keyword.intern(null, "hits");
+    static final Keyword MISSES_KEY = Keyword.intern(null, "misses");
+    static final Keyword EVICTIONS_KEY = Keyword.intern(null, "evictions");
+    static final Keyword SIZE_KEY = Keyword.intern(null, "size");
+    static final Keyword MAX_SIZE_KEY = Keyword.intern(null, "max-size");
+
+    // Returns a map of the cache's counters. Each counter is read
+    // independently, so a snapshot taken during concurrent calls need not be
+    // mutually consistent.
+
+    public IPersistentMap stats() {
+	return RT.map(HITS_KEY, hits.sum(),
+		      MISSES_KEY, misses.sum(),
+		      EVICTIONS_KEY, evictions.sum(),
+		      SIZE_KEY, (long) size(),
+		      MAX_SIZE_KEY, (long) maxSize);
+    }
+
+    @Override
+    public Object invoke() {
+	return lookup(new Object[0]);
+    }
+
+    @Override
+    public Object invoke(Object arg0) {
+	return lookup(new Object[]{arg0});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1) {
+	return lookup(new Object[]{arg0, arg1});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2) {
+	return lookup(new Object[]{arg0, arg1, arg2});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14, arg15});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14, arg15, arg16});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14, arg15, arg16, arg17});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14, arg15, arg16, arg17, arg18});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18,
+			 Object arg19) {
+	return lookup(new Object[]{arg0, arg1, arg2, arg3, arg4, arg5, arg6, arg7, arg8, arg9, arg10, arg11, arg12, arg13, arg14, arg15, arg16, arg17, arg18, arg19});
+    }
+
+    @Override
+    public Object invoke(Object arg0,
+			 Object arg1,
+			 Object arg2,
+			 Object arg3,
+			 Object arg4,
+			 Object arg5,
+			 Object arg6,
+			 Object arg7,
+			 Object arg8,
+			 Object arg9,
+			 Object arg10,
+			 Object arg11,
+			 Object arg12,
+			 Object arg13,
+			 Object arg14,
+			 Object arg15,
+			 Object arg16,
+			 Object arg17,
+			 Object arg18,
+			 Object arg19,
+			 Object... args) {
+	Object[] all = new Object[20 + args.length];
+	all[0] = arg0;
+	all[1] = arg1;
+	all[2] = arg2;
+	all[3] = arg3;
+	all[4] = arg4;
+	all[5] = arg5;
+	all[6] = arg6;
+	all[7] = arg7;
+	all[8] = arg8;
+	all[9] = arg9;
+	all[10] = arg10;
+	all[11] = arg11;
+	all[12] = arg12;
+	all[13] = arg13;
+	all[14] = arg14;
+	all[15] = arg15;
+	all[16] = arg16;
+	all[17] = arg17;
+	all[18] = arg18;
+	all[19] = arg19;
+	System.arraycopy(args, 0, all, 20, args.length);
+	return lookup(all);
+    }
+
+    @Override
+    public Object applyTo(ISeq args) {
+	return lookup(RT.seqToArray(args));
+    }
+}
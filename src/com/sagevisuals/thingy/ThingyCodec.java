@@ -0,0 +1,625 @@
+/* A compact binary encoding of thingies, and of the Clojure values they hold,
+   over java.io.DataOutput and java.io.DataInput. */
+
+package com.sagevisuals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import clojure.lang.*;
+
+// Java serialization of a thingy writes every Node, the `options` atom by
+// value, and a class descriptor for each of them, and a deserialized thingy
+// holds a copy of the atom rather than the live one. This codec instead
+// writes a tag byte per value, counts and integers as variable-length
+// zig-zag integers, and a thingy's elements leaf by leaf.
+//
+// A thingy's options are written only as the `:kind` of the atom (nil for
+// the shared options). On read, the Decoder's `optionsFor` function maps that
+// kind back to a live options atom, so a decoded thingy is invoked and
+// printed with the current function and delimiters of its kind.
+//
+// An Encoder remembers every full 32-element leaf array it has written, by
+// identity. Versions of a vector that share leaves (e.g., a vector and its
+// successors by `assoc` or `conj`) written to the same Encoder therefore
+// write each shared leaf once; later occurrences are back-references by
+// number. The Decoder rebuilds the versions around the same leaf arrays, so
+// the decoded versions share those leaves as the originals did. Keywords,
+// which are interned, are likewise written by name once per Encoder and by
+// number thereafter.
+//
+// Vectors, maps, sets, and seqs are written by tag, with their metadata, if
+// any, ahead of them. Sorted maps and sets are written by tag only when they
+// use the default comparator. Records, sorted collections with any other
+// comparator, and other collections that a tag would decode as a different
+// type are rejected with an IllegalArgumentException.
+//
+// Values of the few classes in SERIALIZABLE (numbers without a tag, dates,
+// UUIDs, and URIs) are written with Java serialization, length-prefixed, and
+// read back through SERIAL_FILTER, which admits those classes only; anything
+// else is rejected with an IllegalArgumentException. Even so, the Decoder
+// trusts the counts and lengths it reads (a forged count allocates an array
+// of that size), so do not decode bytes from an untrusted source.
+
+public final class ThingyCodec {
+
+    static final int MAGIC = 0x54484731; // "THG1"
+
+    static final byte NIL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte LONG = 3;
+    static final byte INT = 4;
+    static final byte DOUBLE = 5;
+    static final byte STRING = 6;
+    static final byte KEYWORD = 7;
+    static final byte SYMBOL = 8;
+    static final byte CHAR = 9;
+    static final byte BIGINT = 10;
+    static final byte VECTOR = 11;
+    static final byte LIST = 12;
+    static final byte MAP = 13;
+    static final byte SET = 14;
+    static final byte THINGY = 15;
+    static final byte TUPLE = 16;
+    static final byte PRIMITIVE_THINGY = 17;
+    static final byte SERIALIZED = 18;
+    static final byte KEYWORD_REF = 19;
+    static final byte SORTED_MAP = 20;
+    static final byte SORTED_SET = 21;
+    static final byte META = 22;
+
+    static final byte LEAF = 0;
+    static final byte LEAF_REF = 1;
+
+    static final Keyword KIND_KEY = Keyword.intern(null, "kind");
+
+    private ThingyCodec(){
+    }
+
+    static final Set<Class<?>> SERIALIZABLE = Set.of(Float.class, Short.class, Byte.class,
+						     BigInteger.class, BigDecimal.class, Ratio.class,
+						     Date.class, UUID.class, URI.class);
+
+    // Also admits java.lang.Number, the serialized superclass of the numbers,
+    // and the primitive arrays within them (e.g., a BigInteger's magnitude).
+
+    static final ObjectInputFilter SERIAL_FILTER = info -> {
+	if(info.depth() > 4 || info.references() > 64)
+	    return ObjectInputFilter.Status.REJECTED;
+	Class<?> c = info.serialClass();
+	if(c == null)
+	    return ObjectInputFilter.Status.UNDECIDED;
+	if(SERIALIZABLE.contains(c) || c == Number.class || (c.isArray() && c.getComponentType().isPrimitive()))
+	    return ObjectInputFilter.Status.ALLOWED;
+	return ObjectInputFilter.Status.REJECTED;
+    };
+
+    public static final class Encoder {
+	final DataOutput out;
+	final IdentityHashMap<Object[], Integer> leaves = new IdentityHashMap<Object[], Integer>();
+	final IdentityHashMap<Keyword, Integer> keywords = new IdentityHashMap<Keyword, Integer>();
+	final boolean kinds;
+
+	public Encoder(DataOutput out) throws IOException {
+	    this(out, true, true);
+	}
+
+	// Without the magic number, for values embedded in a larger format
+	// (see AltFnInvocableMappedVector). Unless `kinds`, a thingy of a kind
+	// throws IllegalArgumentException, for a format that reads every thingy
+	// back with one options atom.
+
+	Encoder(DataOutput out, boolean magic, boolean kinds) throws IOException {
+	    this.out = out;
+	    this.kinds = kinds;
+	    if(magic)
+		out.writeInt(MAGIC);
+	}
+
+	public Encoder write(Object x) throws IOException {
+	    if(x == null)
+		out.writeByte(NIL);
+	    else if(x instanceof Boolean)
+		out.writeByte(((Boolean) x) ? TRUE : FALSE);
+	    else if(x instanceof Long)
+		{
+		    out.writeByte(LONG);
+		    writeVarLong(out, (Long) x);
+		}
+	    else if(x instanceof Integer)
+		{
+		    out.writeByte(INT);
+		    writeVarLong(out, (Integer) x);
+		}
+	    else if(x instanceof Double)
+		{
+		    out.writeByte(DOUBLE);
+		    out.writeDouble((Double) x);
+		}
+	    else if(x instanceof String)
+		{
+		    out.writeByte(STRING);
+		    writeString(out, (String) x);
+		}
+	    else if(x instanceof Keyword)
+		{
+		    Integer id = keywords.get(x);
+		    if(id != null)
+			{
+			    out.writeByte(KEYWORD_REF);
+			    writeVarLong(out, id);
+			}
+		    else
+			{
+			    out.writeByte(KEYWORD);
+			    writeString(out, ((Keyword) x).sym.toString());
+			    keywords.put((Keyword) x, keywords.size());
+			}
+		}
+	    else if(x instanceof Symbol)
+		{
+		    out.writeByte(SYMBOL);
+		    writeString(out, x.toString());
+		}
+	    else if(x instanceof Character)
+		{
+		    out.writeByte(CHAR);
+		    out.writeChar((Character) x);
+		}
+	    else if(x instanceof BigInt)
+		{
+		    byte[] bytes = ((BigInt) x).toBigInteger().toByteArray();
+		    out.writeByte(BIGINT);
+		    writeVarLong(out, bytes.length);
+		    out.write(bytes);
+		}
+	    else if(x instanceof AltFnInvocablePersistentVector)
+		writeThingy((AltFnInvocablePersistentVector) x);
+	    else if(x instanceof AltFnInvocableTuple)
+		writeTuple((AltFnInvocableTuple) x);
+	    else if(x instanceof AltFnInvocablePrimitiveVector)
+		writePrimitiveThingy((AltFnInvocablePrimitiveVector) x);
+	    else if(x instanceof AAltFnInvocableVector)
+		{
+		    // A subvec view is written as a vector of its elements.
+		    AAltFnInvocableVector v = (AAltFnInvocableVector) x;
+		    writeThingy(AltFnInvocablePersistentVector.createFrom(v.options, v).withMeta(RT.meta(v)));
+		}
+	    else if(x instanceof IRecord)
+		throw new IllegalArgumentException("Cannot encode record of " + x.getClass());
+	    else if(x instanceof Sorted)
+		{
+		    if(((Sorted) x).comparator() != RT.DEFAULT_COMPARATOR)
+			throw new IllegalArgumentException("Cannot encode sorted collection with a comparator other than the default: " + x.getClass());
+		    if(x instanceof IPersistentMap)
+			writeMap(SORTED_MAP, (IPersistentMap) x);
+		    else if(x instanceof IPersistentSet)
+			writeElements(SORTED_SET, ((IPersistentSet) x).count(), (Iterable) x);
+		    else
+			throw new IllegalArgumentException("Cannot encode value of " + x.getClass());
+		}
+	    else if(x instanceof IPersistentVector)
+		writeElements(VECTOR, ((IPersistentVector) x).count(), (Iterable) x);
+	    else if(x instanceof IPersistentMap)
+		writeMap(MAP, (IPersistentMap) x);
+	    else if(x instanceof IPersistentSet)
+		writeElements(SET, ((IPersistentSet) x).count(), (Iterable) x);
+	    else if(x instanceof ISeq || (x instanceof IPersistentList && !(x instanceof PersistentQueue))
+		    || (x instanceof Sequential && x instanceof Iterable && !(x instanceof IPersistentCollection)))
+		writeElements(LIST, RT.count(x), (Iterable) x);
+	    else if(SERIALIZABLE.contains(x.getClass()))
+		{
+		    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		    oos.writeObject(x);
+		    oos.close();
+		    out.writeByte(SERIALIZED);
+		    writeVarLong(out, bytes.size());
+		    out.write(bytes.toByteArray());
+		}
+	    else
+		throw new IllegalArgumentException("Cannot encode value of " + x.getClass());
+	    return this;
+	}
+
+	// A collection's metadata, if any, is written as a META prefix.
+
+	void writeMeta(Object x) throws IOException {
+	    IPersistentMap meta = RT.meta(x);
+	    if(meta != null)
+		{
+		    out.writeByte(META);
+		    write(meta);
+		}
+	}
+
+	void writeElements(byte tag, int n, Iterable<?> xs) throws IOException {
+	    writeMeta(xs);
+	    out.writeByte(tag);
+	    writeVarLong(out, n);
+	    for(Object x : xs)
+		write(x);
+	}
+
+	void writeMap(byte tag, IPersistentMap m) throws IOException {
+	    writeMeta(m);
+	    out.writeByte(tag);
+	    writeVarLong(out, m.count());
+	    for(Object o : (Iterable) m)
+		{
+		    Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+		    write(e.getKey());
+		    write(e.getValue());
+		}
+	}
+
+	// Every thingy starts with its options' kind and its metadata.
+
+	void writeHeader(byte tag, AAltFnInvocableVector v) throws IOException {
+	    Object kind = ((IPersistentMap) v.options.deref()).valAt(KIND_KEY);
+	    if(kind != null && !kinds)
+		throw new IllegalArgumentException("Cannot write a thingy of kind " + kind + " here; it would be read back without its kind");
+	    out.writeByte(tag);
+	    write(kind);
+	    write(RT.meta(v));
+	}
+
+	void writeThingy(AltFnInvocablePersistentVector v) throws IOException {
+	    writeHeader(THINGY, v);
+	    writeVarLong(out, v.cnt);
+	    for(int base = 0; base < v.cnt; base += 32)
+		{
+		    Object[] leaf = v.arrayFor(base);
+		    int n = Math.min(32, v.cnt - base);
+		    Integer id = (n == 32) ? leaves.get(leaf) : null;
+		    if(id != null)
+			{
+			    out.writeByte(LEAF_REF);
+			    writeVarLong(out, id);
+			    continue;
+			}
+		    out.writeByte(LEAF);
+		    for(int j = 0; j < n; ++j)
+			write(leaf[j]);
+		    if(n == 32)
+			leaves.put(leaf, leaves.size());
+		}
+	}
+
+	void writeTuple(AltFnInvocableTuple t) throws IOException {
+	    writeHeader(TUPLE, t);
+	    writeVarLong(out, t.items.length);
+	    for(Object x : t.items)
+		write(x);
+	}
+
+	void writePrimitiveThingy(AltFnInvocablePrimitiveVector v) throws IOException {
+	    writeHeader(PRIMITIVE_THINGY, v);
+	    writeString(out, v.am.type.getName());
+	    writeVarLong(out, v.cnt);
+	    for(int base = 0; base < v.cnt; base += 32)
+		{
+		    Object leaf = v.arrayFor(base);
+		    int n = Math.min(32, v.cnt - base);
+		    if(leaf instanceof long[])
+			for(int j = 0; j < n; ++j) writeVarLong(out, ((long[]) leaf)[j]);
+		    else if(leaf instanceof double[])
+			for(int j = 0; j < n; ++j) out.writeDouble(((double[]) leaf)[j]);
+		    else if(leaf instanceof int[])
+			for(int j = 0; j < n; ++j) writeVarLong(out, ((int[]) leaf)[j]);
+		    else
+			out.write((byte[]) leaf, 0, n);
+		}
+	}
+    }
+
+    public static final class Decoder {
+	final DataInput in;
+	final IFn optionsFor;
+	final ArrayList<Object[]> leaves = new ArrayList<Object[]>();
+	final ArrayList<Keyword> keywords = new ArrayList<Keyword>();
+
+	// `optionsFor` maps a thingy's kind (nil for the shared options) to the
+	// options atom it is attached to on read.
+
+	public Decoder(DataInput in, IFn optionsFor) throws IOException {
+	    this(in, optionsFor, true);
+	}
+
+	Decoder(DataInput in, IFn optionsFor, boolean magic) throws IOException {
+	    this.in = in;
+	    this.optionsFor = optionsFor;
+	    if(magic)
+		{
+		    int m = in.readInt();
+		    if(m != MAGIC)
+			throw new IOException("Not a thingy encoding: bad magic number " + Integer.toHexString(m));
+		}
+	}
+
+	public Object read() throws IOException {
+	    byte tag = in.readByte();
+	    switch(tag)
+		{
+		case NIL: return null;
+		case TRUE: return Boolean.TRUE;
+		case FALSE: return Boolean.FALSE;
+		case LONG: return readVarLong(in);
+		case INT: return (int) readVarLong(in);
+		case DOUBLE: return in.readDouble();
+		case STRING: return readString(in);
+		case KEYWORD:
+		    {
+			Keyword k = Keyword.intern(Symbol.intern(readString(in)));
+			keywords.add(k);
+			return k;
+		    }
+		case KEYWORD_REF:
+		    {
+			int id = readCount();
+			if(id >= keywords.size())
+			    throw new IOException("Bad keyword reference in thingy encoding: " + id);
+			return keywords.get(id);
+		    }
+		case SYMBOL: return Symbol.intern(readString(in));
+		case CHAR: return in.readChar();
+		case BIGINT:
+		    {
+			byte[] bytes = new byte[readCount()];
+			in.readFully(bytes);
+			return BigInt.fromBigInteger(new BigInteger(bytes));
+		    }
+		case VECTOR:
+		    return LazilyPersistentVector.createOwning(readElements(readCount()));
+		case LIST:
+		    return PersistentList.create(java.util.Arrays.asList(readElements(readCount())));
+		case MAP:
+		    return RT.map(readElements(2 * readCount()));
+		case SET:
+		    return PersistentHashSet.create(readElements(readCount()));
+		case SORTED_MAP:
+		    return PersistentTreeMap.create(RT.seq(readElements(2 * readCount())));
+		case SORTED_SET:
+		    return PersistentTreeSet.create(RT.seq(readElements(readCount())));
+		case META:
+		    {
+			Object meta = read();
+			Object x = read();
+			if(!(meta instanceof IPersistentMap) || !(x instanceof IObj))
+			    throw new IOException("Bad metadata in thingy encoding");
+			return ((IObj) x).withMeta((IPersistentMap) meta);
+		    }
+		case THINGY: return readThingy();
+		case TUPLE: return readTuple();
+		case PRIMITIVE_THINGY: return readPrimitiveThingy();
+		case SERIALIZED:
+		    {
+			byte[] bytes = new byte[readCount()];
+			in.readFully(bytes);
+			try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+			    ois.setObjectInputFilter(SERIAL_FILTER);
+			    return ois.readObject();
+			}
+			catch(ClassNotFoundException e){
+			    throw new IOException(e);
+			}
+		    }
+		default:
+		    throw new IOException("Unknown tag in thingy encoding: " + tag);
+		}
+	}
+
+	int readCount() throws IOException {
+	    long n = readVarLong(in);
+	    if(n < 0 || n > Integer.MAX_VALUE)
+		throw new IOException("Bad count in thingy encoding: " + n);
+	    return (int) n;
+	}
+
+	Object[] readElements(int n) throws IOException {
+	    Object[] xs = new Object[n];
+	    for(int i = 0; i < n; ++i)
+		xs[i] = read();
+	    return xs;
+	}
+
+	clojure.lang.Atom readOptions() throws IOException {
+	    Object kind = read();
+	    Object options = optionsFor.invoke(kind);
+	    if(!(options instanceof clojure.lang.Atom))
+		throw new IOException("No options for thingy kind: " + kind);
+	    return (clojure.lang.Atom) options;
+	}
+
+	AltFnInvocablePersistentVector readThingy() throws IOException {
+	    clojure.lang.Atom options = readOptions();
+	    IPersistentMap meta = (IPersistentMap) read();
+	    int cnt = readCount();
+	    AltFnInvocablePersistentVector.Builder b = new AltFnInvocablePersistentVector.Builder(options);
+	    for(int base = 0; base < cnt; base += 32)
+		{
+		    int n = Math.min(32, cnt - base);
+		    byte tag = in.readByte();
+		    if(tag == LEAF_REF)
+			{
+			    int id = readCount();
+			    if(n != 32 || id >= leaves.size())
+				throw new IOException("Bad leaf reference in thingy encoding: " + id);
+			    b.addLeaf(leaves.get(id));
+			}
+		    else if(tag == LEAF)
+			{
+			    Object[] leaf = readElements(n);
+			    if(n == 32)
+				{
+				    leaves.add(leaf);
+				    b.addLeaf(leaf);
+				}
+			    else
+				b.addAll(leaf, 0, n);
+			}
+		    else
+			throw new IOException("Unknown leaf tag in thingy encoding: " + tag);
+		}
+	    return b.build().withMeta(meta);
+	}
+
+	AltFnInvocableTuple readTuple() throws IOException {
+	    clojure.lang.Atom options = readOptions();
+	    IPersistentMap meta = (IPersistentMap) read();
+	    int n = readCount();
+	    return new AltFnInvocableTuple(meta, (n == 0) ? AltFnInvocableTuple.EMPTY_ARRAY : readElements(n), options);
+	}
+
+	AltFnInvocablePrimitiveVector readPrimitiveThingy() throws IOException {
+	    clojure.lang.Atom options = readOptions();
+	    IPersistentMap meta = (IPersistentMap) read();
+	    Keyword type = Keyword.intern(null, readString(in));
+	    int n = readCount();
+	    Object array;
+	    if(AltFnInvocablePrimitiveVector.LONG.type.equals(type))
+		{
+		    long[] a = new long[n];
+		    for(int i = 0; i < n; ++i) a[i] = readVarLong(in);
+		    array = a;
+		}
+	    else if(AltFnInvocablePrimitiveVector.DOUBLE.type.equals(type))
+		{
+		    double[] a = new double[n];
+		    for(int i = 0; i < n; ++i) a[i] = in.readDouble();
+		    array = a;
+		}
+	    else if(AltFnInvocablePrimitiveVector.INT.type.equals(type))
+		{
+		    int[] a = new int[n];
+		    for(int i = 0; i < n; ++i) a[i] = (int) readVarLong(in);
+		    array = a;
+		}
+	    else
+		{
+		    byte[] a = new byte[n];
+		    in.readFully(a);
+		    array = a;
+		}
+	    return AltFnInvocablePrimitiveVector.createFrom(options, type, array).withMeta(meta);
+	}
+    }
+
+    // Zig-zag, then seven bits per byte, low bits first, so that small
+    // magnitudes of either sign take one byte.
+
+    static void writeVarLong(DataOutput out, long x) throws IOException {
+	long v = (x << 1) ^ (x >> 63);
+	while((v & ~0x7FL) != 0)
+	    {
+		out.writeByte((int) ((v & 0x7F) | 0x80));
+		v >>>= 7;
+	    }
+	out.writeByte((int) v);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+	long v = 0;
+	for(int shift = 0; shift < 64; shift += 7)
+	    {
+		int b = in.readByte();
+		v |= (long) (b & 0x7F) << shift;
+		if((b & 0x80) == 0)
+		    return (v >>> 1) ^ -(v & 1);
+	    }
+	throw new IOException("Malformed variable-length integer in thingy encoding");
+    }
+
+    // UTF-8, length-prefixed, without DataOutput.writeUTF's 64 KB limit.
+
+    static void writeString(DataOutput out, String s) throws IOException {
+	byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+	writeVarLong(out, bytes.length);
+	out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+	long n = readVarLong(in);
+	if(n < 0 || n > Integer.MAX_VALUE)
+	    throw new IOException("Bad string length in thingy encoding: " + n);
+	byte[] bytes = new byte[(int) n];
+	in.readFully(bytes);
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Encodes `xs` in order with one Encoder, so that leaves shared between
+    // them are written once.
+
+    public static byte[] encode(Iterable<?> xs) throws IOException {
+	Bytes bytes = new Bytes();
+	DataOutputStream out = new DataOutputStream(bytes);
+	Encoder e = new Encoder(out);
+	int n = 0;
+	for(Object x : xs)
+	    n++;
+	writeVarLong(out, n);
+	for(Object x : xs)
+	    e.write(x);
+	out.flush();
+	return bytes.toByteArray();
+    }
+
+    // Decodes the values written by `encode`, as a vector.
+
+    public static IPersistentVector decode(byte[] bytes, IFn optionsFor) throws IOException {
+	DataInputStream in = new DataInputStream(new BytesInput(bytes));
+	Decoder d = new Decoder(in, optionsFor);
+	int n = d.readCount();
+	ITransientCollection ret = PersistentVector.EMPTY.asTransient();
+	for(int i = 0; i < n; ++i)
+	    ret = ret.conj(d.read());
+	return (IPersistentVector) ret.persistent();
+    }
+
+    // ByteArrayOutputStream and ByteArrayInputStream synchronize every
+    // single-byte write and read, which DataOutputStream and DataInputStream
+    // issue for each tag and varint byte. These overrides do not.
+
+    static final class Bytes extends ByteArrayOutputStream {
+	Bytes(){
+	    super(1024);
+	}
+
+	@Override
+	public void write(int b){
+	    if(count == buf.length)
+		buf = java.util.Arrays.copyOf(buf, 2 * buf.length);
+	    buf[count++] = (byte) b;
+	}
+    }
+
+    static final class BytesInput extends ByteArrayInputStream {
+	BytesInput(byte[] bytes){
+	    super(bytes);
+	}
+
+	@Override
+	public int read(){
+	    return (pos < count) ? (buf[pos++] & 0xff) : -1;
+	}
+    }
+}
@@ -0,0 +1,915 @@
+/* Java Flight Recorder events for thingy invocation, bulk construction,
+   transient-to-persistent conversion, printing, and options changes. */
+
+package com.sagevisuals;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import clojure.lang.*;
+
+// Each event type is enabled and configured on its own by name in a recording
+// (e.g., `com.sagevisuals.thingy.Invocation#enabled=true` in a `.jfc` file or
+// on `jfr configure`, or `Recording.enable("com.sagevisuals.thingy.Invocation")`).
+// All are disabled by default, so a recording with a stock profile, which
+// names none of them, records none of them; Invocation, in particular, may
+// fire millions of times a second.
+//
+// Every instrumented site first asks a new event whether it is enabled. Until
+// Flight Recorder is started, the event classes are left uninstrumented and
+// `isEnabled` is a constant `false`, which the JIT compiler folds away along
+// with the unused allocation; afterwards, it is a read of one flag of the
+// event type. Either way, a disabled event records nothing and allocates
+// nothing.
+
+public final class ThingyEvents {
+
+    private ThingyEvents(){
+    }
+
+    // An invocation, timed from the call to the invocation function until it
+    // returns or throws, as a wrapper that
+    // `AAltFnInvocableVector.invocationFn` returns only while the event is
+    // enabled.
+
+    @Name("com.sagevisuals.thingy.Invocation")
+    @Label("Thingy Invocation")
+    @Category("Thingy")
+    @Description("A call of a thingy, dispatched to its invocation function")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Invocation extends Event {
+	@Label("Arity")
+	@Description("Number of arguments, not counting the thingy itself")
+	public int arity;
+
+	@Label("Function")
+	public Class<?> function;
+
+	@Label("Count")
+	@Description("Number of elements of the thingy")
+	public int count;
+
+	@Label("Threw")
+	@Description("Whether the invocation function threw")
+	public boolean threw;
+    }
+
+    // Forwards each call to `fn` through the same fixed-arity `invoke` the
+    // call arrived on, so that the recorded duration is that of the call
+    // itself, and records the call even when `fn` throws.
+
+    static final class TimedFn extends AFn {
+
+	final IFn fn;
+
+	TimedFn(IFn fn){
+	    this.fn = fn;
+	}
+
+	// `n` is the number of arguments, the first of which is the thingy.
+
+	void end(Invocation e, int n, Object thingy){
+	    e.end();
+	    if(e.shouldCommit())
+		{
+		    e.arity = n - 1;
+		    e.function = fn.getClass();
+		    e.count = (thingy instanceof Counted) ? ((Counted) thingy).count() : 0;
+		    e.commit();
+		}
+	}
+
+	@Override
+	public Object invoke(){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke();
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 0, null);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 1, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 2, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 3, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 4, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 5, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 6, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 7, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 8, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 9, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 10, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 11, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 12, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 13, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12,
+			     Object arg13){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12,
+				 arg13);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 14, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12,
+			     Object arg13,
+			     Object arg14){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12,
+				 arg13,
+				 arg14);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 15, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12,
+			     Object arg13,
+			     Object arg14,
+			     Object arg15){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12,
+				 arg13,
+				 arg14,
+				 arg15);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 16, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12,
+			     Object arg13,
+			     Object arg14,
+			     Object arg15,
+			     Object arg16){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12,
+				 arg13,
+				 arg14,
+				 arg15,
+				 arg16);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 17, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12,
+			     Object arg13,
+			     Object arg14,
+			     Object arg15,
+			     Object arg16,
+			     Object arg17){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12,
+				 arg13,
+				 arg14,
+				 arg15,
+				 arg16,
+				 arg17);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 18, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12,
+			     Object arg13,
+			     Object arg14,
+			     Object arg15,
+			     Object arg16,
+			     Object arg17,
+			     Object arg18){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12,
+				 arg13,
+				 arg14,
+				 arg15,
+				 arg16,
+				 arg17,
+				 arg18);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 19, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12,
+			     Object arg13,
+			     Object arg14,
+			     Object arg15,
+			     Object arg16,
+			     Object arg17,
+			     Object arg18,
+			     Object arg19){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12,
+				 arg13,
+				 arg14,
+				 arg15,
+				 arg16,
+				 arg17,
+				 arg18,
+				 arg19);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 20, arg0);
+	    }
+	}
+
+	@Override
+	public Object invoke(Object arg0,
+			     Object arg1,
+			     Object arg2,
+			     Object arg3,
+			     Object arg4,
+			     Object arg5,
+			     Object arg6,
+			     Object arg7,
+			     Object arg8,
+			     Object arg9,
+			     Object arg10,
+			     Object arg11,
+			     Object arg12,
+			     Object arg13,
+			     Object arg14,
+			     Object arg15,
+			     Object arg16,
+			     Object arg17,
+			     Object arg18,
+			     Object arg19,
+			     Object... args){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.invoke(arg0,
+				 arg1,
+				 arg2,
+				 arg3,
+				 arg4,
+				 arg5,
+				 arg6,
+				 arg7,
+				 arg8,
+				 arg9,
+				 arg10,
+				 arg11,
+				 arg12,
+				 arg13,
+				 arg14,
+				 arg15,
+				 arg16,
+				 arg17,
+				 arg18,
+				 arg19,
+				 args);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, 20 + args.length, arg0);
+	    }
+	}
+
+	@Override
+	public Object applyTo(ISeq args){
+	    Invocation e = new Invocation();
+	    e.begin();
+	    try {
+		return fn.applyTo(args);
+	    } catch (Throwable t) {
+		e.threw = true;
+		throw t;
+	    } finally {
+		end(e, RT.count(args), RT.first(args));
+	    }
+	}
+    }
+
+    static IFn timed(IFn fn){
+	if(fn == null || !new Invocation().isEnabled())
+	    return fn;
+	return new TimedFn(fn);
+    }
+
+    // Construction of a thingy from a collection, timed from the first
+    // element added to the finished trie.
+
+    @Name("com.sagevisuals.thingy.Creation")
+    @Label("Thingy Creation")
+    @Category("Thingy")
+    @Description("Bulk construction of a thingy, e.g., by alt-fn-vec or make-thingy")
+    @Enabled(false)
+    public static final class Creation extends Event {
+	@Label("Count")
+	public int count;
+
+	// Returns a begun event, or null when the event is disabled.
+
+	static Creation start(){
+	    Creation e = new Creation();
+	    if(!e.isEnabled())
+		return null;
+	    e.begin();
+	    return e;
+	}
+    }
+
+    @Name("com.sagevisuals.thingy.Persistent")
+    @Label("Thingy Persistent")
+    @Category("Thingy")
+    @Description("Conversion of a transient thingy to a persistent one")
+    @Enabled(false)
+    public static final class Persistent extends Event {
+	@Label("Count")
+	public int count;
+    }
+
+    @Name("com.sagevisuals.thingy.ToString")
+    @Label("Thingy toString")
+    @Category("Thingy")
+    @Description("Rendering of a thingy as a string with its delimiters")
+    @Enabled(false)
+    public static final class ToString extends Event {
+	@Label("Count")
+	public int count;
+
+	@Label("Length")
+	@Description("Number of characters rendered")
+	public int length;
+    }
+
+    // A change of the shared options, timed including the re-linking of the
+    // invocation call site that the change triggers.
+
+    @Name("com.sagevisuals.thingy.OptionsChange")
+    @Label("Thingy Options Change")
+    @Category("Thingy")
+    @Description("A reset of the shared options, e.g., by reset!-options or defaultize!-options")
+    @Enabled(false)
+    public static final class OptionsChange extends Event {
+	@Label("Operation")
+	public String operation;
+
+	@Label("Function")
+	@Description("Class of the new invocation function")
+	public Class<?> function;
+    }
+
+    // Resets `options` to `m` as `reset!` does, recording the change as
+    // `operation` when the event is enabled.
+
+    static public Object resetOptions(clojure.lang.Atom options, Object m, String operation){
+	OptionsChange e = new OptionsChange();
+	if(!e.isEnabled())
+	    return options.reset(m);
+	e.begin();
+	Object ret = options.reset(m);
+	e.operation = operation;
+	Object fn = RT.get(m, AAltFnInvocableVector.FN_KEY);
+	e.function = (fn == null) ? null : fn.getClass();
+	e.commit();
+	return ret;
+    }
+}
@@ -0,0 +1,148 @@
+/* A hash index from the distinct elements of an immutable vector to the first
+   and last indices at which each occurs, for a thingy's `indexOf`,
+   `lastIndexOf`, and `contains`. */
+
+package com.sagevisuals;
+
+import java.util.Arrays;
+import clojure.lang.*;
+
+// Elements are hashed with clojure.lang.Util.hasheq and compared with
+// clojure.lang.Util.equiv, the same equality APersistentVector's linear scans
+// use, so an indexed lookup answers exactly as the scan would.
+//
+// The table is open-addressed with linear probing. `slots` holds one plus the
+// entry number of each occupied slot (0 when empty), and the entry arrays hold
+// each distinct element with its hash and its first and last index. The whole
+// index is five arrays, built once and never modified, so it may be read by
+// any number of threads without synchronization.
+
+public final class ValueIndex {
+
+    final int[] slots;
+    final Object[] keys;
+    final int[] hashes;
+    final int[] first;
+    final int[] last;
+
+    ValueIndex(int[] slots, Object[] keys, int[] hashes, int[] first, int[] last){
+	this.slots = slots;
+	this.keys = keys;
+	this.hashes = hashes;
+	this.first = first;
+	this.last = last;
+    }
+
+    // Builds the index of the `cnt` elements reached by `arrayFor`, one leaf
+    // (32 elements) at a time.
+
+    static ValueIndex build(AltFnInvocablePersistentVector v){
+	int cnt = v.cnt;
+	int[] slots = new int[tableSize(cnt)];
+	int mask = slots.length - 1;
+	Object[] keys = new Object[cnt];
+	int[] hashes = new int[cnt];
+	int[] first = new int[cnt];
+	int[] last = new int[cnt];
+	int n = 0;
+	for(int base = 0; base < cnt; base += 32)
+	    {
+		Object[] leaf = v.arrayFor(base);
+		for(int j = 0; j < leaf.length && base + j < cnt; ++j)
+		    {
+			Object x = leaf[j];
+			int h = Util.hasheq(x);
+			int s = spread(h) & mask;
+			while(true)
+			    {
+				int e = slots[s] - 1;
+				if(e < 0)
+				    {
+					slots[s] = n + 1;
+					keys[n] = x;
+					hashes[n] = h;
+					first[n] = base + j;
+					last[n] = base + j;
+					n++;
+					break;
+				    }
+				if(hashes[e] == h && Util.equiv(keys[e], x))
+				    {
+					last[e] = base + j;
+					break;
+				    }
+				s = (s + 1) & mask;
+			    }
+		    }
+	    }
+	if(n < cnt)
+	    {
+		keys = Arrays.copyOf(keys, n);
+		hashes = Arrays.copyOf(hashes, n);
+		first = Arrays.copyOf(first, n);
+		last = Arrays.copyOf(last, n);
+	    }
+	return new ValueIndex(slots, keys, hashes, first, last);
+    }
+
+    // The table has at least twice as many slots as there are elements, so
+    // probe sequences stay short. The largest power-of-two int[] is 2^30
+    // slots, so vectors of more than MAX_COUNT elements are not indexed.
+
+    static final int MAX_COUNT = 1 << 29;
+
+    static int tableSize(int cnt){
+	if(cnt > MAX_COUNT)
+	    throw new IllegalArgumentException("Too many elements to index: " + cnt);
+	return (cnt <= 1) ? 2 : Integer.highestOneBit(cnt - 1) << 2;
+    }
+
+    static int spread(int h){
+	return h ^ (h >>> 16);
+    }
+
+    int entry(Object x){
+	int h = Util.hasheq(x);
+	int mask = slots.length - 1;
+	for(int s = spread(h) & mask;; s = (s + 1) & mask)
+	    {
+		int e = slots[s] - 1;
+		if(e < 0)
+		    return -1;
+		if(hashes[e] == h && Util.equiv(keys[e], x))
+		    return e;
+	    }
+    }
+
+    public int indexOf(Object x){
+	int e = entry(x);
+	return (e < 0) ? -1 : first[e];
+    }
+
+    public int lastIndexOf(Object x){
+	int e = entry(x);
+	return (e < 0) ? -1 : last[e];
+    }
+
+    public boolean contains(Object x){
+	return entry(x) >= 0;
+    }
+
+    public int size(){
+	return keys.length;
+    }
+
+    // The retained size of the index, in bytes: this object (a 12-byte header
+    // and five references), the slot table, and the four entry arrays,
+    // assuming 16-byte array headers, 4-byte (compressed) references, and
+    // 8-byte alignment. The elements themselves are shared with the vector and
+    // are not counted.
+
+    public long bytes(){
+	return 32 + arrayBytes(slots.length, 4) + 4 * arrayBytes(keys.length, 4);
+    }
+
+    static long arrayBytes(int length, int width){
+	return (16L + (long) length * width + 7) & ~7L;
+    }
+}
@@ -28,9 +28,33 @@
       (a-thingy [:c :d] [:e :f]) ;; => (:a :b :c :d :e :f)
       ```
       Note: This evaluation concatenates a _thingy_ instance, `a-thingy`, with
-      two standard Clojure vectors."
-  (:require [thingy.dangerous-vector :refer [alt-fn-vec
-                                             reset!-options]]))
+      two standard Clojure vectors.
+
+      To produce an indexed _thingy_ instead of a lazy sequence, use
+      [[catvec]] in place of `concat`."
+  (:require [thingy.dangerous-vector :refer [alt-fn-arities
+                                             alt-fn-async-invoker
+                                             alt-fn-catvec
+                                             alt-fn-decode
+                                             alt-fn-diff
+                                             alt-fn-encode
+                                             alt-fn-index-footprint
+                                             alt-fn-indexed
+                                             alt-fn-invoke-all
+                                             alt-fn-invoke-async
+                                             alt-fn-invoke-chunks
+                                             alt-fn-mapped
+                                             alt-fn-memo-stats
+                                             alt-fn-memoize
+                                             alt-fn-subvec
+                                             alt-fn-tuple
+                                             alt-fn-vec
+                                             alt-fn-vec-of
+                                             make-options
+                                             reset!-options
+                                             alt-fn-write-mapped
+                                             with-alt-fn]])
+  (:import [com.sagevisuals AAltFnInvocableVector AltFnInvocablePersistentVector]))
 
 
 
@@ -38,9 +62,10 @@
   "Synchronously mutates the invocation function of all _thingy_ instances to
   function `f`.
 
-  `f` is a function with an arity of 0 to 9, inclusive. If `f` accepts an
-  argument, the thingy instance is that first argument, followed by up to eight
-  additional arguments.
+  `f` is a function, or an arity table from [[make-arity-fn]]. If `f` accepts
+  an argument, the thingy instance is that first argument, followed by the
+  arguments of the invocation. A _thingy_ may be invoked with any number of
+  arguments, including via `apply`.
 
   See also [[make-thingy]] and [[thingy.core]]."
   {:UUIDv4 #uuid "1764069c-76af-487e-ad7a-c43c03566804"}
@@ -50,9 +75,75 @@
                    :right-delimiter "]"}))
 
 
+(defn make-arity-fn
+  "Returns an invocation function that dispatches on argument count through an
+  array index, for [[assign-thingy-fn!]] and friends. The keys of map `m` are
+  argument counts from 0 to 20, including the _thingy_ itself, and the values
+  are functions. Optional key `:variadic` handles every other count, including
+  every count above 20.
+
+  Example:
+  ```clojure
+  (assign-thingy-fn! (make-arity-fn {1 count
+                                     2 (fn [t x] (conj t x))
+                                     :variadic (fn [t & xs] (into t xs))}))
+
+  ((make-thingy :a) :b) ;; => [:a :b]
+  (apply (make-thingy) (range 25)) ;; => [0 1 2 ... 24]
+  ```"
+  {:UUIDv4 #uuid "55cb4c45-ee44-46dd-bf7b-40e27c825951"}
+  [m]
+  (alt-fn-arities m))
+
+
+(defn make-memoized-fn
+  "Returns an invocation function that caches the results of pure function
+  `f`, keeping at most `max-size` of them, least recently used evicted first.
+  Install it with [[assign-thingy-fn!]]; assigning any other function later
+  discards the cache. See [[memo-stats]].
+
+  Example:
+  ```clojure
+  (assign-thingy-fn! (make-memoized-fn (fn [t x] (reduce + x t)) 1024))
+
+  ((make-thingy 1 2 3) 10) ;; => 16
+  (memo-stats) ;; => {:hits 0, :misses 1, :evictions 0, :size 1, :max-size 1024}
+  ```"
+  {:UUIDv4 #uuid "a1a2793f-e253-4973-a19d-acde7fd2dc7e"}
+  [f max-size]
+  (alt-fn-memoize f max-size))
+
+
+(defn memo-stats
+  "Returns the hit, miss, and eviction counters, and the size, of the cache of
+  the assigned invocation function, or of memoized function `f`. Returns `nil`
+  if the function was not made by [[make-memoized-fn]]."
+  {:UUIDv4 #uuid "e48a65a3-6906-4bc1-9e6c-dc2f400f38e6"}
+  ([] (alt-fn-memo-stats))
+  ([f] (alt-fn-memo-stats f)))
+
+
+(defmacro with-thingy-fn
+  "Evaluates `body` with function `f` as the invocation function of every
+  _thingy_ invoked on the current thread, as with `binding`. Unlike
+  [[assign-thingy-fn!]], this affects no other thread and takes no lock, so
+  concurrent request handlers may each install their own function.
+
+  Example:
+  ```clojure
+  (with-thingy-fn (fn [t x] (conj t x))
+    ((make-thingy :a) :b)) ;; => [:a :b]
+  ```"
+  {:UUIDv4 #uuid "4de0b0c7-9680-40a5-b52d-c1c7391afd19"}
+  [f & body]
+  `(with-alt-fn ~f ~@body))
+
+
 (defn make-thingy
   "Given elements `xs`, returns an instance of a _thingy_. Analogous to
   [`clojure.core/vector`](https://clojure.github.io/clojure/clojure.core-api.html#clojure.core/vector).
+  A _thingy_ of at most eight elements is stored compactly, in a single array,
+  and becomes a regular _thingy_ if it grows beyond that.
 
   Example:
   ```clojure
@@ -62,4 +153,359 @@
   See also [[assign-thingy-fn!]] and [[thingy.core]]."
   {:UUIDv4 #uuid "68f93654-8c38-4051-9dba-27826235cf97"}
   [& xs]
-  (alt-fn-vec xs))
\ No newline at end of file
+  (alt-fn-tuple xs))
+
+
+(defn make-thingy-of
+  "Given primitive type `t` (one of `:long`, `:double`, `:int`, or `:byte`) and
+  elements `xs`, returns an instance of a _thingy_ that stores its elements
+  unboxed. Analogous to
+  [`clojure.core/vector-of`](https://clojure.github.io/clojure/clojure.core-api.html#clojure.core/vector-of).
+
+  Example:
+  ```clojure
+  (make-thingy-of :long 1 2 3) ;; => [1 2 3]
+  ```
+
+  See also [[make-thingy]] and [[assign-thingy-fn!]]."
+  {:UUIDv4 #uuid "b27b5434-4482-4595-a554-3acada0860bd"}
+  [t & xs]
+  (alt-fn-vec-of t xs))
+
+
+(defn catvec
+  "Given _thingy_ instances and/or other collections `xs`, returns a _thingy_
+  containing all their elements, in order. Analogous to
+  [`clojure.core/concat`](https://clojure.github.io/clojure/clojure.core-api.html#clojure.core/concat),
+  but eager and indexed.
+
+  Example:
+  ```clojure
+  (catvec (make-thingy :a :b) [:c :d] [:e :f]) ;; => [:a :b :c :d :e :f]
+  ```
+
+  See also [[make-thingy]] and [[thingy.core]]."
+  {:UUIDv4 #uuid "7c369e56-62b7-421d-9cfa-01c7fb055421"}
+  [& xs]
+  (apply alt-fn-catvec xs))
+
+
+(defn subthingy
+  "Returns a _thingy_ of the elements of _thingy_ `t` from `start` (inclusive)
+  to `end` (exclusive, defaults to `(count t)`), in constant time, without
+  copying. Unlike `subvec`, the result is itself a _thingy_, invoking with
+  the assigned function and reducing over `t`'s leaf arrays.
+
+  Example:
+  ```clojure
+  (subthingy (make-thingy :a :b :c :d) 1 3) ;; => [:b :c]
+  ```"
+  {:UUIDv4 #uuid "8c4cbfeb-e44b-4315-9f90-494a741cf6d7"}
+  ([t start] (alt-fn-subvec t start))
+  ([t start end] (alt-fn-subvec t start end)))
+
+
+(defn thingy-diff
+  "Returns a vector of the ascending indices at which _thingy_ `t` and
+  sequential collection `other` differ, including indices present in only one
+  of them. Subtrees that `t` shares with `other` (e.g., when `other` was
+  derived from `t` by `assoc` or `conj`, or vice versa) are skipped without
+  visiting their elements; `=` and `compare` between such versions take the
+  same shortcut.
+
+  Example:
+  ```clojure
+  (def t (make-thingy :a :b :c))
+
+  (thingy-diff t (assoc t 1 :z)) ;; => [1]
+  ```"
+  {:UUIDv4 #uuid "886636e7-c905-4832-a250-3dddee1ff094"}
+  [t other]
+  (alt-fn-diff t other))
+
+
+(defn indexed-thingy
+  "Returns _thingy_ `t` opted in to a hash index for `.indexOf`,
+  `.lastIndexOf`, and `.contains`, built lazily after `after` (default 8)
+  linear lookups. Useful for large lookup tables that are built once and
+  probed many times. Derived _thingy_ instances do not inherit the index.
+
+  Example:
+  ```clojure
+  (def t (indexed-thingy (make-thingy :a :b :c :b) 0))
+
+  (.lastIndexOf t :b) ;; => 3
+  ```
+
+  See also [[index-footprint]]."
+  {:UUIDv4 #uuid "d92fd8c3-624e-46be-aa3f-5af7e1a193ff"}
+  ([t] (alt-fn-indexed t))
+  ([t after] (alt-fn-indexed t after)))
+
+
+(defn index-footprint
+  "Returns a map of `:indexed?`, `:built?`, `:distinct`, and `:bytes`
+  describing the lookup index of _thingy_ `t`. See [[indexed-thingy]].
+
+  Example:
+  ```clojure
+  (index-footprint (make-thingy :a :b))
+  ;; => {:indexed? false, :built? false, :distinct 0, :bytes 0}
+  ```"
+  {:UUIDv4 #uuid "5f912628-18dd-462e-a2e2-8e7a053021fb"}
+  [t]
+  (alt-fn-index-footprint t))
+
+
+(defn ->thingy
+  "Given a collection `v`, returns a _thingy_ containing its elements. When `v`
+  is a regular Clojure vector (e.g., `[1 2 3]`), the _thingy_ shares `v`'s
+  entire internal structure, so the conversion takes constant time and copies
+  nothing. Other collections are copied, as by [[make-thingy]].
+
+  Example:
+  ```clojure
+  (->thingy [:a :b]) ;; => [:a :b]
+  ```
+
+  See also [[->persistent-vector]]."
+  {:UUIDv4 #uuid "659dcf55-c73f-43bb-b69e-6bec90eaa5e0"}
+  [v]
+  (alt-fn-vec v))
+
+
+(defn ->persistent-vector
+  "Given a _thingy_ `t`, returns a regular Clojure vector with the same
+  elements, which is invoked with `nth` semantics as usual. The vector shares
+  `t`'s entire internal structure, so the conversion takes constant time and
+  copies nothing. Metadata is not carried over. Any other collection is
+  converted with `vec`.
+
+  Example:
+  ```clojure
+  (->persistent-vector (make-thingy :a :b)) ;; => [:a :b]
+  ```
+
+  See also [[->thingy]]."
+  {:UUIDv4 #uuid "74b6646d-ade8-4506-8cfd-ddec709ca15e"}
+  [t]
+  (if (instance? AltFnInvocablePersistentVector t)
+    (.toPersistentVector ^AltFnInvocablePersistentVector t)
+    (vec t)))
+
+
+;; Thingy kinds
+
+;; A kind is an options atom of its own. Thingies of a kind are invoked with,
+;; and printed with, the kind's function and delimiters. Assigning a kind's
+;; function leaves every other kind, and the thingies of `make-thingy`,
+;; untouched.
+
+(defonce ^{:no-doc true} kinds (atom {}))
+
+
+(defn make-thingy-kind
+  "Returns the _thingy_ kind named `kind-name` (e.g., a keyword), creating and
+  registering it if it does not yet exist. A new kind starts with invocation
+  function `f` (defaults to `nth`) and `[`/`]` delimiters; `m` may supply
+  `:left-delimiter` and `:right-delimiter` instead. An existing kind is
+  returned unchanged.
+
+  Example:
+  ```clojure
+  (def polynomial (make-thingy-kind :polynomial))
+  (def p (make-kind-thingy polynomial 1 2 3))
+
+  (assign-kind-fn! polynomial (fn [coefficients x] ...))
+  ```
+
+  A kind is not printed: `print-dup` writes a _thingy_ of a kind as a
+  `#thingy/vector` literal, which reads back as a _thingy_ of no kind. Use
+  [[encode-thingies]] and [[decode-thingies]] to keep it.
+
+  See also [[make-kind-thingy]], [[assign-kind-fn!]], and [[thingy-kind]]."
+  {:UUIDv4 #uuid "10a61311-9404-4b7a-8f56-d1a9a79dabe8"}
+  ([kind-name] (make-thingy-kind kind-name nth))
+  ([kind-name f] (make-thingy-kind kind-name f {}))
+  ([kind-name f m]
+   (or (get @kinds kind-name)
+       (get (swap! kinds
+                   (fn [ks]
+                     (if (contains? ks kind-name)
+                       ks
+                       (assoc ks kind-name (make-options (merge {:left-delimiter "["
+                                                                 :right-delimiter "]"}
+                                                                (select-keys m [:left-delimiter :right-delimiter])
+                                                                {:fn f
+                                                                 :kind kind-name}))))))
+            kind-name))))
+
+
+(defn make-kind-thingy
+  "Given _thingy_ kind `kind` (see [[make-thingy-kind]]) and elements `xs`,
+  returns a _thingy_ of that kind.
+
+  Example:
+  ```clojure
+  (make-kind-thingy (make-thingy-kind :polynomial) 1 2 3) ;; => [1 2 3]
+  ```"
+  {:UUIDv4 #uuid "775f70a3-cf9d-4f91-b31d-a044fffc5702"}
+  [kind & xs]
+  (alt-fn-tuple kind xs))
+
+
+(defn assign-kind-fn!
+  "Synchronously mutates the invocation function of all _thingy_ instances of
+  kind `kind` to function `f`. Instances of other kinds, and those made by
+  [[make-thingy]], are unaffected. See [[assign-thingy-fn!]] for the arguments
+  `f` receives."
+  {:UUIDv4 #uuid "a2ac81ce-2e67-4c12-8dc2-8d2b62f87dc2"}
+  [kind f]
+  (swap! kind assoc :fn f))
+
+
+(defn thingy-kind
+  "Returns the name of the kind of _thingy_ `t`, or `nil` if `t` was not made
+  by [[make-kind-thingy]] (or derived from such a _thingy_)."
+  {:UUIDv4 #uuid "b60a31aa-7d33-4009-869f-00b2c1aa9f21"}
+  [t]
+  (when (instance? AAltFnInvocableVector t)
+    (:kind @(.options ^AAltFnInvocableVector t))))
+
+
+(defn encode-thingies
+  "Returns a byte array holding the values of collection `xs` (_thingy_
+  instances or other Clojure values) in a compact binary form, for
+  [[decode-thingies]]. Versions of one _thingy_ encoded together share the
+  encoding of their common elements.
+
+  Example:
+  ```clojure
+  (decode-thingies (encode-thingies [(make-thingy 1 2)])) ;; => [[1 2]]
+  ```"
+  {:UUIDv4 #uuid "a32b808b-4780-4857-ba4b-95ea601d861c"}
+  [xs]
+  (alt-fn-encode xs))
+
+
+(defn decode-thingies
+  "Returns a vector of the values in byte array `bytes` from
+  [[encode-thingies]]. Each decoded _thingy_ is governed by the current
+  function and delimiters: those of [[assign-thingy-fn!]], or, for a _thingy_
+  of a kind, those of the kind of that name, which is registered with
+  [[make-thingy-kind]] if it does not yet exist.
+
+  Example:
+  ```clojure
+  (def p (make-kind-thingy (make-thingy-kind :polynomial) 1 2 3))
+
+  (thingy-kind (first (decode-thingies (encode-thingies [p])))) ;; => :polynomial
+  ```"
+  {:UUIDv4 #uuid "d396edc1-02e3-4675-aa16-9c49dc47cae8"}
+  [bytes]
+  (alt-fn-decode bytes (fn [kind]
+                         (if (nil? kind)
+                           AltFnInvocablePersistentVector/OPTIONS
+                           (make-thingy-kind kind)))))
+
+
+(defn write-mapped-thingy
+  "Writes the elements of collection `xs` to a new file at `path` for
+  [[mapped-thingy]], as type `t`: `:long`, `:double`, `:int`, or `:byte`
+  (stored unboxed), or `:value` (any values [[encode-thingies]] accepts,
+  except _thingies_ of a kind, which throw an `IllegalArgumentException`).
+  `xs` is streamed, and may be larger than the heap. Returns `path`.
+
+  Example:
+  ```clojure
+  (write-mapped-thingy \"/tmp/squares.thgm\" :long (map #(* % %) (range 1e8)))
+  ```"
+  {:UUIDv4 #uuid "f25b6d2a-b505-41a0-a5b1-34deff94ddf0"}
+  [path t xs]
+  (alt-fn-write-mapped path t xs))
+
+
+(defn mapped-thingy
+  "Returns a read-only _thingy_ of the elements in the file at `path`, written
+  by [[write-mapped-thingy]]. The file is memory-mapped, so elements stay off
+  the heap and are read only as they are reached. The _thingy_ is governed by
+  the current function and delimiters, as any other. Modifying it copies all
+  of its elements into an ordinary _thingy_, which is returned; each
+  modification of the mapped _thingy_ copies them again, so make further
+  changes to the returned one.
+
+  Example:
+  ```clojure
+  (def sq (mapped-thingy \"/tmp/squares.thgm\"))
+
+  (nth sq 12) ;; => 144
+  (conj sq 7) ;; => an in-heap thingy of 100000001 elements
+  ```"
+  {:UUIDv4 #uuid "99ad3d84-a22f-4c98-a512-ed6f5ed62215"}
+  [path]
+  (alt-fn-mapped AltFnInvocablePersistentVector/OPTIONS path))
+
+
+(defn invoke-all
+  "Invokes each `[thingy & args]` tuple in collection `tuples`, in parallel,
+  and returns a vector of the results in the same order, as if by
+  `(mapv (fn [[t & args]] (apply t args)) tuples)`.
+
+  The assigned invocation function (or a [[with-thingy-fn]] override) is
+  resolved once for the batch, and tuples run in chunks of `:chunk-size`
+  (default 512) on the fork-join pool, so per-call dispatch and scheduling
+  costs are spread over the batch. Pass `:executor :virtual` to run each chunk
+  on a virtual thread (Java 21+), any `ExecutorService` to use it instead, or
+  `:parallel? false` to run on the calling thread.
+
+  Example:
+  ```clojure
+  (assign-thingy-fn! (fn [t x] (conj t x)))
+
+  (invoke-all [[(make-thingy :a) :b] [(make-thingy) :c]]) ;; => [[:a :b] [:c]]
+  ```"
+  {:UUIDv4 #uuid "8352c773-26a1-41be-80ec-7082c5f8209c"}
+  ([tuples] (alt-fn-invoke-all tuples))
+  ([tuples opts] (alt-fn-invoke-all tuples opts)))
+
+
+(defn invoke-chunks
+  "Like [[invoke-all]], but returns a lazy sequence of result vectors, one per
+  chunk, in order, delivered as each chunk completes. Only `:ahead` (default
+  the processor count) chunks are run ahead of consumption."
+  {:UUIDv4 #uuid "428498e7-bf8d-4ee0-984c-acce2248fe60"}
+  ([tuples] (alt-fn-invoke-chunks tuples))
+  ([tuples opts] (alt-fn-invoke-chunks tuples opts)))
+
+
+(defn invoke-async
+  "Invokes _thingy_ `t` with `args` on another thread, and returns a
+  `java.util.concurrent.CompletableFuture` of the result, for invocation
+  functions that block (file reads, lookups, etc.). Runs on a virtual thread
+  where available (Java 21+). The function assigned when `invoke-async` is
+  called is the one used, even if another is assigned before the call runs.
+
+  Example:
+  ```clojure
+  (assign-thingy-fn! (fn [t path] (slurp path)))
+
+  @(invoke-async (make-thingy) \"README.md\")
+  ```"
+  {:UUIDv4 #uuid "8e483edb-1bbe-40f0-a1ef-5d8626c6d9ec"}
+  [t & args]
+  (apply alt-fn-invoke-async t args))
+
+
+(defn make-async-invoker
+  "Returns a function like [[invoke-async]] that runs at most
+  `:max-concurrency` invocations at once, on `:executor` if supplied.
+
+  Example:
+  ```clojure
+  (def invoke-limited (make-async-invoker {:max-concurrency 8}))
+
+  (mapv deref (mapv #(invoke-limited (make-thingy) %) paths))
+  ```"
+  {:UUIDv4 #uuid "3b6b2c2a-4d95-480d-898e-cbbf7df85fed"}
+  [opts]
+  (alt-fn-async-invoker opts))
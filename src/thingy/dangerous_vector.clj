@@ -32,10 +32,22 @@
   (dangerous-vector [97 98 99]) ;; (1 2 3 97 98 99)
 
   (.toString dangerous-vector) ;; \"⟨1 2 3⟩\"
-  ```")
+  ```"
+  (:require [clojure.core.reducers :as r]))
 
 
-(import com.sagevisuals.AltFnInvocablePersistentVector)
+(import com.sagevisuals.AAltFnInvocableVector
+        com.sagevisuals.AltFnInvocableMappedVector
+        com.sagevisuals.AltFnInvocablePersistentVector
+        com.sagevisuals.AltFnInvocablePrimitiveVector
+        com.sagevisuals.AltFnInvocableSubVector
+        com.sagevisuals.AltFnInvocableTuple
+        com.sagevisuals.ArityTable
+        com.sagevisuals.AsyncInvoker
+        com.sagevisuals.BatchInvoker
+        com.sagevisuals.MemoizingFn
+        com.sagevisuals.ThingyCodec
+        com.sagevisuals.ThingyEvents)
 
 
 (def ^{:no-doc true} default-options-docstring
@@ -48,38 +60,136 @@
 
 
 (defn options-validator
-  "Given hash-map `m`, returns `true` if the `:fn` value is a function, and if
-  the `:left-delimiter` and `:right-delimiter` values are strings."
+  "Given hash-map `m`, returns `true` if the `:fn` value is invocable (i.e.,
+  implements `clojure.lang.IFn`), and if the `:left-delimiter` and
+  `:right-delimiter` values are strings."
   {:UUIDv4 #uuid "678a3cbc-a1c0-4ef8-9a0e-58d3a2d49410"
    :no-doc true}
   [m]
   (and (contains? m :fn)
        (contains? m :left-delimiter)
        (contains? m :right-delimiter)
-       (fn? (:fn m))
+       (ifn? (:fn m))
        (string? (:left-delimiter m))
        (string? (:right-delimiter m))))
 
 
-(def ^{:no-doc true} options (atom default-options :validator options-validator))
+;; The atom is owned by `AltFnInvocablePersistentVector` so that the Java side
+;; may treat it as a constant and cache its `:fn` in a call site.
+
+(def ^{:no-doc true} options (doto AltFnInvocablePersistentVector/OPTIONS
+                               (reset! default-options)
+                               (set-validator! options-validator)))
+
+
+(defn make-options
+  "Returns a new options atom holding map `m`, validated by
+  [[options-validator]]. Vectors created with it (see [[alt-fn-vec]]) are
+  governed by it alone; changing it does not affect vectors governed by the
+  shared options, and vice versa."
+  {:UUIDv4 #uuid "febca630-1a58-4f01-97c4-e553e50b73bb"}
+  [m]
+  (atom m :validator options-validator))
 
 
 (defn reset!-options
   "Resets options to map `m`. `m` must associate the following key-vals:
 
-  * `:fn`              a function
+  * `:fn`              a function, or any other `clojure.lang.IFn`
   * `:left-delimiter`  a string
   * `:right-delimiter` a string"
   {:UUIDv4 #uuid "1f51852b-56cf-4387-b9d9-d0a91703ca81"}
   [m]
-  (reset! options m))
+  (ThingyEvents/resetOptions options m "reset!-options"))
 
 
 (defn defaultize!-options
   "Resets options map to default values. See [[default-options]]."
   {:UUIDv4 #uuid "88653ccc-ff14-46b2-932d-d9e2906dbeae"}
   []
-  (reset! options default-options))
+  (ThingyEvents/resetOptions options default-options "defaultize!-options"))
+
+
+(defmacro with-alt-fn
+  "Evaluates `body` with invocation function `f` in place of the options'
+  `:fn` for every `alt-fn-vector` invoked on the current thread, as with
+  `binding`. Other threads are unaffected, no lock is taken, and `f` is
+  conveyed to `future`s, `bound-fn`s, etc. started within `body`. A `nil`
+  `f` restores the options' function. Nested uses shadow outer ones.
+
+  Example:
+  ```clojure
+  (with-alt-fn (fn [v x] (* x (count v)))
+    ((alt-fn-vector 1 2 3) 10)) ;; => 30
+  ```"
+  {:UUIDv4 #uuid "cf53fa10-83a3-46f0-babb-1edb9a4e9772"}
+  [f & body]
+  `(do (AAltFnInvocableVector/pushFnBinding ~f)
+       (try
+         ~@body
+         (finally
+           (AAltFnInvocableVector/popFnBinding)))))
+
+
+(defn alt-fn-arities
+  "Returns an invocation function, suitable as the `:fn` option, that
+  dispatches on the number of arguments it receives through an array index.
+  The keys of map `m` are argument counts from 0 to 20, counting the vector
+  itself, and the values are functions; optional key `:variadic` supplies the
+  function for any other count. Any other key throws an
+  `IllegalArgumentException`. A count with no function and no `:variadic`
+  throws `clojure.lang.ArityException`.
+
+  Vectors may be invoked with any number of arguments, including via `apply`;
+  calls of more than twenty go to `:variadic`, through its `applyTo`.
+
+  Example:
+  ```clojure
+  (reset!-options (assoc default-options
+                         :fn (alt-fn-arities {2 nth
+                                              3 (fn [v i x] (assoc v i x))
+                                              :variadic (fn [v & xs] (count xs))})))
+
+  ((alt-fn-vector :a :b) 1) ;; => :b
+  ((alt-fn-vector :a :b) 1 :c) ;; => [:a :c]
+  ```"
+  {:UUIDv4 #uuid "726f84ac-0826-4edb-a2d2-5954fe2b9682"}
+  [m]
+  (ArityTable/create m))
+
+
+(defn alt-fn-memoize
+  "Returns an invocation function, suitable as the `:fn` option, that caches
+  the results of pure function `f`. At most `max-size` results are kept; the
+  least recently used are evicted first. Keys are the vector (hashed once, via
+  its cached `hasheq`) together with the other arguments, compared with `=`.
+  Safe for concurrent use; exceptions are not cached.
+
+  The cache lives in the returned function, so installing any other `:fn`
+  (e.g., with [[reset!-options]]) discards it. See [[alt-fn-memo-stats]].
+
+  Example:
+  ```clojure
+  (reset!-options (assoc default-options
+                         :fn (alt-fn-memoize (fn [v x] (reduce + x v)) 1024)))
+
+  ((alt-fn-vector 1 2 3) 10) ;; => 16, computed
+  ((alt-fn-vector 1 2 3) 10) ;; => 16, cached
+  ```"
+  {:UUIDv4 #uuid "042681e8-97fc-4293-9b9f-6386abf6d658"}
+  [f max-size]
+  (MemoizingFn. f max-size))
+
+
+(defn alt-fn-memo-stats
+  "Returns a map of the `:hits`, `:misses`, `:evictions`, current `:size`,
+  and `:max-size` of memoized invocation function `f` (see
+  [[alt-fn-memoize]]), or, with no argument, of the shared options' `:fn`.
+  Returns `nil` if the function is not memoized."
+  {:UUIDv4 #uuid "267ee20e-5f68-4a44-97fb-8d1fbdc009c2"}
+  ([] (alt-fn-memo-stats (:fn @options)))
+  ([f] (when (instance? MemoizingFn f)
+         (.stats ^MemoizingFn f))))
 
 
 (defn alt-fn-vector
@@ -93,26 +203,591 @@
   (alt-fn-vector 1 2 3) ;; => [1 2 3]
   ```"
   {:UUIDv4 #uuid "7208362c-3d06-41c6-97cf-3bc068c21632"}
-  ([]                   (. com.sagevisuals.AltFnInvocablePersistentVector (create options (list))))
-  ([a]                  (. com.sagevisuals.AltFnInvocablePersistentVector (create options (cons a (list)))))
-  ([a b]                (. com.sagevisuals.AltFnInvocablePersistentVector (create options (cons a (list b)))))
-  ([a b c]              (. com.sagevisuals.AltFnInvocablePersistentVector (create options (cons a (cons b (list c))))))
-  ([a b c d]            (. com.sagevisuals.AltFnInvocablePersistentVector (create options (cons a (cons b (cons c (list d)))))))
-  ([a b c d e]          (. com.sagevisuals.AltFnInvocablePersistentVector (create options (cons a (cons b (cons c (cons d (list e))))))))
-  ([a b c d e f]        (. com.sagevisuals.AltFnInvocablePersistentVector (create options (cons a (cons b (cons c (cons d (cons e (list f)))))))))
-  ([a b c d e f & args] (. com.sagevisuals.AltFnInvocablePersistentVector (create options (cons a (cons b (cons c (cons d (cons e (cons f args))))))))))
+  ([]                   (. com.sagevisuals.AltFnInvocablePersistentVector (create ^clojure.lang.Atom options ^clojure.lang.ISeq (list))))
+  ([a]                  (. com.sagevisuals.AltFnInvocablePersistentVector (create ^clojure.lang.Atom options ^clojure.lang.ISeq (cons a (list)))))
+  ([a b]                (. com.sagevisuals.AltFnInvocablePersistentVector (create ^clojure.lang.Atom options ^clojure.lang.ISeq (cons a (list b)))))
+  ([a b c]              (. com.sagevisuals.AltFnInvocablePersistentVector (create ^clojure.lang.Atom options ^clojure.lang.ISeq (cons a (cons b (list c))))))
+  ([a b c d]            (. com.sagevisuals.AltFnInvocablePersistentVector (create ^clojure.lang.Atom options ^clojure.lang.ISeq (cons a (cons b (cons c (list d)))))))
+  ([a b c d e]          (. com.sagevisuals.AltFnInvocablePersistentVector (create ^clojure.lang.Atom options ^clojure.lang.ISeq (cons a (cons b (cons c (cons d (list e))))))))
+  ([a b c d e f]        (. com.sagevisuals.AltFnInvocablePersistentVector (create ^clojure.lang.Atom options ^clojure.lang.ISeq (cons a (cons b (cons c (cons d (cons e (list f)))))))))
+  ([a b c d e f & args] (. com.sagevisuals.AltFnInvocablePersistentVector (create ^clojure.lang.Atom options ^clojure.lang.ISeq (cons a (cons b (cons c (cons d (cons e (cons f args))))))))))
 
 
 (defn alt-fn-vec
   "Creates a new vector containing the contents of collection `c`.
 
-  Analogous to [`clojure.core/vec`](https://clojure.github.io/clojure/clojure.core-api.html#clojure.core/vec)
-  , but does not currently handle Java arrays in the same manner.
+  Analogous to [`clojure.core/vec`](https://clojure.github.io/clojure/clojure.core-api.html#clojure.core/vec).
+  `c` may be any `seq`-able collection, including Java arrays of objects or
+  primitives. Unlike `vec`, the contents of an array are always copied. A
+  `clojure.lang.PersistentVector` (e.g., `[1 2 3]`) or another `alt-fn-vector`
+  is not copied at all; the returned vector shares its structure.
+
+  The vector is built directly, filling 32-element leaves without an
+  intermediate transient vector.
+
+  If options atom `opts` (see [[make-options]]) is supplied, the returned
+  vector is governed by it instead of the shared options.
 
   Example:
   ```clojure
   (alt-fn-vec #{1 2 3}) ;; => [1 3 2]
   ```"
   {:UUIDv4 #uuid "916f21ca-636b-4d0a-b72c-87b445e0145b"}
-  [c]
-  (apply alt-fn-vector c))
\ No newline at end of file
+  ([c] (alt-fn-vec options c))
+  ([opts c] (AltFnInvocablePersistentVector/createFrom opts c)))
+
+
+(defn alt-fn-tuple
+  "Like [[alt-fn-vec]], but when collection `c` has at most eight elements,
+  returns a compact `alt-fn-vector` that holds them in a single array of
+  exactly that length, without the trie's root, tail, and bookkeeping fields.
+
+  The result invokes, prints, compares, and hashes exactly as the
+  `alt-fn-vec` of `c` would. `conj`-ing past eight elements, or taking a
+  `transient`, promotes it to the trie form, sharing its array as the new
+  vector's tail. `assoc`, `pop`, and `conj` within eight elements return
+  compact vectors. Collections of more than eight elements are handled by
+  `alt-fn-vec`.
+
+  Example:
+  ```clojure
+  (alt-fn-tuple [:a :b]) ;; => [:a :b]
+  ```"
+  {:UUIDv4 #uuid "430f936b-6c76-4e5a-a42d-6c984d976eb7"}
+  ([c] (alt-fn-tuple options c))
+  ([opts c] (AltFnInvocableTuple/createFrom opts c)))
+
+
+(defn alt-fn-catvec
+  "Returns a new vector containing the elements of each of collections `colls`,
+  in order. The returned vector shares the options of the first collection if
+  that collection is an `alt-fn-vector`.
+
+  Full 32-element leaves are shared with the argument vectors whenever they
+  land on a leaf boundary of the result (e.g., when the preceding elements
+  total a multiple of 32); all other elements are copied leaf by leaf.
+
+  Example:
+  ```clojure
+  (alt-fn-catvec (alt-fn-vector 1 2) [3 4] (list 5)) ;; => [1 2 3 4 5]
+  ```"
+  {:UUIDv4 #uuid "90bc749a-186b-4d4c-b890-aed5a5dc0937"}
+  [& colls]
+  (let [c (first colls)
+        opts (if (instance? AAltFnInvocableVector c)
+               (.options ^AAltFnInvocableVector c)
+               options)]
+    (AltFnInvocablePersistentVector/catvec opts (to-array colls))))
+
+
+(defn alt-fn-slice
+  "Returns a new vector containing the elements of `alt-fn-vector` `v` from
+  `start` (inclusive) to `end` (exclusive, defaults to `(count v)`).
+
+  Unlike `subvec`, the result does not retain `v`, and is itself an
+  `alt-fn-vector`. Leaves are shared with `v` when `start` is a multiple of 32.
+
+  Example:
+  ```clojure
+  (alt-fn-slice (alt-fn-vector 1 2 3 4 5) 1 3) ;; => [2 3]
+  ```"
+  {:UUIDv4 #uuid "51b89a95-4d52-4eea-9aea-593a4b6cbe18"}
+  ([v start] (alt-fn-slice v start (count v)))
+  ([v start end] (if (instance? AltFnInvocableTuple v)
+                   (.slice ^AltFnInvocableTuple v start end)
+                   (.slice ^AltFnInvocablePersistentVector v start end))))
+
+
+(defn alt-fn-subvec
+  "Returns an `alt-fn-vector` of the elements of `alt-fn-vector` `v` from
+  `start` (inclusive) to `end` (exclusive, defaults to `(count v)`), in
+  constant time. Like `subvec`, the result shares, and retains, `v`.
+
+  Unlike `subvec`, whose result is a plain `clojure.lang.APersistentVector$SubVector`,
+  the result has the options of `v`, so it invokes and prints as `v` does. It
+  reduces (`reduce`, `reduce-kv`, `r/fold`), seqs, `drop`s, and splits over
+  the leaf arrays of `v`. Taking an `alt-fn-subvec` of an `alt-fn-subvec`
+  views the original vector directly. See [[alt-fn-slice]] for a copy that
+  does not retain `v`.
+
+  Example:
+  ```clojure
+  (alt-fn-subvec (alt-fn-vector 1 2 3 4 5) 1 3) ;; => [2 3]
+  ```"
+  {:UUIDv4 #uuid "a848ea5e-3cfd-427c-9d39-ad79e0371d24"}
+  ([v start] (alt-fn-subvec v start (count v)))
+  ([v start end] (AltFnInvocableSubVector/create v start end)))
+
+
+(defn alt-fn-diff
+  "Returns a vector of the ascending indices at which sequential collections
+  `v` and `other` hold elements that are not `=`. Indices present in only one
+  of them are included.
+
+  When either argument is an `alt-fn-vector` and the other is an
+  `alt-fn-vector` or a regular Clojure vector, the two tries are walked
+  together and every subtree, leaf, or tail they share is skipped without
+  visiting its elements, so diffing a vector against a version derived from it
+  by `assoc`, `conj`, or `pop` costs time proportional to the number of
+  copied leaves, not to the count. `=` and `compare` between such vectors
+  short-circuit the same way. Other collections are compared element by
+  element.
+
+  Example:
+  ```clojure
+  (def v1 (alt-fn-vec (range 100000)))
+  (def v2 (assoc v1 7 :x 99999 :y))
+
+  (alt-fn-diff v1 v2) ;; => [7 99999]
+  (alt-fn-diff [1 2] [1 3 4]) ;; => [1 2]
+  ```"
+  {:UUIDv4 #uuid "02352b70-35fc-4820-affa-8471f04cf161"}
+  [v other]
+  (cond
+    (instance? AltFnInvocablePersistentVector v)
+    (.diff ^AltFnInvocablePersistentVector v other)
+
+    (instance? AltFnInvocablePersistentVector other)
+    (.diff ^AltFnInvocablePersistentVector other v)
+
+    :else
+    (let [n (count v)
+          m (count other)]
+      (into (vec (keep-indexed (fn [i [x y]] (when (not= x y) i))
+                               (map vector v other)))
+            (range (min n m) (max n m))))))
+
+
+(defn alt-fn-indexed
+  "Returns `alt-fn-vector` `v`, with the same elements and metadata, opted in
+  to a hash index for `.indexOf`, `.lastIndexOf`, and `.contains`. The first
+  `after` (default 8) of those lookups scan linearly; the next one builds an
+  index of the distinct elements in one pass over `v`, after which each lookup
+  takes constant time. Elements are compared with `=`, as by the scan.
+
+  The index is attached to the returned instance only. Vectors derived from
+  it (e.g., by `conj` or `assoc`) have different elements, so they start with
+  no index and must opt in again; `with-meta` keeps the index. The index is
+  never modified once built, so it is safe to query from any thread. See
+  [[alt-fn-index-footprint]] for its size. A compact vector from
+  [[alt-fn-tuple]] is first converted to the trie form.
+
+  Example:
+  ```clojure
+  (def lookup (alt-fn-indexed (alt-fn-vec (range 100000 0 -1)) 0))
+
+  (.indexOf lookup 99999) ;; => 1
+  (.contains lookup 0) ;; => false
+  ```"
+  {:UUIDv4 #uuid "d2d26489-22d5-4fe3-86d8-b551645bfaa1"}
+  ([v] (alt-fn-indexed v 8))
+  ([v after] (let [v (if (instance? AltFnInvocableTuple v)
+                        (.promote ^AltFnInvocableTuple v)
+                        v)]
+               (.indexed ^AltFnInvocablePersistentVector v (int after)))))
+
+
+(defn alt-fn-index-footprint
+  "Returns a map describing the lookup index of `alt-fn-vector` `v`:
+
+  * `:indexed?` whether `v` has opted in with [[alt-fn-indexed]],
+  * `:built?` whether the index has been built,
+  * `:distinct` the number of distinct elements indexed, and
+  * `:bytes` the memory retained by the index, beyond the elements it shares
+    with `v`, assuming compressed references.
+
+  Example:
+  ```clojure
+  (def lookup (alt-fn-indexed (alt-fn-vec (range 1000)) 0))
+
+  (.contains lookup 7)
+  (alt-fn-index-footprint lookup)
+  ;; => {:indexed? true, :built? true, :distinct 1000, :bytes 24304}
+  ```"
+  {:UUIDv4 #uuid "37850008-6daf-4466-af21-4f174e27b383"}
+  [v]
+  (if (instance? AltFnInvocablePersistentVector v)
+    (.indexFootprint ^AltFnInvocablePersistentVector v)
+    {:indexed? false, :built? false, :distinct 0, :bytes 0}))
+
+
+(defn alt-fn-encode
+  "Returns a byte array encoding the values of collection `xs`, in order, in a
+  compact binary form. [[alt-fn-decode]] reads them back.
+
+  Elements are written leaf by leaf with a one-byte tag each; integers and
+  counts take as few bytes as their magnitude needs. `nil`, booleans, longs,
+  ints, doubles, strings, keywords, symbols, characters, `BigInt`s, and
+  vectors, lists, maps, sets, and default-ordered sorted maps and sets of
+  them (with their metadata) have tags of their own. Floats, shorts, bytes,
+  ratios, `BigInteger`s, `BigDecimal`s, `java.util.Date`s, `UUID`s, and `URI`s
+  are written with Java serialization. Any other value, including a record or
+  a sorted collection with a custom comparator, throws an
+  `IllegalArgumentException` rather than decoding as a different type. An
+  `alt-fn-vector`'s options are not written, only their `:kind` (if any), so
+  that the decoded vector is attached to the live options of that kind rather
+  than to a copy.
+
+  Full 32-element leaves shared among the values (e.g., successive versions
+  of one vector) are written once and referred to thereafter, and the decoded
+  values share them in turn.
+
+  For streams, use `com.sagevisuals.ThingyCodec$Encoder` and
+  `com.sagevisuals.ThingyCodec$Decoder` on a `java.io.DataOutput` and
+  `java.io.DataInput`.
+
+  Example:
+  ```clojure
+  (def v1 (alt-fn-vec (range 1000)))
+  (def v2 (conj v1 :x))
+
+  (count (alt-fn-encode [v1])) ;; => 2978
+  (count (alt-fn-encode [v1 v2])) ;; => 3073, v2's 31 full leaves are references
+  ```"
+  {:UUIDv4 #uuid "a39b4dab-d9ee-48aa-986a-e537d910bf61"}
+  [xs]
+  (ThingyCodec/encode (or xs [])))
+
+
+(defn alt-fn-decode
+  "Returns a vector of the values encoded in byte array `bytes` by
+  [[alt-fn-encode]]. Each `alt-fn-vector` is attached to the options atom that
+  `options-for` returns for its kind; the default maps `nil` (no kind) to the
+  shared options and throws for any other kind.
+
+  Java-serialized values are read through a filter that admits only the
+  classes [[alt-fn-encode]] serializes. Still, counts and lengths are trusted
+  as read, so do not decode bytes from an untrusted source.
+
+  Example:
+  ```clojure
+  (alt-fn-decode (alt-fn-encode [(alt-fn-vector 1 2) :a]))
+  ;; => [[1 2] :a]
+  ```"
+  {:UUIDv4 #uuid "4801fd79-50dc-42e0-a4c5-6a9ea7d60dda"}
+  ([bytes] (alt-fn-decode bytes (fn [kind] (when (nil? kind) options))))
+  ([bytes options-for] (ThingyCodec/decode bytes options-for)))
+
+
+(defn alt-fn-write-mapped
+  "Writes the elements of collection `xs` to a new file at `path` (a string or
+  `java.io.File`) for [[alt-fn-mapped]], as type `t`: one of `:long`,
+  `:double`, `:int`, or `:byte`, stored unboxed at a fixed width each, or
+  `:value`, any values [[alt-fn-encode]] accepts, each encoded on its own.
+  Elements are streamed to the file, so `xs` may be a lazy sequence larger
+  than the heap. Returns `path`.
+
+  [[alt-fn-mapped]] attaches every `alt-fn-vector` among `:value` elements to
+  one options atom, so an element that is, or holds, a vector with a `:kind`
+  throws an `IllegalArgumentException`, and the file is left incomplete.
+
+  Example:
+  ```clojure
+  (alt-fn-write-mapped \"/tmp/squares.thgm\" :long (map #(* % %) (range 1e8)))
+  ```"
+  {:UUIDv4 #uuid "6ccb9b71-6f7d-41fb-9d0d-ec9e7a8cd577"}
+  [path t xs]
+  (AltFnInvocableMappedVector/write (.toPath (java.io.File. (str path))) t xs)
+  path)
+
+
+(defn alt-fn-mapped
+  "Returns a read-only vector of the elements in the file at `path`, written by
+  [[alt-fn-write-mapped]], attached to options atom `opts` (default: the
+  shared options). The file is memory-mapped, not read: `nth`, `count`,
+  `reduce`, seqs, and spliterators read elements from the mapping as they are
+  reached, so the vector may be far larger than the heap, and opening it
+  costs the same at any size.
+
+  The vector is invoked like any [[alt-fn-vector]]. A `conj`, `assoc`, `pop`,
+  or `transient` copies its elements into an in-heap vector (an
+  [[alt-fn-vector-of]] of the same type, or an [[alt-fn-vec]] for `:value`),
+  which takes that change and is returned; the mapped vector is left
+  unchanged. The copy is not retained by the mapped vector, so each such
+  change to the mapped vector copies the whole file again: make further
+  changes to the returned vector.
+
+  `alt-fn-vector`s among `:value` elements are attached to `opts`;
+  [[alt-fn-write-mapped]] does not write vectors with a `:kind`.
+
+  Example:
+  ```clojure
+  (def sq (alt-fn-mapped \"/tmp/squares.thgm\"))
+
+  (count sq) ;; => 100000000
+  (nth sq 12) ;; => 144
+  (reduce + (take 4 sq)) ;; => 14
+  ```"
+  {:UUIDv4 #uuid "26acdd45-7529-4c04-8c93-28ea6fd2b80a"}
+  ([path] (alt-fn-mapped options path))
+  ([opts path] (AltFnInvocableMappedVector/open opts (.toPath (java.io.File. (str path))))))
+
+
+(defn alt-fn-vector-of
+  "Creates a new vector of primitive type `t` (one of `:long`, `:double`,
+  `:int`, or `:byte`) containing the args. Elements are stored unboxed in
+  primitive arrays, and are coerced to `t` as they are added. The returned
+  vector has the same modifiable function behavior as [[alt-fn-vector]].
+
+  Analogous to [`clojure.core/vector-of`](https://clojure.github.io/clojure/clojure.core-api.html#clojure.core/vector-of).
+
+  `reduce` with a primitive type-hinted function, e.g.,
+  `(fn [^long acc ^long x] (+ acc x))`, neither boxes the elements nor the
+  accumulator.
+
+  Example:
+  ```clojure
+  (alt-fn-vector-of :double 1 2 3) ;; => [1.0 2.0 3.0]
+  ```"
+  {:UUIDv4 #uuid "6c417866-4ab1-4a2b-8744-cc593bc8f995"}
+  ([t] (AltFnInvocablePrimitiveVector/create options t (object-array 0)))
+  ([t & xs] (AltFnInvocablePrimitiveVector/createFrom options t xs)))
+
+
+(defn alt-fn-vec-of
+  "Creates a new vector of primitive type `t` (one of `:long`, `:double`,
+  `:int`, or `:byte`) containing the contents of collection `c`. See
+  [[alt-fn-vector-of]].
+
+  Example:
+  ```clojure
+  (alt-fn-vec-of :long (range 3)) ;; => [0 1 2]
+  ```"
+  {:UUIDv4 #uuid "3e152629-2107-453e-8216-ded283184d00"}
+  [t c]
+  (AltFnInvocablePrimitiveVector/createFrom options t c))
+
+
+;; `r/fold` would otherwise reach a thingy through the IPersistentVector
+;; extension, which splits with `subvec` at arbitrary midpoints.
+
+(extend-protocol r/CollFold
+  AAltFnInvocableVector
+  (coll-fold [v n combinef reducef]
+    (.fold ^AAltFnInvocableVector v n combinef reducef)))
+
+
+(defn alt-fn-fold-kv
+  "Index-aware parallel fold over `alt-fn-vector` `v`. Like
+  [`clojure.core.reducers/fold`](https://clojure.github.io/clojure/clojure.core-api.html#clojure.core.reducers/fold),
+  but `reducef` is called with three arguments: the accumulator, the index,
+  and the element, as with `reduce-kv`.
+
+  `v` is split on leaf and subtree boundaries into pieces of at most `n`
+  (default 512) elements. Each piece is reduced with `reducef` from
+  `(combinef)` on the fork-join pool, and the results are joined with
+  `combinef`, which defaults to `reducef`.
+
+  Example:
+  ```clojure
+  (alt-fn-fold-kv + (fn [acc i x] (+ acc (* i x))) (alt-fn-vector 1 2 3)) ;; => 8
+  ```"
+  {:UUIDv4 #uuid "20c37e99-f774-4cf4-b0bf-6d1b6efd0dd2"}
+  ([reducef v] (alt-fn-fold-kv reducef reducef v))
+  ([combinef reducef v] (alt-fn-fold-kv 512 combinef reducef v))
+  ([n combinef reducef v] (.kvfold ^AAltFnInvocableVector v n combinef reducef)))
+
+
+(defn ^{:no-doc true} virtual-executor
+  []
+  (or (AsyncInvoker/virtualThreadExecutor)
+      (throw (UnsupportedOperationException. "Virtual threads require Java 21 or later"))))
+
+
+(defn ^{:no-doc true} batch-executor
+  [{:keys [executor parallel?] :or {parallel? true}}]
+  (cond
+    (not parallel?) nil
+    (= :virtual executor) (virtual-executor)
+    (nil? executor) (java.util.concurrent.ForkJoinPool/commonPool)
+    :else executor))
+
+
+(defn alt-fn-invoke-all
+  "Invokes every tuple in collection `tuples` and returns a vector of the
+  results, in order. Each tuple is a sequential collection `[v & args]`, where
+  `v` is an `alt-fn-vector` (or any other function) and `args` are its
+  arguments, so the result for `[v 1 2]` is `(v 1 2)`.
+
+  The invocation function is resolved once for the whole batch, on the calling
+  thread, including any [[with-alt-fn]] override. Tuples are invoked in chunks
+  of `:chunk-size` (default 512), each chunk a task on the fork-join pool.
+  Options:
+
+  * `:chunk-size` tuples per task
+  * `:executor`   a `java.util.concurrent.ExecutorService`, or `:virtual` for
+                  one virtual thread per chunk (Java 21+)
+  * `:parallel?`  `false` invokes every tuple on the calling thread
+
+  The first exception thrown by any invocation cancels the chunks not yet
+  started and is rethrown.
+
+  Example:
+  ```clojure
+  (alt-fn-invoke-all [[(alt-fn-vector :a :b) 1] [(alt-fn-vector :c) 0]]) ;; => [:b :c]
+  ```"
+  {:UUIDv4 #uuid "6ddd6f95-70cf-4ae1-ad2e-66caafb4d96b"}
+  ([tuples] (alt-fn-invoke-all tuples {}))
+  ([tuples {:keys [chunk-size] :or {chunk-size 512} :as opts}]
+   (BatchInvoker/invokeAll (to-array tuples) chunk-size (batch-executor opts))))
+
+
+(defn alt-fn-invoke-chunks
+  "Like [[alt-fn-invoke-all]], but returns a lazy sequence of result vectors,
+  one per chunk of `:chunk-size` tuples, in order, so that results may be
+  consumed while later chunks are still running. At most `:ahead` (default
+  the number of available processors) chunks are started beyond the one being
+  consumed; chunks past those are not started until the sequence is realized
+  further.
+
+  Example:
+  ```clojure
+  (alt-fn-invoke-chunks (map (fn [i] [(alt-fn-vector :a :b) (mod i 2)]) (range 5))
+                        {:chunk-size 2}) ;; => ([:a :b] [:a :b] [:a])
+  ```"
+  {:UUIDv4 #uuid "469f7cfe-7304-4120-baef-0063a6439d21"}
+  ([tuples] (alt-fn-invoke-chunks tuples {}))
+  ([tuples {:keys [chunk-size ahead] :or {chunk-size 512
+                                         ahead (.availableProcessors (Runtime/getRuntime))}
+            :as opts}]
+   (let [it (BatchInvoker/invokeChunks (to-array tuples) chunk-size (batch-executor opts) ahead)]
+     ((fn step []
+        (lazy-seq
+         (when (.hasNext it)
+           (cons (.next it) (step)))))))))
+
+
+(defn alt-fn-async-invoker
+  "Returns a function that invokes `alt-fn-vector`s asynchronously:
+  `(invoker v & args)` returns a `java.util.concurrent.CompletableFuture` of
+  `(v & args)`, which may be `deref`-ed. Options:
+
+  * `:max-concurrency` at most this many calls through the invoker run at once
+                       (default unlimited); the rest wait in the invoker's
+                       queue, holding no thread, until a running call finishes
+  * `:executor`        a `java.util.concurrent.Executor` to run calls on, or
+                       `:virtual`; by default one virtual thread per call on
+                       Java 21+, else the `send-off` pool, whose platform
+                       threads are not bounded (Java 17 has no virtual threads)
+
+  The invocation function is the one current when the call is submitted,
+  including any [[with-alt-fn]] override. `(future-cancel f)` interrupts a
+  running call, and prevents one that is waiting from starting.
+
+  Example:
+  ```clojure
+  (def invoker (alt-fn-async-invoker {:max-concurrency 16}))
+
+  @(invoker (alt-fn-vector :a :b) 1) ;; => :b
+  ```"
+  {:UUIDv4 #uuid "62c9f32b-c87e-43f7-ad0d-0c4a70ee5080"}
+  ([] (alt-fn-async-invoker {}))
+  ([{:keys [executor max-concurrency] :or {max-concurrency 0}}]
+   (AsyncInvoker. (if (= :virtual executor)
+                    (virtual-executor)
+                    executor)
+                  max-concurrency)))
+
+
+(defn alt-fn-invoke-async
+  "Returns a `java.util.concurrent.CompletableFuture` of `(v & args)`, run on
+  a virtual thread (Java 21+) or the `send-off` pool, with no concurrency
+  limit. See [[alt-fn-async-invoker]].
+
+  Example:
+  ```clojure
+  @(alt-fn-invoke-async (alt-fn-vector :a :b) 0) ;; => :a
+  ```"
+  {:UUIDv4 #uuid "fca3fe1f-74ee-444c-8a46-5c00c5c90531"}
+  [v & args]
+  (.invokeAsync AsyncInvoker/DEFAULT v (to-array args)))
+
+
+(defn alt-fn-read-vector
+  "Reader function for the tagged literal `#thingy/vector [...]`, returning an
+  [[alt-fn-vector]] of the elements of the vector `form`, governed by the
+  shared options. The vector the reader has just built is not copied: the
+  returned vector shares its structure, as [[alt-fn-vec]] does, so a literal
+  of any size is materialized only once.
+
+  The literal, which `print-dup` writes for every `alt-fn-vector`, holds only
+  the elements (and any metadata), not the options. So `print-dup` does not
+  round-trip options: a vector with a `:kind`, or with an options atom of its
+  own (see [[make-options]]), reads back as a vector governed by the shared
+  options, with no error or warning. To keep the kind, use [[alt-fn-encode]]
+  and [[alt-fn-decode]].
+
+  Registered in `data_readers.cljc`, so the tag is read by `read` and
+  `read-string` once this namespace is loaded. For `clojure.edn`, supply it as
+  `{:readers {'thingy/vector alt-fn-read-vector}}`.
+
+  Example:
+  ```clojure
+  (read-string \"#thingy/vector [1 2 3]\") ;; => [1 2 3]
+  ```"
+  {:UUIDv4 #uuid "add651ce-1973-4ac9-ad13-bafa543b08a0"}
+  [form]
+  (if (vector? form)
+    (AltFnInvocablePersistentVector/createFrom options form)
+    (throw (RuntimeException. "thingy/vector literal expects a vector as its representation."))))
+
+
+(defn alt-fn-read-vector-of
+  "Reader function for the tagged literal `#thingy/vector-of [t & xs]`,
+  returning an [[alt-fn-vector-of]] of primitive type `t` containing `xs`,
+  governed by the shared options. As with [[alt-fn-read-vector]], the options
+  the vector was printed with, including any `:kind`, are not restored.
+
+  Example:
+  ```clojure
+  (read-string \"#thingy/vector-of [:double 1 2]\") ;; => [1.0 2.0]
+  ```"
+  {:UUIDv4 #uuid "2f5357c4-1e5b-4580-b74f-e6b834f3b5a7"}
+  [form]
+  (if (and (vector? form) (keyword? (first form)))
+    (AltFnInvocablePrimitiveVector/createFrom options (first form) (subvec form 1))
+    (throw (RuntimeException. "thingy/vector-of literal expects a vector of a type keyword and elements as its representation."))))
+
+
+;; Every thingy is an APersistentVector, and so is also a java.util.List and a
+;; java.util.RandomAccess. Because clojure.core prefers IPersistentCollection
+;; over RandomAccess and Collection, the built-in methods for those types each
+;; dominate a method defined on a thingy class, and which one wins depends on
+;; the order of the method table. Dispatching on a tag derived from the base
+;; class, explicitly preferred over the built-in methods, is unambiguous.
+
+(derive AAltFnInvocableVector ::thingy)
+
+
+(defmethod print-method ::thingy
+  [v w]
+  (#'clojure.core/print-meta v w)
+  (.print ^AAltFnInvocableVector v ^java.io.Writer w))
+
+
+;; The literal carries the elements and metadata, not the options, so a
+;; thingy of a kind, or with an options atom of its own, reads back attached
+;; to the shared options (see alt-fn-read-vector).
+
+(defmethod print-dup ::thingy
+  [v ^java.io.Writer w]
+  (#'clojure.core/print-meta v w)
+  (if (instance? AltFnInvocablePrimitiveVector v)
+    (do (.write w "#thingy/vector-of [")
+        (print-dup (.type (.am ^AltFnInvocablePrimitiveVector v)) w)
+        ;; Elements are plain numbers, and `print-dup` of a `Byte` or an
+        ;; `Integer` would be a `#=` form.
+        (binding [*print-dup* false
+                  *print-length* nil
+                  *print-level* nil]
+          (.print ^AAltFnInvocableVector v w (if (seq v) " " "") "]")))
+    (do (.write w "#thingy/vector ")
+        (.print ^AAltFnInvocableVector v w "[" "]"))))
+
+
+(doseq [t [clojure.lang.IPersistentVector java.util.RandomAccess java.util.List Object]]
+  (prefer-method print-method ::thingy t))
+
+
+(doseq [t [clojure.lang.IPersistentCollection java.util.Collection]]
+  (prefer-method print-dup ::thingy t))
@@ -42,4 +42,167 @@
         (test-invoke-while-locked Z X Y) [:e :f :a :b :c :d]))))
 
 
+(deftest catvec-tests
+  (let [X (make-thingy :a :b)
+        Y (make-thingy :c :d)]
+    (are [x y] (= x y)
+      [:a :b :c :d :e :f] (catvec X Y [:e :f])
+      true (instance? com.sagevisuals.AltFnInvocablePersistentVector (catvec X Y)))))
+
+
+(deftest make-thingy-of-tests
+  (are [x y] (= x y)
+    [] (make-thingy-of :long)
+    [1 2 3] (make-thingy-of :long 1 2 3)
+    [1.0 2.0] (make-thingy-of :double 1 2)
+    true (instance? com.sagevisuals.AltFnInvocablePrimitiveVector (make-thingy-of :int 1)))
+  (is (= [1 2 3 4 5 6] (test-invoke-while-locked (make-thingy-of :byte 1 2) [3 4] (make-thingy-of :long 5 6)))))
+
+
+(deftest conversion-tests
+  (testing "round trips"
+    (are [n] (let [xs (vec (range n))
+                   t (->thingy xs)
+                   v (->persistent-vector t)]
+               (and (= xs t v)
+                    (instance? com.sagevisuals.AltFnInvocablePersistentVector t)
+                    (instance? clojure.lang.PersistentVector v)
+                    (= (conj xs :z) (conj t :z) (conj v :z))
+                    (= (pop (conj xs :z)) (pop (conj t :z)) (pop (conj v :z)))
+                    (= (persistent! (conj! (transient xs) :z))
+                       (persistent! (conj! (transient t) :z))
+                       (persistent! (conj! (transient v) :z)))))
+      0 1 32 33 1024 1025 40000))
+  (testing "structure is shared, not copied"
+    (let [xs (vec (range 100))
+          t (->thingy xs)
+          v (->persistent-vector t)]
+      (is (identical? (.root ^clojure.lang.PersistentVector xs) (.root ^com.sagevisuals.AltFnInvocablePersistentVector t)))
+      (is (identical? (.tail ^clojure.lang.PersistentVector xs) (.tail ^clojure.lang.PersistentVector v)))))
+  (testing "edits on either side leave the other intact"
+    (let [xs (vec (range 100))
+          t (->thingy xs)
+          t' (persistent! (reduce #(assoc! %1 %2 :t) (transient t) (range 100)))
+          v' (persistent! (reduce #(assoc! %1 %2 :v) (transient (->persistent-vector t)) (range 100)))]
+      (is (= (range 100) xs t))
+      (is (every? #{:t} t'))
+      (is (every? #{:v} v'))))
+  (testing "other collections"
+    (is (= [1 2] (->thingy (list 1 2))))
+    (is (= [1 2] (->persistent-vector (list 1 2))))))
+
+
+(deftest thingy-kind-tests
+  (let [adder (make-thingy-kind ::adder (fn [t x] (mapv #(+ x %) t)))
+        joiner (make-thingy-kind ::joiner (fn [t s] (apply str (interpose s t))) {:left-delimiter "<" :right-delimiter ">"})
+        A (make-kind-thingy adder 1 2 3)
+        J (make-kind-thingy joiner "a" "b")]
+    (testing "registry"
+      (is (identical? adder (make-thingy-kind ::adder)))
+      (is (= ::adder (thingy-kind A) (thingy-kind (conj A 4)) (thingy-kind (catvec A [4]))))
+      (is (nil? (thingy-kind (make-thingy 1))))
+      (is (nil? (thingy-kind [1]))))
+    (testing "each kind uses its own function and delimiters"
+      (is (= [11 12 13] (A 10)))
+      (is (= "a-b" (J "-")))
+      (is (= "<\"a\" \"b\">" (str J)))
+      (is (= "[1 2 3]" (str A))))
+    (testing "assigning one kind leaves the others alone"
+      (assign-kind-fn! adder (fn [t x] (mapv #(* x %) t)))
+      (is (= [10 20 30] (A 10)))
+      (is (= "a-b" (J "-")))
+      (is (= [:a :b :c :d :e :f] (test-invoke-while-locked (make-thingy :a :b) [:c :d] [:e :f])))
+      (is (= [10 20 30] (A 10))))))
+
+
+(deftest with-thingy-fn-tests
+  (is (= [:a :b] (with-thingy-fn (fn [t x] (conj t x)) ((make-thingy :a) :b)))))
+
+
+(deftest make-arity-fn-tests
+  (with-thingy-fn (make-arity-fn {1 count
+                                  2 (fn [t x] (conj t x))
+                                  :variadic (fn [t & xs] (into t xs))})
+    (is (= 1 ((make-thingy :a))))
+    (is (= [:a :b] ((make-thingy :a) :b)))
+    (is (= (vec (range 25)) (apply (make-thingy) (range 25))))))
+
+
+(deftest make-memoized-fn-tests
+  (let [m (make-memoized-fn (fn [t x] (reduce + x t)) 1024)]
+    (with-thingy-fn m
+      (is (= 16 ((make-thingy 1 2 3) 10)))
+      (is (= 16 ((make-thingy 1 2 3) 10))))
+    (is (= {:hits 1 :misses 1 :evictions 0 :size 1 :max-size 1024}
+           (memo-stats m)))
+    (is (nil? (memo-stats (fn [t] t))))))
+
+
+(deftest invoke-all-tests
+  (with-thingy-fn (fn [t x] (conj t x))
+    (is (= [[:a :b] [:c]] (invoke-all [[(make-thingy :a) :b] [(make-thingy) :c]])))
+    (is (= [[[0] [1]] [[2]]]
+           (invoke-chunks (map (fn [i] [(make-thingy) i]) (range 3)) {:chunk-size 2})))))
+
+
+(deftest invoke-async-tests
+  (with-thingy-fn (fn [t x] (conj t x))
+    (is (= [:a :b] @(invoke-async (make-thingy :a) :b)))
+    (is (= [:c] @((make-async-invoker {:max-concurrency 2}) (make-thingy) :c)))))
+
+
+(deftest subthingy-tests
+  (let [t (subthingy (make-thingy :a :b :c :d) 1 3)]
+    (is (= [:b :c] t))
+    (is (= [:c :d] (subthingy (make-thingy :a :b :c :d) 2)))
+    (with-thingy-fn (fn [t x] (conj t x))
+      (is (= [:b :c :e] (t :e))))))
+
+
+(deftest thingy-diff-tests
+  (let [t (make-thingy :a :b :c)]
+    (is (= [1] (thingy-diff t (assoc t 1 :z))))
+    (is (= [3] (thingy-diff t (conj t :d))))
+    (is (= [] (thingy-diff t [:a :b :c])))))
+
+
+(deftest indexed-thingy-tests
+  (let [t (indexed-thingy (make-thingy :a :b :c :b) 0)]
+    (is (= 3 (.lastIndexOf ^java.util.List t :b)))
+    (is (= 1 (.indexOf ^java.util.List t :b)))
+    (is (:built? (index-footprint t)))
+    (is (not (:indexed? (index-footprint (make-thingy :a :b)))))))
+
+
+(deftest compact-thingy-tests
+  (is (instance? com.sagevisuals.AltFnInvocableTuple (make-thingy :a :b)))
+  (is (instance? com.sagevisuals.AltFnInvocablePersistentVector (apply make-thingy (range 9))))
+  (is (instance? com.sagevisuals.AltFnInvocablePersistentVector (conj (apply make-thingy (range 8)) 8)))
+  (is (= [:a :b :c] (with-thingy-fn (fn [t x] (conj t x)) ((make-thingy :a :b) :c))))
+  (is (= [1 2 3] (->persistent-vector (make-thingy 1 2 3))))
+  (is (= [0] (thingy-diff (make-thingy 1 2) [9 2])))
+  (is (= 1 (.indexOf ^java.util.List (indexed-thingy (make-thingy :a :b) 0) :b)))
+  (is (not (:indexed? (index-footprint (make-thingy :a))))))
+
+
+(deftest codec-tests
+  (let [p (make-kind-thingy (make-thingy-kind ::codec-kind) 1 2 3)
+        [t q] (decode-thingies (encode-thingies [(make-thingy :a) p]))]
+    (is (= [:a] t))
+    (is (= [1 2 3] q))
+    (is (= ::codec-kind (thingy-kind q)))
+    (is (nil? (thingy-kind t)))))
+
+
+(deftest mapped-thingy-tests
+  (let [f (doto (java.io.File/createTempFile "thingy" ".thgm") (.deleteOnExit))
+        t (mapped-thingy (write-mapped-thingy f :long (range 10)))]
+    (is (= (range 10) t))
+    (is (= [10 3] (with-thingy-fn (fn [t x] [(count t) x]) (t 3))))
+    (is (= (range 11) (conj t 10)))
+    (is (thrown? IllegalArgumentException
+                 (write-mapped-thingy (doto (java.io.File/createTempFile "thingy" ".thgm") (.deleteOnExit))
+                                      :value [1 (make-kind-thingy (make-thingy-kind ::mapped-kind) 1 2)])))))
+
+
 #_(run-tests)
\ No newline at end of file
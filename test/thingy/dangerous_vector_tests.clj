@@ -12,9 +12,13 @@
   When each test namespace is evaluated individually, all tests run in sequence,
   isolated from one another."
   (:require
+   [clojure.core.reducers :as r]
+   [clojure.edn :as edn]
+   [clojure.string :as str]
    [clojure.test :refer [are is deftest run-tests testing]]
    [thingy.dangerous-vector :refer :all])
   (:import
+   [com.sagevisuals AAltFnInvocableVector AltFnInvocableMappedVector AltFnInvocablePersistentVector AltFnInvocableSubVector AltFnInvocableTuple]
    [java.util Collection Spliterator]
    [java.util.function Consumer]
    [java.util.stream Collectors]))
@@ -50,7 +54,7 @@
         v (into (alt-fn-vector) r)
         reversed (.rseq v)]
     (testing "returns the right impl"
-      (is (= clojure.lang.APersistentVector$RSeq (class reversed))))
+      (is (= com.sagevisuals.AAltFnInvocableVector$RSeq (class reversed))))
     (testing "RSeq methods"
       (is (= [5 4 3 2 1 0] reversed))
       (is (= 5 (.index reversed)))
@@ -395,10 +399,9 @@
   (is (= [\a \b \c \d] (alt-fn-vec "abcd")))
   (is (= [0 1 2 3] (alt-fn-vec (object-array (range 4)))))
   (is (= [1 2 3 4] (alt-fn-vec (eduction (map inc) (range 4)))))
-  ;; TODO: Need to investigate the following test.
-  #_(is (= [0 1 2 3] (alt-fn-vec (reify clojure.lang.IReduceInit
-                                   (reduce [_ f start]
-                                     (reduce f start (range 4))))))))
+  (is (= [0 1 2 3] (alt-fn-vec (reify clojure.lang.IReduceInit
+                                 (reduce [_ f start]
+                                   (reduce f start (range 4))))))))
 
 
 (deftest test-reduce-kv-vectors
@@ -555,6 +558,8 @@
   (testing "content properties"
     (are [x y] (= x y)
       false (options-validator {:fn "x" :right-delimiter "foo" :left-delimiter "bar"})
+      true  (options-validator {:fn #'inc :right-delimiter "foo" :left-delimiter "bar"})
+      true  (options-validator {:fn :kw :right-delimiter "foo" :left-delimiter "bar"})
       false (options-validator {:fn inc :right-delimiter \f    :left-delimiter "bar"})
       false (options-validator {:fn inc :right-delimiter "foo" :left-delimiter :bar })
       true  (options-validator {:fn inc :right-delimiter "foo" :left-delimiter "bar"}))))
@@ -668,7 +673,41 @@
       [[:a 1] [:b 2] [:c 3]] (alt-fn-vec {:a 1 :b 2 :c 3})))
   (testing "self"
     (are [x y] (= x y)
-      (alt-fn-vec [1 2 3]) (alt-fn-vector 1 2 3))))
+      (alt-fn-vec [1 2 3]) (alt-fn-vector 1 2 3)))
+  (testing "arrays"
+    (are [x y] (= x y)
+      [] (alt-fn-vec (object-array 0))
+      [1 2 3] (alt-fn-vec (object-array [1 2 3]))
+      [1 2 3] (alt-fn-vec (long-array [1 2 3]))
+      [1 2 3] (alt-fn-vec (int-array [1 2 3]))
+      [1.0 2.0] (alt-fn-vec (double-array [1 2]))
+      [1 2] (alt-fn-vec (byte-array [1 2]))
+      [\a \b] (alt-fn-vec (char-array "ab"))
+      [true false] (alt-fn-vec (boolean-array [true false]))))
+  (testing "copies arrays"
+    (let [a (object-array [1 2 3])
+          v (alt-fn-vec a)]
+      (aset a 0 99)
+      (is (= [1 2 3] v))))
+  (testing "bulk construction, every source type, many sizes"
+    (are [n] (let [expected (vec (range n))]
+               (every? #(and (= expected %)
+                             (= (conj expected :x) (conj % :x))
+                             (= (pop (conj expected :x)) (pop (conj % :x)))
+                             (instance? com.sagevisuals.AltFnInvocablePersistentVector %))
+                       [(alt-fn-vec (range n))
+                        (alt-fn-vec (object-array (range n)))
+                        (alt-fn-vec (long-array (range n)))
+                        (alt-fn-vec (java.util.ArrayList. ^java.util.Collection (range n)))
+                        (alt-fn-vec (doall (map identity (range n))))
+                        (alt-fn-vec expected)
+                        (alt-fn-vec (alt-fn-vec expected))
+                        (alt-fn-vec (eduction (map identity) (range n)))]))
+      0 1 31 32 33 64 1024 1025 1056 1057 32768 32800 33824 (+ 32 (* 31 1024)) (+ 64 (* 32 32 31))))
+  (testing "structure matches incremental construction"
+    (are [n] (= (.shift ^com.sagevisuals.AltFnInvocablePersistentVector (alt-fn-vec (range n)))
+                (.shift ^com.sagevisuals.AltFnInvocablePersistentVector (into (alt-fn-vector) (range n))))
+      0 32 33 1056 1057 33824 33825)))
 
 
 (defn test-invoke-while-locked
@@ -697,6 +736,15 @@
       [1 2 3 4 5 6] (test-invoke-while-locked (alt-fn-vector 1 2 3) {:fn #(concat %1 %2)
                                                                      :left-delimiter "==="
                                                                      :right-delimiter "==="} [4 5 6])))
+  (testing "non-fn invocables"
+    (are [x y] (= x y)
+      5 (test-invoke-while-locked (alt-fn-vector 1 2 3 4 5) {:fn #'count
+                                                             :left-delimiter "~~~"
+                                                             :right-delimiter "~~~"})
+
+      :found (test-invoke-while-locked (alt-fn-vector 1 2 3) {:fn {(alt-fn-vector 1 2 3) :found}
+                                                              :left-delimiter "~~~"
+                                                              :right-delimiter "~~~"})))
   (testing "arities & argument order"
     (let [v (alt-fn-vector)
           f (fn [_ & args] args)
@@ -723,5 +771,1031 @@
         (range 8)))))
 
 
+(deftest invocation-dispatch
+  (testing "global options atom is owned by AltFnInvocablePersistentVector"
+    (is (identical? options com.sagevisuals.AltFnInvocablePersistentVector/OPTIONS)))
+  (testing "call site follows changes to the global options"
+    (let [v (alt-fn-vector 1 2 3)]
+      (are [x y] (= x y)
+        :first  (test-invoke-while-locked v {:fn (fn [_] :first) :left-delimiter "" :right-delimiter ""})
+        :second (test-invoke-while-locked v {:fn (fn [_] :second) :left-delimiter "" :right-delimiter ""})
+        2       (test-invoke-while-locked v default-options 1))))
+  (testing "instances holding some other options atom"
+    (let [private-options (atom {:fn (fn [v x] [:private (count v) x])
+                                 :left-delimiter ""
+                                 :right-delimiter ""})
+          v (com.sagevisuals.AltFnInvocablePersistentVector/create private-options (list 1 2 3))]
+      (is (= [:private 3 :x] (v :x)))
+      (swap! private-options assoc :fn (fn [_ x] x))
+      (is (= :y (v :y))))))
+
+
+(deftest alt-fn-vector-printing
+  (test-while-locked-to-default-options
+   (let [v (alt-fn-vec (range 100000))]
+     (testing "print-method uses the delimiters"
+       (are [x y] (= x y)
+         "⟨⟩" (pr-str (alt-fn-vector))
+         "⟨1 \"a\" :b⟩" (pr-str (alt-fn-vector 1 "a" :b))
+         "⟨1 a :b⟩" (print-str (alt-fn-vector 1 "a" :b))
+         "⟨1 ⟨2 3⟩ [4]⟩" (pr-str (alt-fn-vector 1 (alt-fn-vector 2 3) [4]))))
+     (testing "*print-length*"
+       (are [x y] (= x (binding [*print-length* y] (pr-str v)))
+         "⟨...⟩" 0
+         "⟨0 ...⟩" 1
+         "⟨0 1 2 ...⟩" 3)
+       (is (= "⟨0 1 2⟩" (binding [*print-length* 3] (pr-str (alt-fn-vector 0 1 2)))))
+       (is (= "⟨0 1 ...⟩" (binding [*print-length* 2] (.toString ^Object v)))))
+     (testing "*print-level*"
+       (are [x y] (= x (binding [*print-level* y] (pr-str (alt-fn-vector 1 (alt-fn-vector 2 (alt-fn-vector 3))))))
+         "#" 0
+         "⟨1 #⟩" 1
+         "⟨1 ⟨2 #⟩⟩" 2))
+     (testing "metadata"
+       (is (= "^{:a 1} ⟨1⟩" (binding [*print-meta* true] (pr-str (with-meta (alt-fn-vector 1) {:a 1}))))))
+     (testing "print-dup round trip"
+       (let [w (alt-fn-vector 1 :a "b" (alt-fn-vector 2))
+             s (binding [*print-dup* true] (pr-str w))
+             r (binding [*read-eval* true] (read-string s))]
+         (is (= w r))
+         (is (instance? com.sagevisuals.AltFnInvocablePersistentVector r))
+         (is (instance? com.sagevisuals.AltFnInvocablePersistentVector (peek r))))))))
+
+
+(deftest alt-fn-catvec-tests
+  (testing "contents"
+    (are [x y] (= x y)
+      [] (alt-fn-catvec)
+      [] (alt-fn-catvec [] nil (list))
+      [1 2 3 4 5] (alt-fn-catvec (alt-fn-vector 1 2) [3 4] (list 5))
+      [1 2 3] (alt-fn-catvec (object-array [1]) (long-array [2]) (eduction (map inc) [2]))))
+  (testing "many sizes and alignments"
+    (are [a b] (let [x (alt-fn-catvec (alt-fn-vec (range a)) (vec (range a (+ a b))))]
+                 (and (= (range (+ a b)) x)
+                      (= (conj (vec (range (+ a b))) :z) (conj x :z))
+                      (instance? com.sagevisuals.AltFnInvocablePersistentVector x)))
+      0 0
+      0 33
+      32 32
+      32 1000
+      31 1000
+      1024 1024
+      1000 1057
+      33 33824))
+  (testing "full leaves are shared at leaf boundaries"
+    (let [v (alt-fn-vec (range 64))
+          x (alt-fn-catvec (alt-fn-vec (range 32)) v)]
+      (is (identical? (.arrayFor ^com.sagevisuals.AltFnInvocablePersistentVector v 0)
+                      (.arrayFor ^com.sagevisuals.AltFnInvocablePersistentVector x 32)))))
+  (testing "options of the first thingy"
+    (let [private-options (atom {:fn (fn [_] :private) :left-delimiter "" :right-delimiter ""})
+          v (com.sagevisuals.AltFnInvocablePersistentVector/create private-options (list 1 2))]
+      (is (= :private ((alt-fn-catvec v [3]))))
+      (is (identical? options (.options ^com.sagevisuals.AltFnInvocablePersistentVector (alt-fn-catvec [1] v)))))))
+
+
+(deftest alt-fn-slice-tests
+  (let [v (with-meta (alt-fn-vec (range 2000)) {:a 1})]
+    (are [start end] (let [s (alt-fn-slice v start end)]
+                       (and (= (subvec (vec (range 2000)) start end) s)
+                            (= {:a 1} (meta s))
+                            (instance? com.sagevisuals.AltFnInvocablePersistentVector s)))
+      0 0
+      0 2000
+      1 2000
+      32 1056
+      33 1057
+      1999 2000)
+    (is (= (range 1990 2000) (alt-fn-slice v 1990)))
+    (is (thrown? IndexOutOfBoundsException (alt-fn-slice v 5 2001)))
+    (is (thrown? IndexOutOfBoundsException (alt-fn-slice v 5 4)))))
+
+
+(deftest alt-fn-vector-of-tests
+  (testing "contents and element types"
+    (are [t xs cls] (let [v (apply alt-fn-vector-of t xs)]
+                      (and (= xs v)
+                           (= v (alt-fn-vec-of t xs))
+                           (= (count xs) (count v))
+                           (every? #(instance? cls %) v)
+                           (instance? com.sagevisuals.AltFnInvocablePrimitiveVector v)))
+      :long [] Long
+      :long [1 2 3] Long
+      :double [1.0 2.5] Double
+      :int (range 100) Integer
+      :byte [-128 0 127] Byte)
+    (is (= [1.0 2.0] (alt-fn-vector-of :double 1 2)))
+    (is (= [1 2 3] (alt-fn-vec-of :long (long-array [1 2 3]))))
+    (is (thrown? IllegalArgumentException (alt-fn-vector-of :byte 128)))
+    (is (thrown? IllegalArgumentException (alt-fn-vector-of :char \a))))
+  (testing "persistent operations agree with vector"
+    (are [n] (let [xs (vec (range n))
+                   v (alt-fn-vec-of :long xs)]
+               (and (= xs v)
+                    (= (conj xs 99) (conj v 99))
+                    (= (pop (conj xs 99)) (pop (conj v 99)))
+                    (= (reduce + xs) (reduce + v) (reduce + 0 v))
+                    (= (reduce-kv (fn [acc k x] (+ acc k x)) 0 xs)
+                       (reduce-kv (fn [acc k x] (+ acc k x)) 0 v))
+                    (= (seq xs) (seq v))
+                    (= (into [] (map inc) xs) (into [] (map inc) v))
+                    (= (hash xs) (hash v))
+                    (or (zero? n)
+                        (and (= (assoc xs (dec n) -1) (assoc v (dec n) -1))
+                             (= (assoc xs 0 -1) (assoc v 0 -1))
+                             (= (dec n) (.nthLong ^com.sagevisuals.AltFnInvocablePrimitiveVector v (dec n)))))))
+      0 1 31 32 33 64 1024 1025 33825)
+    (is (= (range 1056)
+           (reduce (fn [v _] (pop v)) (alt-fn-vec-of :int (range 1100)) (range 44)))))
+  (testing "prim-hinted reduce"
+    (is (= 499500 (reduce (fn [^long acc ^long x] (+ acc x)) 0 (alt-fn-vec-of :long (range 1000)))))
+    (is (= 45.0 (reduce (fn [^double acc ^double x] (+ acc x)) 0.0 (alt-fn-vec-of :double (range 10)))))
+    (is (= 45 (reduce (fn [acc ^long x] (+ acc x)) 0 (alt-fn-vec-of :byte (range 10)))))
+    (is (= 3 (reduce (fn [acc ^long x] (if (= x 3) (reduced x) acc)) 0 (alt-fn-vec-of :long (range 100))))))
+  (testing "transients"
+    (let [v (alt-fn-vec-of :long (range 100))
+          t (transient v)]
+      (is (= (range 200) (persistent! (reduce conj! (transient v) (range 100 200)))))
+      (is (= (assoc (vec (range 100)) 3 -3 99 -99)
+             (persistent! (-> t (assoc! 3 -3) (assoc! 99 -99)))))
+      (is (= (range 100) v))
+      (is (= (range 33) (persistent! (nth (iterate pop! (transient v)) 67))))))
+  (testing "invocation, delimiters, and printing"
+    (defaultize!-options)
+    (let [v (alt-fn-vector-of :long 1 2 3)]
+      (is (= 2 (v 1)))
+      (is (= "⟨1 2 3⟩" (str v)))
+      (is (= "⟨1 2 3⟩" (pr-str v)))
+      (is (= v (read-string (binding [*print-dup* true] (pr-str v)))))
+      (is (instance? com.sagevisuals.AltFnInvocablePrimitiveVector (read-string (binding [*print-dup* true] (pr-str v)))))
+      (reset!-options {:fn (fn [v x] (map #(* x %) v)) :left-delimiter "<" :right-delimiter ">"})
+      (is (= [3 6 9] (v 3)))
+      (is (= "<1 2 3>" (str v)))
+      (defaultize!-options))))
+
+
+(deftest alt-fn-fold-tests
+  (testing "r/fold over thingies agrees with reduce"
+    (are [n chunk] (let [xs (range n)
+                         v (alt-fn-vec xs)
+                         p (alt-fn-vec-of :long xs)]
+                     (= (reduce + xs)
+                        (r/fold chunk + + v)
+                        (r/fold chunk + + p)
+                        (r/fold chunk + (fn [^long acc ^long x] (+ acc x)) p)))
+      0 512
+      1 512
+      32 1
+      33 1
+      1000 32
+      1000 100
+      100000 512
+      100000 50000))
+  (testing "pieces are leaf-aligned and reduced in order"
+    (let [pieces (r/fold 40
+                         (fn ([] []) ([a b] (into a b)))
+                         (fn [acc x] (conj acc x))
+                         (alt-fn-vec (range 10000)))]
+      (is (= (range 10000) pieces))))
+  (testing "reduced stops only its own piece"
+    (is (= 0 (r/fold 32 + (fn [acc x] (reduced acc)) (alt-fn-vec (range 1000))))))
+  (testing "r/map and r/filter compose"
+    (is (= (reduce + (filter even? (map inc (range 5000))))
+           (r/fold + (r/filter even? (r/map inc (alt-fn-vec (range 5000))))))))
+  (testing "index-aware fold"
+    (are [n] (let [xs (range n)]
+               (= (reduce-kv (fn [acc i x] (+ acc (* i x))) 0 (vec xs))
+                  (alt-fn-fold-kv 64 + (fn ([] 0) ([a b] (+ a b)) ([acc i x] (+ acc (* i x)))) (alt-fn-vec xs))
+                  (alt-fn-fold-kv 64 + (fn ([] 0) ([a b] (+ a b)) ([acc i x] (+ acc (* i x)))) (alt-fn-vec-of :int xs))))
+      0 1 31 32 33 1000 40000)
+    (is (= 8 (alt-fn-fold-kv + (fn [acc i x] (+ acc (* i x))) (alt-fn-vector 1 2 3))))))
+
+
+(deftest leaf-aligned-spliterator
+  (testing "splits cut on leaf boundaries and cover the vector in order"
+    (doseq [n [33 64 100 1024 1025 2000 33000 40000]]
+      (let [v (alt-fn-vec (range n))
+            split-all (fn split-all [^Spliterator s]
+                        (if-let [prefix (.trySplit s)]
+                          (concat (split-all prefix) (split-all s))
+                          [s]))
+            splits (split-all (.spliterator ^Collection v))
+            sizes (map #(.estimateSize ^Spliterator %) splits)
+            out (java.util.ArrayList.)]
+        (is (every? #(<= 1 % 32) sizes))
+        (is (every? #(zero? (mod % 32)) (butlast (reductions + sizes))))
+        (doseq [^Spliterator s splits]
+          (.forEachRemaining s (reify Consumer (accept [_ x] (.add out x)))))
+        (is (= v (vec out))))))
+  (testing "tryAdvance continues correctly after a split"
+    (let [v (alt-fn-vec (range 3000))
+          ^Spliterator s (.spliterator ^Collection v)
+          out (java.util.ArrayList.)
+          add (reify Consumer (accept [_ x] (.add out x)))]
+      (dotimes [_ 40] (.tryAdvance s add))
+      (let [^Spliterator prefix (.trySplit s)]
+        (while (.tryAdvance prefix add))
+        (while (.tryAdvance s add)))
+      (is (= (range 3000) (vec out)))))
+  (testing "parallel StreamSupport pipelines"
+    (let [v (alt-fn-vec (range 100000))]
+      (is (= (reduce + (range 100000))
+             (-> (java.util.stream.StreamSupport/stream (.spliterator ^Collection v) true)
+                 (.mapToLong (reify java.util.function.ToLongFunction (applyAsLong [_ x] x)))
+                 (.sum)))))))
+
+
+(deftest with-alt-fn-tests
+  (defaultize!-options)
+  (let [v (alt-fn-vector 1 2 3)]
+    (testing "overrides within the extent only"
+      (is (= 30 (with-alt-fn (fn [v x] (* x (count v))) (v 10))))
+      (is (= 2 (v 1))))
+    (testing "nesting and nil"
+      (with-alt-fn (fn [_ _] :outer)
+        (is (= :outer (v 0)))
+        (with-alt-fn (fn [_ _] :inner)
+          (is (= :inner (v 0))))
+        (with-alt-fn nil
+          (is (= 1 (v 0))))
+        (is (= :outer (v 0)))))
+    (testing "overrides primitive thingies and other options atoms"
+      (with-alt-fn (fn [_ _] :bound)
+        (is (= :bound ((alt-fn-vector-of :long 1) 0)))
+        (is (= :bound ((alt-fn-vec (make-options default-options) [1]) 0)))))
+    (testing "conveyed to futures"
+      (is (= :conveyed (with-alt-fn (fn [_ _] :conveyed) @(future (v 0))))))
+    (testing "concurrent threads each see their own function"
+      (let [results (doall (for [k (range 16)]
+                             (future
+                               (with-alt-fn (fn [v x] [k (nth v x)])
+                                 (vec (repeatedly 1000 #(v 2)))))))]
+        (doseq [[k r] (map-indexed vector results)]
+          (is (every? #(= [k 3] %) @r)))))
+    (testing "the thread's cache does not keep the popped binding"
+      (let [cache (doto (.getDeclaredField AAltFnInvocableVector "FN_BINDING_CACHE") (.setAccessible true))
+            f (fn [_ _] :cached)]
+        (with-alt-fn f
+          (is (= :cached (v 0)))
+          (is (identical? f (aget ^objects (.get ^ThreadLocal (.get cache nil)) 1))))
+        (is (= [nil nil] (vec (.get ^ThreadLocal (.get cache nil)))))
+        (is (= 1 (v 0)))))))
+
+
+(deftest wide-invocation-tests
+  (defaultize!-options)
+  (let [v (alt-fn-vector 1 2 3)]
+    (testing "every arity up to twenty, and beyond"
+      (with-alt-fn (fn [v & xs] [(count v) (vec xs)])
+        (doseq [n (range 0 30)]
+          (is (= [3 (vec (range n))] (apply v (range n)))))
+        (is (= [3 (vec (range 20))]
+               (v 0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19)))
+        (is (= [3 (vec (range 22))]
+               (v 0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 21)))))
+    (testing "fixed arities of nine to twenty"
+      (with-alt-fn (fn [_ a b c d e f g h i] [a i])
+        (is (= [0 8] (v 0 1 2 3 4 5 6 7 8))))
+      (with-alt-fn (fn [_ a b c d e f g h i j k l m n o p q r s] [a s])
+        (is (= [0 18] (v 0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18)))))))
+
+
+(deftest alt-fn-arities-tests
+  (defaultize!-options)
+  (let [t (alt-fn-arities {1 count
+                           2 nth
+                           3 (fn [v i x] (assoc v i x))
+                           :variadic (fn [v & xs] [:variadic (count xs)])})
+        v (alt-fn-vector :a :b)]
+    (with-alt-fn t
+      (is (= 2 (v)))
+      (is (= :b (v 1)))
+      (is (= [:a :c] (v 1 :c)))
+      (is (= [:variadic 3] (v 1 2 3)))
+      (is (= [:variadic 25] (apply v (range 25))))
+      (is (= :a (apply v [0]))))
+    (testing "shared options"
+      (reset!-options (assoc default-options :fn t))
+      (is (= :b (v 1)))
+      (is (= [:variadic 21] (apply v (range 21))))
+      (defaultize!-options))
+    (testing "no entry and no variadic"
+      (with-alt-fn (alt-fn-arities {2 nth})
+        (is (= :a (v 0)))
+        (is (thrown? clojure.lang.ArityException (v 0 1)))
+        (is (thrown? clojure.lang.ArityException (apply v (range 30))))))
+    (testing "invalid tables"
+      (is (thrown? IllegalArgumentException (alt-fn-arities {-1 nth})))
+      (is (thrown? IllegalArgumentException (alt-fn-arities {:x nth})))
+      (is (thrown? IllegalArgumentException (alt-fn-arities {2 nth 3 1})))
+      (is (thrown? IllegalArgumentException (alt-fn-arities {21 nth})))
+      (is (thrown? IllegalArgumentException (alt-fn-arities {2147483646 nth}))))
+    (testing "the widest fixed arity"
+      (with-alt-fn (alt-fn-arities {20 (fn [v & xs] [:twenty (count xs)])
+                                    :variadic (fn [v & xs] [:variadic (count xs)])})
+        (is (= [:twenty 19] (apply v (range 19))))
+        (is (= [:twenty 19] (v 0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18)))
+        (is (= [:variadic 20] (apply v (range 20))))
+        (is (= [:variadic 20] (v 0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19)))))))
+
+
+(deftest alt-fn-memoize-tests
+  (defaultize!-options)
+  (let [calls (atom 0)
+        f (fn [v & xs] (swap! calls inc) (apply + (count v) xs))
+        m (alt-fn-memoize f 4)
+        v (alt-fn-vector 1 2 3)]
+    (with-alt-fn m
+      (testing "hits and misses"
+        (is (= 13 (v 10)))
+        (is (= 13 (v 10)))
+        (is (= 13 ((alt-fn-vector 1 2 3) 10)))
+        (is (= 1 @calls))
+        (is (= 6 (v 1 2)))
+        (is (= 2 @calls))
+        (is (= 31 (apply v (range 8))))
+        (is (= 31 (apply v (range 8))))
+        (is (= 3 @calls))
+        (is (= {:hits 3 :misses 3 :evictions 0 :size 3 :max-size 4}
+               (alt-fn-memo-stats m))))
+      (testing "bounded"
+        (doseq [x (range 100)] (v x))
+        (is (<= (:size (alt-fn-memo-stats m)) 4))
+        (is (pos? (:evictions (alt-fn-memo-stats m))))))
+    (testing "nil results and exceptions"
+      (let [n (atom 0)
+            m (alt-fn-memoize (fn [_ x] (swap! n inc) (when (odd? x) (throw (ex-info "odd" {})))) 8)]
+        (with-alt-fn m
+          (is (nil? (v 2)))
+          (is (nil? (v 2)))
+          (is (= 1 @n))
+          (is (thrown? clojure.lang.ExceptionInfo (v 3)))
+          (is (thrown? clojure.lang.ExceptionInfo (v 3)))
+          (is (= 3 @n)))))
+    (testing "installing another function discards the cache"
+      (reset!-options (assoc default-options :fn m))
+      (is (identical? m (:fn @options)))
+      (is (some? (alt-fn-memo-stats)))
+      (defaultize!-options)
+      (is (nil? (alt-fn-memo-stats)))
+      (is (= 2 (v 1))))
+    (testing "concurrent callers"
+      (let [m (alt-fn-memoize (fn [v x] (* x (count v))) 64)]
+        (with-alt-fn m
+          (is (every? true? (apply concat (pmap (fn [_] (doall (for [x (range 32)] (= (* 3 x) (v x)))))
+                                                (range 8))))))
+        (is (= 256 (+ (:hits (alt-fn-memo-stats m)) (:misses (alt-fn-memo-stats m)))))))
+    (is (thrown? IllegalArgumentException (alt-fn-memoize f 0)))))
+
+
+(deftest alt-fn-invoke-all-tests
+  (defaultize!-options)
+  (let [tuples (vec (for [i (range 2000)]
+                      [(alt-fn-vector i (inc i) (+ i 2)) (mod i 3)]))
+        expected (mapv (fn [[v & args]] (apply v args)) tuples)]
+    (testing "ordered results, parallel or not"
+      (is (= expected (alt-fn-invoke-all tuples)))
+      (is (= expected (alt-fn-invoke-all tuples {:chunk-size 7})))
+      (is (= expected (alt-fn-invoke-all tuples {:parallel? false})))
+      (is (= expected (alt-fn-invoke-all (seq tuples) {:chunk-size 100})))
+      (is (= [] (alt-fn-invoke-all []))))
+    (testing "chunked delivery"
+      (let [chunks (alt-fn-invoke-chunks tuples {:chunk-size 300})]
+        (is (= [300 300 300 300 300 300 200] (map count chunks)))
+        (is (= expected (apply concat chunks))))
+      (is (= [[:a :b] [:a :b] [:a]]
+             (alt-fn-invoke-chunks (map (fn [i] [(alt-fn-vector :a :b) (mod i 2)]) (range 5))
+                                   {:chunk-size 2})))
+      (is (= expected (apply concat (alt-fn-invoke-chunks tuples {:chunk-size 64 :parallel? false})))))
+    (testing "only the chunks ahead of consumption are started"
+      (let [n (atom 0)
+            slow (fn [_ x] (swap! n inc) x)
+            cs (with-alt-fn slow
+                 (alt-fn-invoke-chunks (repeat 1000 [(alt-fn-vector) 1]) {:chunk-size 10 :ahead 2}))]
+        (is (= (repeat 10 1) (first cs)))
+        (Thread/sleep 100)
+        (is (<= @n 40))))
+    (testing "resolved once, on the calling thread"
+      (is (= [30 60] (with-alt-fn (fn [v x] (* x (count v)))
+                       (alt-fn-invoke-all [[(alt-fn-vector 1 2 3) 10] [(alt-fn-vector 1 2 3) 20]]
+                                          {:chunk-size 1})))))
+    (testing "arities, other atoms, and plain functions"
+      (with-alt-fn (fn [v & xs] (count xs))
+        (is (= [0 1 25] (alt-fn-invoke-all [[(alt-fn-vector)] [(alt-fn-vector) 1] (cons (alt-fn-vector) (range 25))]))))
+      (is (= [[:private 3] 3]
+             (alt-fn-invoke-all [[(alt-fn-vec (make-options (assoc default-options :fn (fn [_ x] [:private x]))) [1]) 3]
+                                 [+ 1 2]]))))
+    (testing "a task in the pool helps run the chunks it waits for"
+      (let [pool (java.util.concurrent.ForkJoinPool. 1)]
+        (try
+          (let [f (.submit pool ^Callable (fn []
+                                            [(alt-fn-invoke-all tuples {:executor pool :chunk-size 100})
+                                             (doall (alt-fn-invoke-chunks tuples {:executor pool :chunk-size 100 :ahead 4}))]))]
+            (is (= [expected (partition-all 100 expected)]
+                   (.get f 10 java.util.concurrent.TimeUnit/SECONDS))))
+          (finally (.shutdownNow pool)))))
+    (testing "an exception is rethrown"
+      (is (thrown? IndexOutOfBoundsException
+                   (alt-fn-invoke-all (conj tuples [(alt-fn-vector) 5]) {:chunk-size 10})))
+      (is (thrown? IndexOutOfBoundsException
+                   (doall (alt-fn-invoke-chunks (conj tuples [(alt-fn-vector) 5]) {:chunk-size 10})))))))
+
+
+(deftest alt-fn-invoke-async-tests
+  (defaultize!-options)
+  (let [v (alt-fn-vector :a :b :c)]
+    (testing "completes with the result"
+      (is (instance? java.util.concurrent.CompletableFuture (alt-fn-invoke-async v 1)))
+      (is (= :b @(alt-fn-invoke-async v 1)))
+      (is (= :b @(.invokeAsync v (object-array [1]))))
+      (is (= :c @((alt-fn-async-invoker) v 2))))
+    (testing "uses the function current at submission"
+      (let [gate (promise)
+            f (with-alt-fn (fn [v x] @gate [:submitted x])
+                (alt-fn-invoke-async v 0))]
+        (deliver gate true)
+        (is (= [:submitted 0] @f))))
+    (testing "exceptions complete the future exceptionally"
+      (is (thrown? java.util.concurrent.ExecutionException @(alt-fn-invoke-async v 10))))
+    (testing "concurrency limit"
+      (let [running (atom 0)
+            peak (atom 0)
+            invoker (alt-fn-async-invoker {:max-concurrency 3})
+            fs (with-alt-fn (fn [_ x]
+                              (let [n (swap! running inc)]
+                                (swap! peak max n)
+                                (Thread/sleep 20)
+                                (swap! running dec)
+                                x))
+                 (mapv #(invoker v %) (range 12)))]
+        (is (= (range 12) (map deref fs)))
+        (is (<= @peak 3))))
+    (testing "calls waiting for a permit are not handed to the executor"
+      (let [handed (atom 0)
+            gate (promise)
+            e (reify java.util.concurrent.Executor
+                (execute [_ r]
+                  (swap! handed inc)
+                  (.execute clojure.lang.Agent/soloExecutor r)))
+            invoker (alt-fn-async-invoker {:executor e :max-concurrency 2})
+            fs (with-alt-fn (fn [_ x] @gate x)
+                 (mapv #(invoker v %) (range 50)))]
+        (Thread/sleep 50)
+        (is (= 2 @handed))
+        (deliver gate true)
+        (is (= (range 50) (map deref fs)))
+        (is (= 50 @handed))))
+    (testing "a rejected call completes exceptionally and frees its permit"
+      (let [rejecting (reify java.util.concurrent.Executor
+                        (execute [_ _] (throw (java.util.concurrent.RejectedExecutionException.))))
+            invoker (alt-fn-async-invoker {:executor rejecting :max-concurrency 1})]
+        (is (thrown? java.util.concurrent.ExecutionException (deref (invoker v 0) 1000 :timeout)))
+        (is (thrown? java.util.concurrent.ExecutionException (deref (invoker v 1) 1000 :timeout)))))
+    (testing "virtual threads, where the JVM has them"
+      (if (com.sagevisuals.AsyncInvoker/virtualThreadExecutor)
+        (is (= :a @((alt-fn-async-invoker {:executor :virtual}) v 0)))
+        (is (thrown? UnsupportedOperationException (alt-fn-async-invoker {:executor :virtual})))))
+    (testing "cancellation interrupts a running call"
+      (let [started (promise)
+            interrupted (promise)
+            f (with-alt-fn (fn [_ _]
+                             (deliver started true)
+                             (try (Thread/sleep 10000)
+                                  (catch InterruptedException _ (deliver interrupted true))))
+                (alt-fn-invoke-async v 0))]
+        @started
+        (is (future-cancel f))
+        (is (future-cancelled? f))
+        (is (deref interrupted 5000 false))))
+    (testing "cancellation of a waiting call"
+      (let [calls (atom 0)
+            running (promise)
+            gate (promise)
+            invoker (alt-fn-async-invoker {:max-concurrency 1})
+            [f1 f2] (with-alt-fn (fn [_ x] (swap! calls inc) (deliver running x) @gate x)
+                      (let [f1 (invoker v 1)]
+                        ;; f1 must hold the only permit before f2 is submitted
+                        @running
+                        [f1 (invoker v 2)]))]
+        (Thread/sleep 50)
+        (is (future-cancel f2))
+        (deliver gate true)
+        (is (= 1 @f1))
+        (Thread/sleep 50)
+        (is (= 1 @calls))))
+    (testing "explicit executor"
+      (let [e (java.util.concurrent.Executors/newSingleThreadExecutor)]
+        (is (= :a @((alt-fn-async-invoker {:executor e}) v 0)))
+        (.shutdown e)))))
+
+
+(deftest alt-fn-subvec-tests
+  (defaultize!-options)
+  (let [n 2000
+        v (alt-fn-vec (range n))
+        p (alt-fn-vec-of :long (range n))]
+    (testing "a thingy view, created without copying"
+      (let [s (alt-fn-subvec v 40 1500)]
+        (is (instance? AAltFnInvocableVector s))
+        (is (identical? (.options ^AAltFnInvocableVector v) (.options ^AAltFnInvocableVector s)))
+        (is (identical? v (.v ^AltFnInvocableSubVector s)))
+        (is (= 41 (s 1)))
+        (is (= "⟨2 3⟩" (str (alt-fn-subvec v 2 4))))
+        (with-alt-fn (fn [v x] [:sub (count v) x])
+          (is (= [:sub 1460 :x] (s :x))))))
+    (testing "agrees with subvec"
+      (doseq [src [v p]
+              [start end] [[0 0] [0 1] [0 32] [5 37] [31 33] [32 64] [40 1500] [1000 2000] [1999 2000] [0 2000]]]
+        (let [expected (subvec (vec (range n)) start end)
+              s (alt-fn-subvec src start end)]
+          (is (= expected s))
+          (is (= (seq expected) (seq s)))
+          (is (= expected (vec (iterator-seq (.iterator ^java.util.List s)))))
+          (is (= (reduce + expected) (reduce + s)))
+          (is (= (reduce + 7 expected) (reduce + 7 s)))
+          (is (= (reduce-kv (fn [acc i x] (+ acc (* i x))) 0 expected)
+                 (reduce-kv (fn [acc i x] (+ acc (* i x))) 0 s)))
+          (is (= (r/fold + expected) (r/fold + s)))
+          (is (= (reduce-kv (fn [acc i x] (+ acc (* i x))) 0 expected)
+                 (alt-fn-fold-kv 64 + (fn [acc i x] (+ acc (* i x))) s)))
+          (is (= (drop 3 expected) (drop 3 s)))
+          (is (= (drop 40 expected) (drop 40 s)))
+          (is (= (.count (.stream ^java.util.Collection expected))
+                 (.count (.parallelStream ^java.util.Collection s)))))))
+    (testing "nested views, reduced, and the seq"
+      (let [s (alt-fn-subvec (alt-fn-subvec v 100 900) 50 60)]
+        (is (= (range 150 160) s))
+        (is (identical? v (.v ^AltFnInvocableSubVector s)))
+        (is (= 2 (reduce (fn [acc x] (if (= x 152) (reduced acc) (inc acc))) 0 s)))
+        (is (= (range 155 160) (drop 5 (seq s))))
+        (is (chunked-seq? (seq s)))
+        (is (= 10 (count (seq s))))))
+    (testing "persistent operations"
+      (let [s (alt-fn-subvec v 10 13)]
+        (is (= [10 11 12 :x] (conj s :x)))
+        (is (= [10 :y 12] (assoc s 1 :y)))
+        (is (= [10 11] (pop s)))
+        (is (= [] (pop (pop (pop s)))))
+        (is (= [] (empty s)))
+        (is (instance? AAltFnInvocableVector (empty s)))
+        (is (= {:a 1} (meta (with-meta s {:a 1}))))
+        (is (= (range 2000) v))))
+    (testing "bounds"
+      (is (thrown? IndexOutOfBoundsException (alt-fn-subvec v 5 4)))
+      (is (thrown? IndexOutOfBoundsException (alt-fn-subvec v 0 2001)))
+      (is (thrown? IndexOutOfBoundsException (nth (alt-fn-subvec v 0 3) 3)))
+      (is (= :nf (nth (alt-fn-subvec v 0 3) 3 :nf))))))
+
+
+(deftest reverse-traversal-tests
+  (defaultize!-options)
+  (doseq [n [1 2 31 32 33 64 1000 1025 33000]
+          v [(alt-fn-vec (range n))
+             (alt-fn-vec-of :long (range n))
+             (alt-fn-subvec (alt-fn-vec (range (+ n 50))) 17 (+ n 17))]]
+    (let [expected (reverse (range (if (instance? AltFnInvocableSubVector v) 17 0)
+                                   (+ n (if (instance? AltFnInvocableSubVector v) 17 0))))
+          rs (rseq v)]
+      (testing "the seq"
+        (is (= expected rs))
+        (is (= n (count rs)))
+        (is (= (dec n) (.index ^com.sagevisuals.AAltFnInvocableVector$RSeq rs)))
+        (is (chunked-seq? rs))
+        (is (= expected (loop [s rs acc []] (if s (recur (next s) (conj acc (first s))) acc))))
+        (is (= (drop 5 expected) (drop 5 rs)))
+        (is (= (drop 40 expected) (drop 40 rs))))
+      (testing "reduce walks backwards"
+        (is (= (vec expected) (reduce conj [] rs)))
+        (is (= (reduce + expected) (reduce + rs)))
+        (is (= (take 3 expected) (reduce (fn [acc x] (if (= 3 (count acc)) (reduced acc) (conj acc x))) [] rs))))
+      (testing "the spliterator and iterator"
+        (is (= (vec expected) (vec (iterator-seq (.iterator ^java.util.Collection rs)))))
+        (is (= (vec expected)
+               (.collect (.stream ^java.util.Collection rs) (Collectors/toList))
+               (.collect (.parallelStream ^java.util.Collection rs) (Collectors/toList))))
+        (let [^Spliterator s (.spliterator ^java.util.Collection rs)
+              acc (java.util.ArrayList.)]
+          (.tryAdvance s (reify Consumer (accept [_ x] (.add acc x))))
+          (.forEachRemaining s (reify Consumer (accept [_ x] (.add acc x))))
+          (is (= (vec expected) (vec acc)))))))
+  (is (nil? (rseq (alt-fn-vector)))))
+
+
+(deftest structural-equality-tests
+  (defaultize!-options)
+  (doseq [n [0 1 31 32 33 1000 1056 1057 33000 33824]
+          :let [v (alt-fn-vec (range n))
+                plain (vec (range n))]]
+    (testing "versions sharing structure"
+      (doseq [w (cond-> [v
+                         (conj v :x)
+                         (alt-fn-vec (conj plain :x))
+                         (conj (conj v :x) :y)]
+                  (pos? n) (into [(assoc v 0 :x)
+                                  (assoc v (dec n) :x)
+                                  (assoc v (quot n 2) :x (dec n) :y)
+                                  (pop v)
+                                  (alt-fn-vec (assoc plain (quot n 3) :x))
+                                  (conj (pop v) (dec n))]))]
+        (let [ew (vec w)
+              expected (vec (concat (keep-indexed (fn [i [x y]] (when (not= x y) i))
+                                                  (map vector plain ew))
+                                    (range (min n (count w)) (max n (count w)))))]
+          (is (= expected (alt-fn-diff v w) (alt-fn-diff w v)))
+          (is (= (= plain ew) (= v w) (= w v) (.equals ^Object v w)))
+          (is (= (empty? expected) (= v (vec w)) (= (vec w) v)))
+          (when (every? number? ew)
+            (is (= (compare plain ew) (compare v w)))
+            (is (= (compare ew plain) (compare w v))))))))
+  (testing "equals distinguishes types that = does not"
+    (let [v (alt-fn-vec (range 100))
+          w (assoc v 50 (int 50))]
+      (is (= v w))
+      (is (not (.equals ^Object v w)))
+      (is (= [] (alt-fn-diff v w)))))
+  (testing "compare of differing versions"
+    (let [v (alt-fn-vec (range 5000))]
+      (is (neg? (compare v (assoc v 4000 10000))))
+      (is (pos? (compare (assoc v 4000 10000) v)))
+      (is (neg? (compare (pop v) v)))))
+  (testing "compare continues past elements that are not = but compare as 0"
+    (is (= (compare [1 2] [1.0 3]) (compare (alt-fn-vector 1 2) [1.0 3])))
+    (is (neg? (compare (alt-fn-vector 1 2) (alt-fn-vector 1.0 3))))
+    (is (pos? (compare (alt-fn-vector 1.0 3) (alt-fn-vector 1 2))))
+    (let [v (alt-fn-vec (range 5000))
+          w (assoc v 100 100.0 4000 10000)]
+      (is (neg? (compare v w)))
+      (is (pos? (compare w v)))
+      (is (zero? (compare v (assoc v 100 100.0))))))
+  (testing "non-trie collections"
+    (let [v (alt-fn-vec (range 40))]
+      (is (= [3 40 41] (alt-fn-diff v (concat (range 3) [:x] (range 4 42)))))
+      (is (= [1] (alt-fn-diff (alt-fn-vec-of :long [1 2 3]) [1 9 3])))
+      (is (= [1 2] (alt-fn-diff [1 2] [1 3 4])))
+      (is (= v (range 40))))))
+
+
+(deftest lookup-index-tests
+  (defaultize!-options)
+  (doseq [n [0 1 32 33 1000 33000]
+          after [0 3]]
+    (let [plain (vec (map #(mod % 97) (range n)))
+          v (alt-fn-indexed (alt-fn-vec plain) after)
+          probes (concat [0 50 96 97 -1 nil :a 50.0] (range 0 97 7))]
+      (dotimes [_ 2]
+        (doseq [x probes]
+          (is (= (.indexOf ^java.util.List plain x) (.indexOf ^java.util.List v x)))
+          (is (= (.lastIndexOf ^java.util.List plain x) (.lastIndexOf ^java.util.List v x)))
+          (is (= (.contains ^java.util.List plain x) (.contains ^java.util.List v x)))))
+      (let [fp (alt-fn-index-footprint v)]
+        (is (:indexed? fp))
+        (is (:built? fp))
+        (is (= (count (distinct plain)) (:distinct fp)))
+        (is (pos? (:bytes fp))))))
+  (testing "building is lazy"
+    (let [v (alt-fn-indexed (alt-fn-vec (range 100)) 2)]
+      (is (= {:indexed? true, :built? false, :distinct 0, :bytes 0} (alt-fn-index-footprint v)))
+      (.indexOf ^java.util.List v 5)
+      (.contains ^java.util.List v 5)
+      (is (not (:built? (alt-fn-index-footprint v))))
+      (.lastIndexOf ^java.util.List v 5)
+      (is (:built? (alt-fn-index-footprint v)))))
+  (testing "equal numbers and nil"
+    (let [v (alt-fn-indexed (alt-fn-vector 1 (int 2) nil 3 nil) 0)]
+      (is (= 1 (.indexOf ^java.util.List v 2)))
+      (is (= 2 (.indexOf ^java.util.List v nil)))
+      (is (= 4 (.lastIndexOf ^java.util.List v nil)))))
+  (testing "derived versions do not share the index"
+    (let [v (alt-fn-indexed (alt-fn-vec (range 100)) 0)
+          _ (.contains ^java.util.List v 1)
+          w (assoc v 1 :x)]
+      (is (= {:indexed? false, :built? false, :distinct 0, :bytes 0} (alt-fn-index-footprint w)))
+      (is (not (.contains ^java.util.List w 1)))
+      (is (.contains ^java.util.List v 1))
+      (is (= -1 (.indexOf ^java.util.List (conj v :y) 1000)))
+      (is (:built? (alt-fn-index-footprint (with-meta v {:a 1}))))))
+  (testing "only opted-in instances hold index state"
+    (let [instance-fields (fn [^Class c]
+                            (set (for [^java.lang.reflect.Field f (.getDeclaredFields c)
+                                       :when (not (java.lang.reflect.Modifier/isStatic (.getModifiers f)))]
+                                   (.getName f))))]
+      (is (= #{"cnt" "shift" "root" "tail" "_meta"} (instance-fields AltFnInvocablePersistentVector)))
+      (is (= AltFnInvocablePersistentVector (class (conj (alt-fn-indexed (alt-fn-vector 1) 0) 2))))))
+  (testing "table size"
+    (let [m (doto (.getDeclaredMethod com.sagevisuals.ValueIndex "tableSize" (into-array Class [Integer/TYPE]))
+              (.setAccessible true))
+          table-size (fn [n]
+                       (try (.invoke m nil (object-array [(int n)]))
+                            (catch java.lang.reflect.InvocationTargetException e (throw (.getCause e)))))]
+      (is (= [2 2 4 8 8 16 2048 4096] (map table-size [0 1 2 3 4 5 1024 1025])))
+      (is (= (bit-shift-left 1 30) (table-size (bit-shift-left 1 29))))
+      (is (thrown? IllegalArgumentException (table-size (inc (bit-shift-left 1 29)))))
+      (is (thrown? IllegalArgumentException (table-size Integer/MAX_VALUE)))))
+  (is (thrown? IllegalArgumentException (alt-fn-indexed (alt-fn-vector 1) -1))))
+
+
+(deftest tuple-tests
+  (defaultize!-options)
+  (doseq [n (range 10)
+          :let [xs (vec (range n))
+                t (alt-fn-tuple xs)
+                v (alt-fn-vec xs)]]
+    (testing "representation"
+      (is (instance? (if (<= n 8) AltFnInvocableTuple AltFnInvocablePersistentVector) t))
+      (is (instance? (if (<= n 8) AltFnInvocableTuple AltFnInvocablePersistentVector) (alt-fn-tuple (seq xs))))
+      (is (= t (alt-fn-tuple (map identity xs)) (alt-fn-tuple (to-array xs)))))
+    (testing "the same elements and behavior as the trie form"
+      (is (= xs t v))
+      (is (= v t))
+      (is (= (hash v) (hash t)))
+      (is (.equals ^Object t v))
+      (is (= (pr-str v) (pr-str t)))
+      (is (= (str v) (str t)))
+      (is (= (seq xs) (seq t)))
+      (is (= (rseq xs) (rseq t)))
+      (is (= (reduce + xs) (reduce + t)))
+      (is (= (reduce-kv (fn [acc i x] (conj acc [i x])) [] xs) (reduce-kv (fn [acc i x] (conj acc [i x])) [] t)))
+      (is (= (r/fold + t) (reduce + xs)))
+      (is (= (drop 2 xs) (drop 2 t)))
+      (is (= xs (vec (.toArray ^java.util.Collection t))))
+      (is (= xs (.collect (.stream ^java.util.Collection t) (java.util.stream.Collectors/toList))))
+      (is (= (conj xs :z) (conj t :z)))
+      (is (= (persistent! (conj! (transient xs) :z)) (persistent! (conj! (transient t) :z))))
+      (is (= (vec (concat xs xs)) (alt-fn-catvec t t)))
+      (when (pos? n)
+        (is (= (assoc xs 0 :a) (assoc t 0 :a)))
+        (is (= (pop xs) (pop t)))
+        (is (= (peek xs) (peek t)))
+        (is (= (subvec xs 1) (alt-fn-subvec t 1) (alt-fn-slice t 1)))
+        (is (= (.indexOf ^java.util.List xs (dec n)) (.indexOf ^java.util.List (alt-fn-indexed t 0) (dec n)))))
+      (is (= [(dec n) (count xs)] (with-alt-fn (fn [t x] [x (count t)]) (t (dec n)))))))
+  (testing "growth and shrinkage"
+    (let [t8 (alt-fn-tuple (range 8))
+          t9 (conj t8 8)]
+      (is (instance? AltFnInvocablePersistentVector t9))
+      (is (instance? AltFnInvocablePersistentVector (assoc t8 8 8)))
+      (is (instance? AltFnInvocableTuple (pop t8)))
+      (is (instance? AltFnInvocableTuple (conj (pop t8) 7)))
+      (is (instance? AltFnInvocablePersistentVector (persistent! (transient (alt-fn-tuple [1])))))
+      (is (= (vec (range 40)) (into t8 (range 8 40))))
+      (is (thrown? IllegalStateException (pop (alt-fn-tuple []))))
+      (is (thrown? IndexOutOfBoundsException (nth t8 8)))
+      (is (thrown? IndexOutOfBoundsException (assoc t8 10 :x)))))
+  (testing "metadata and options"
+    (let [opts (make-options {:fn (fn [_ _] :kind) :left-delimiter "<" :right-delimiter ">"})
+          t (with-meta (alt-fn-tuple opts [1 2]) {:a 1})]
+      (is (= {:a 1} (meta t) (meta (conj t 3)) (meta (pop t)) (meta (assoc t 0 :x)) (meta (conj (with-meta (alt-fn-tuple opts (range 8)) {:a 1}) 8))))
+      (is (= :kind (t 0) ((conj t 3) 0) ((into t (range 20)) 0)))
+      (is (= "<1 2>" (str t)))
+      (is (= {:a 1} (meta (empty t))))
+      (is (empty? (empty t))))))
+
+
+(defrecord CodecRecord [a])
+
+
+(deftest codec-tests
+  (defaultize!-options)
+  (let [round-trip (fn [& xs] (alt-fn-decode (alt-fn-encode xs)))]
+    (testing "values"
+      (let [xs [nil true false 0 -1 Long/MAX_VALUE Long/MIN_VALUE (int -7) 1.5 ##NaN "" "héllo" :a :a/b 'c 'd/e \z
+                (bigint 12345678901234567890) [1 [2]] '(1 2) {:a 1 "b" [2]} #{1 :x} (range 3)
+                (java.util.Date. 0) 1/3]
+            ys (apply round-trip xs)]
+        (is (= (count xs) (count ys)))
+        (doseq [[x y] (map vector xs ys)
+                :when (not (and (double? x) (Double/isNaN x)))]
+          (is (= x y))
+          (when-not (seq? x)
+            (is (= (class x) (class y)))))
+        (is (list? (nth ys 22)))
+        (is (Double/isNaN (nth ys 9)))
+        (is (thrown? IllegalArgumentException (alt-fn-encode [(Object.)])))))
+    (testing "thingies"
+      (doseq [v (concat (for [n [0 1 31 32 33 1056 1057 40000]] (alt-fn-vec (range n)))
+                        [(alt-fn-tuple [:a "b"]) (alt-fn-tuple [])
+                         (alt-fn-vec-of :long (range -100 100)) (alt-fn-vec-of :double [1.5 -2])
+                         (alt-fn-vec-of :int (range 40)) (alt-fn-vec-of :byte (range -128 128))
+                         (alt-fn-subvec (alt-fn-vec (range 100)) 10 60)
+                         (with-meta (alt-fn-vec [[1 (alt-fn-vector 2)] {:k (alt-fn-vector 3)}]) {:m 1})])]
+        (let [[w] (round-trip v)]
+          (is (= v w))
+          (is (= (meta v) (meta w)))
+          (is (identical? options (.options ^AAltFnInvocableVector w)))
+          (is (= (class (if (instance? AltFnInvocableSubVector v) (alt-fn-vec v) v)) (class w)))
+          (when (instance? com.sagevisuals.AltFnInvocablePrimitiveVector v)
+            (is (= (.type (.am ^com.sagevisuals.AltFnInvocablePrimitiveVector v))
+                   (.type (.am ^com.sagevisuals.AltFnInvocablePrimitiveVector w)))))
+          (is (= (with-alt-fn (fn [t x] [x (count t)]) (v 0))
+                 (with-alt-fn (fn [t x] [x (count t)]) (w 0)))))))
+    (testing "shared leaves are written once and shared again"
+      (let [v1 (alt-fn-vec (range 5000))
+            v2 (assoc v1 100 :x)
+            v3 (conj v2 :y)
+            one (count (alt-fn-encode [v1]))
+            three (count (alt-fn-encode [v1 v2 v3]))
+            [w1 w2 w3] (round-trip v1 v2 v3)]
+        (is (< three (* 1.2 one)))
+        (is (= [v1 v2 v3] [w1 w2 w3]))
+        (is (= [100] (alt-fn-diff w1 w2)))
+        (is (identical? (.arrayFor ^AltFnInvocablePersistentVector w1 0)
+                        (.arrayFor ^AltFnInvocablePersistentVector w3 0)))
+        (is (not (identical? (.arrayFor ^AltFnInvocablePersistentVector w1 100)
+                             (.arrayFor ^AltFnInvocablePersistentVector w2 100))))))
+    (testing "options are reattached"
+      (let [kind (make-options {:fn (fn [_ _] :kind) :left-delimiter "[" :right-delimiter "]" :kind ::codec-kind})
+            bytes (alt-fn-encode [(alt-fn-vec kind [1 2])])]
+        (is (thrown? java.io.IOException (alt-fn-decode bytes)))
+        (is (identical? kind (.options ^AAltFnInvocableVector (first (alt-fn-decode bytes {::codec-kind kind})))))
+        (is (= :kind ((first (alt-fn-decode bytes {::codec-kind kind})) 0)))))
+    (testing "collection types and metadata"
+      (let [xs [(sorted-set 3 1 2) (sorted-map :b 2 :a 1) (with-meta [1 2] {:m 1})
+                (with-meta {:a 1} {:m 2}) (with-meta #{:s} {:m 3}) (with-meta '(1 2) {:m 4})
+                (with-meta (sorted-map 1 2) {:m 5}) [(with-meta [3] {:m 6})]
+                (alt-fn-vector (with-meta [4] {:m 7}))
+                (float 1.5) (short 2) (byte 3) 1.5M (biginteger 7) (java.util.UUID. 1 2)
+                (java.net.URI. "http://example.com")]
+            ys (apply round-trip xs)]
+        (is (= xs ys))
+        (is (= (map class xs) (map class ys)))
+        (is (= (map meta xs) (map meta ys)))
+        (is (= {:m 6} (meta (first (nth ys 7)))))
+        (is (= {:m 7} (meta (first (nth ys 8)))))
+        (is (= [1 2 3] (seq (first ys)))))
+      (is (thrown? IllegalArgumentException (alt-fn-encode [(->CodecRecord 1)])))
+      (is (thrown? IllegalArgumentException (alt-fn-encode [[(->CodecRecord 1)]])))
+      (is (thrown? IllegalArgumentException (alt-fn-encode [(sorted-set-by > 1 2)])))
+      (is (thrown? IllegalArgumentException (alt-fn-encode [clojure.lang.PersistentQueue/EMPTY])))
+      (is (thrown? IllegalArgumentException (alt-fn-encode [(java.util.ArrayList.)]))))
+    (testing "only the serialized classes the encoder writes are read back"
+      (let [serialized (fn [x]
+                         (let [bytes (java.io.ByteArrayOutputStream.)]
+                           (with-open [oos (java.io.ObjectOutputStream. bytes)]
+                             (.writeObject oos x))
+                           (.toByteArray bytes)))
+            varint (fn [n]
+                     (loop [v (* 2 n) acc []]
+                       (if (< v 128)
+                         (conj acc v)
+                         (recur (bit-shift-right v 7) (conj acc (bit-or 128 (bit-and v 127)))))))
+            encoding (fn [^bytes payload]
+                       ;; magic, one value, SERIALIZED tag, length, payload
+                       (byte-array (map unchecked-byte (concat [0x54 0x48 0x47 0x31 2 18] (varint (count payload)) payload))))]
+        (is (= [(java.util.UUID. 1 2)] (alt-fn-decode (encoding (serialized (java.util.UUID. 1 2))))))
+        (is (thrown? java.io.InvalidClassException (alt-fn-decode (encoding (serialized (java.util.ArrayList. [1]))))))
+        (is (thrown? java.io.InvalidClassException (alt-fn-decode (encoding (serialized (->CodecRecord 1))))))))
+    (testing "malformed input"
+      (is (thrown? java.io.IOException (alt-fn-decode (byte-array [1 2 3 4 0]))))
+      (is (thrown? java.io.IOException (alt-fn-decode (byte-array 2)))))))
+
+
+(deftest mapped-tests
+  (defaultize!-options)
+  (let [temp (fn [] (doto (java.io.File/createTempFile "thingy" ".thgm") (.deleteOnExit)))]
+    (testing "fixed-width types"
+      (doseq [[t xs] [[:long (range -1000 1000)] [:double (map #(/ % 4.0) (range 100))]
+                      [:int (range 33)] [:byte (range -128 128)] [:long []]]]
+        (let [f (alt-fn-write-mapped (temp) t xs)
+              m (alt-fn-mapped f)
+              v (apply alt-fn-vector-of t xs)]
+          (is (instance? AltFnInvocableMappedVector m))
+          (is (= (count v) (count m)))
+          (is (= v m))
+          (is (= (seq v) (seq m)))
+          (is (= (map class v) (map class m)))
+          (is (= (reduce + 0 v) (reduce + 0 m)))
+          (is (= (vec (.toArray (.stream ^java.util.Collection v)))
+                 (vec (.toArray (.parallelStream ^java.util.Collection m)))))
+          (is (= (into [] (drop 5) v) (into [] (drop 5) m)))
+          (is (nil? (nth m -1 nil)))
+          (is (thrown? IndexOutOfBoundsException (nth m (count m)))))))
+    (testing "primitive reducing functions"
+      (let [m (alt-fn-mapped (alt-fn-write-mapped (temp) :long (range 100)))]
+        (is (= 4950 (reduce (fn [^long acc ^long x] (+ acc x)) 0 m)))
+        (is (= 10 (reduce (fn [acc x] (if (= x 10) (reduced acc) (inc acc))) 0 m)))))
+    (testing "values"
+      (let [xs [nil 1 "two" :three [4 (alt-fn-vector 5)] {:six 6} (range 40) (apply str (repeat 300 "x"))]
+            m (alt-fn-mapped (alt-fn-write-mapped (temp) :value xs))]
+        (is (= xs m))
+        (is (= xs (into [] m)))
+        (is (identical? options (.options ^AAltFnInvocableVector (second (nth m 4)))))
+        (is (= (with-alt-fn (fn [t x] [x (count t)]) ((alt-fn-vec xs) 2))
+               (with-alt-fn (fn [t x] [x (count t)]) (m 2))))))
+    (testing "thingies of a kind are rejected when written, not when read"
+      (let [kind (make-options {:fn nth :left-delimiter "[" :right-delimiter "]" :kind ::mapped-kind})]
+        (is (thrown? IllegalArgumentException (alt-fn-write-mapped (temp) :value [1 (alt-fn-vec kind [1 2])])))
+        (is (thrown? IllegalArgumentException (alt-fn-write-mapped (temp) :value [{:a [(alt-fn-vec kind [1])]}])))
+        (is (= [[1 2]] (alt-fn-mapped (alt-fn-write-mapped (temp) :value [(alt-fn-vec (make-options {:fn nth :left-delimiter "[" :right-delimiter "]"}) [1 2])]))))))
+    (testing "first write copies to the heap"
+      (let [m (with-meta (alt-fn-mapped (alt-fn-write-mapped (temp) :int (range 50))) {:a 1})
+            m2 (conj m 50)
+            m3 (assoc m 0 -1)]
+        (is (instance? com.sagevisuals.AltFnInvocablePrimitiveVector m2))
+        (is (= (range 51) m2))
+        (is (= -1 (m3 0)))
+        (is (= (range 50) m))
+        (is (= {:a 1} (meta m2)))
+        (is (not (identical? (.toHeap ^AltFnInvocableMappedVector m) (.toHeap ^AltFnInvocableMappedVector m))))
+        (is (= (range 49) (pop m)))
+        (is (= [0 1] (persistent! (conj! (transient (alt-fn-mapped (alt-fn-write-mapped (temp) :value [0]))) 1))))
+        (is (= {:a 1} (meta (empty m))))
+        (is (empty? (empty m)))))
+    (testing "malformed input"
+      (is (thrown? IllegalArgumentException (alt-fn-write-mapped (temp) :float [1])))
+      (let [f (temp)]
+        (spit f "not a thingy file, not at all")
+        (is (thrown? java.io.IOException (alt-fn-mapped f)))))))
+
+
+(deftest tagged-literal-tests
+  (defaultize!-options)
+  (testing "reading"
+    (let [pv (vec (range 1000))
+          v (alt-fn-read-vector pv)]
+      (is (instance? AltFnInvocablePersistentVector (read-string "#thingy/vector [1 2 3]")))
+      (is (= [1 2 3] (read-string "#thingy/vector [1 2 3]")))
+      (is (= [] (read-string "#thingy/vector []")))
+      (is (= {:a 1} (meta (read-string "^{:a 1} #thingy/vector [1]"))))
+      (is (identical? options (.options ^AAltFnInvocableVector v)))
+      (is (identical? (.arrayFor ^clojure.lang.PersistentVector pv 0)
+                      (.arrayFor ^AltFnInvocablePersistentVector v 0)))
+      (is (= [2.0 3.0] (read-string "#thingy/vector-of [:double 2 3]")))
+      (is (instance? com.sagevisuals.AltFnInvocablePrimitiveVector (read-string "#thingy/vector-of [:int]")))
+      (is (= [1 [2]] (edn/read-string {:readers {'thingy/vector alt-fn-read-vector}}
+                                      "#thingy/vector [1 #thingy/vector [2]]")))
+      (is (thrown? RuntimeException (read-string "#thingy/vector (1 2)")))
+      (is (thrown? RuntimeException (read-string "#thingy/vector-of [1 2]")))))
+  (testing "print-dup round trip, without *read-eval*"
+    (doseq [v [(alt-fn-vector) (alt-fn-vector 1 (alt-fn-vector 2)) (alt-fn-vec (range 100))
+               (alt-fn-tuple [:a "b"])
+               (alt-fn-vector-of :long) (alt-fn-vector-of :byte 1 2) (alt-fn-vec-of :double (range 40))]]
+      (let [s (binding [*print-dup* true] (pr-str v))
+            r (binding [*read-eval* false] (read-string s))]
+        (is (not (str/includes? s "#=")))
+        (is (= v r))
+        (is (= (instance? com.sagevisuals.AltFnInvocablePrimitiveVector v)
+               (instance? com.sagevisuals.AltFnInvocablePrimitiveVector r)))))
+    (let [v (with-meta (alt-fn-vector-of :long 1) {:m 1})]
+      (is (= {:m 1} (meta (read-string (binding [*print-dup* true] (pr-str v)))))))
+    (testing "options, including a kind, are not printed"
+      (let [kind (make-options {:fn nth :left-delimiter "<" :right-delimiter ">" :kind ::printed-kind})]
+        (doseq [v [(alt-fn-vec kind [1 2]) (com.sagevisuals.AltFnInvocablePrimitiveVector/createFrom kind :long [1 2])]
+                :let [r (read-string (binding [*print-dup* true] (pr-str v)))]]
+          (is (= v r))
+          (is (identical? options (.options ^AAltFnInvocableVector r))))))))
+
+
+(deftest flight-recorder-events
+  (defaultize!-options)
+  (let [f (doto (java.io.File/createTempFile "thingy" ".jfr") (.deleteOnExit))
+        names ["com.sagevisuals.thingy.Invocation" "com.sagevisuals.thingy.Creation"
+               "com.sagevisuals.thingy.Persistent" "com.sagevisuals.thingy.ToString"
+               "com.sagevisuals.thingy.OptionsChange"]
+        record (fn [enabled body]
+                 (with-open [r (jdk.jfr.Recording.)]
+                   (doseq [n enabled]
+                     (.withoutThreshold (.enable r ^String n)))
+                   (.start r)
+                   (body)
+                   (.stop r)
+                   (.dump r (.toPath f)))
+                 (group-by #(.getName (.getEventType ^jdk.jfr.consumer.RecordedEvent %))
+                           (jdk.jfr.consumer.RecordingFile/readAllEvents (.toPath f))))
+        v (alt-fn-vec (range 100))]
+    (testing "each event type"
+      (let [events (record names
+                           (fn []
+                             (is (= [42 :x] (with-alt-fn (fn [t a b] [(count t) b]) ((alt-fn-vec (range 42)) :a :x))))
+                             (is (= 3 (count (persistent! (conj! (transient (alt-fn-vector 1 2)) 3)))))
+                             (is (= "⟨1 2⟩" (str (alt-fn-vector 1 2))))
+                             (is (= [:b] (alt-fn-invoke-all [[(alt-fn-vector :a :b :c :d :e :f :g :h :i) 1]] {:parallel? false})))
+                             (is (thrown? IndexOutOfBoundsException ((alt-fn-vector 1 2 3 4 5 6 7) 7)))
+                             (is (= 25 (with-alt-fn (fn [t & xs] (count xs)) (apply (alt-fn-vector 1 2 3 4 5 6) (range 25)))))
+                             (reset!-options (assoc default-options :left-delimiter "<"))
+                             (defaultize!-options)))
+            field (fn [e k] (.getValue ^jdk.jfr.consumer.RecordedEvent e ^String k))]
+        (is (some #(and (= 2 (field % "arity")) (= 42 (field % "count")))
+                  (events "com.sagevisuals.thingy.Invocation")))
+        (is (some #(and (= 1 (field % "arity")) (= 9 (field % "count")) (not (field % "threw")))
+                  (events "com.sagevisuals.thingy.Invocation")))
+        (is (some #(and (= 1 (field % "arity")) (= 7 (field % "count")) (field % "threw"))
+                  (events "com.sagevisuals.thingy.Invocation")))
+        (is (some #(and (= 25 (field % "arity")) (= 6 (field % "count")))
+                  (events "com.sagevisuals.thingy.Invocation")))
+        (is (some #(= 42 (field % "count")) (events "com.sagevisuals.thingy.Creation")))
+        (is (some #(= 3 (field % "count")) (events "com.sagevisuals.thingy.Persistent")))
+        (is (some #(= 5 (field % "length")) (events "com.sagevisuals.thingy.ToString")))
+        (is (= ["reset!-options" "defaultize!-options"]
+               (map #(field % "operation") (events "com.sagevisuals.thingy.OptionsChange"))))))
+    (testing "enabled individually"
+      (let [events (record ["com.sagevisuals.thingy.ToString"]
+                           (fn []
+                             (v 1)
+                             (str v)
+                             (alt-fn-vec (range 50))))]
+        (is (= ["com.sagevisuals.thingy.ToString"] (keys events)))))
+    (is (= 1 (v 1)))))
+
+
 (defaultize!-options)
 #_(run-tests)
\ No newline at end of file